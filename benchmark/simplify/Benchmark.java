@@ -0,0 +1,113 @@
+package simplify;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public class Benchmark {
+
+    public static abstract class Operation {
+
+        // Called before every run and not measured, e.g. to build fresh state for operations which modify it.
+        public void setUp() throws Exception {
+        }
+
+        public abstract void run() throws Exception;
+
+    }
+
+    public static class Result {
+
+        private final String name;
+        private final double opsPerSecond;
+        private final double error;
+        private final long bytesPerOp;
+
+        Result(String name, double opsPerSecond, double error, long bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        public long getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        public double getError() {
+            return error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getOpsPerSecond() {
+            return opsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            String bytes = bytesPerOp < 0 ? "n/a" : String.valueOf(bytesPerOp);
+
+            return String.format("%-60s %14.3f ops/s +- %10.3f %14s bytes/op", name, opsPerSecond, error, bytes);
+        }
+
+    }
+
+    private static long getAllocatedBytes() {
+        // Not all VMs count allocations per thread.
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+
+    public Benchmark(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    public Result measure(String name, Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            operation.setUp();
+            operation.run();
+        }
+
+        double[] opsPerSecond = new double[measurementIterations];
+        long totalBytes = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            operation.setUp();
+
+            long bytesBefore = getAllocatedBytes();
+            long start = System.nanoTime();
+            operation.run();
+            long elapsed = System.nanoTime() - start;
+            long bytesAfter = getAllocatedBytes();
+
+            opsPerSecond[i] = 1e9 / Math.max(elapsed, 1);
+            totalBytes += bytesAfter - bytesBefore;
+        }
+
+        double mean = 0;
+        for (double value : opsPerSecond) {
+            mean += value;
+        }
+        mean /= measurementIterations;
+
+        double variance = 0;
+        for (double value : opsPerSecond) {
+            variance += (value - mean) * (value - mean);
+        }
+        double error = measurementIterations > 1 ? Math.sqrt(variance / (measurementIterations - 1)) : 0;
+
+        long bytesPerOp = getAllocatedBytes() < 0 ? -1 : totalBytes / measurementIterations;
+
+        return new Result(name, mean, error, bytesPerOp);
+    }
+
+}
@@ -0,0 +1,147 @@
+package simplify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FileUtils;
+
+import simplify.Benchmark.Result;
+import simplify.optimize.OptimizerBenchmarks;
+import simplify.vm.VirtualMachineBenchmarks;
+
+public class BenchmarkMain {
+
+    private static final String DEFAULT_CORPUS = "resources/test/simplifier";
+    private static final int DEFAULT_WARMUP_ITERATIONS = 3;
+    private static final int DEFAULT_MEASUREMENT_ITERATIONS = 5;
+    private static final double DEFAULT_REGRESSION_THRESHOLD = 0.10;
+
+    private static final String CSV_HEADER = "benchmark,ops_per_second,error,bytes_per_op";
+
+    public static void main(String[] argv) throws Exception {
+        String corpusPath = DEFAULT_CORPUS;
+        int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+        int measurementIterations = DEFAULT_MEASUREMENT_ITERATIONS;
+        double threshold = DEFAULT_REGRESSION_THRESHOLD;
+        File outputFile = null;
+        File baselineFile = null;
+        for (int i = 0; i < argv.length; i++) {
+            String arg = argv[i];
+            if (arg.equals("-w") || arg.equals("--warmup")) {
+                warmupIterations = Integer.parseInt(argv[++i]);
+            } else if (arg.equals("-i") || arg.equals("--iterations")) {
+                measurementIterations = Integer.parseInt(argv[++i]);
+            } else if (arg.equals("-o") || arg.equals("--output")) {
+                outputFile = new File(argv[++i]);
+            } else if (arg.equals("-b") || arg.equals("--baseline")) {
+                baselineFile = new File(argv[++i]);
+            } else if (arg.equals("--threshold")) {
+                threshold = Double.parseDouble(argv[++i]);
+            } else {
+                corpusPath = arg;
+            }
+        }
+
+        // Logging would dominate the measurements.
+        Logger.getLogger(Main.class.getSimpleName()).setLevel(Level.OFF);
+
+        List<File> smaliFiles = new ArrayList<File>();
+        File f = new File(corpusPath);
+        if (f.isDirectory()) {
+            smaliFiles.addAll(Arrays.asList(f.listFiles()));
+            Collections.sort(smaliFiles);
+        } else {
+            smaliFiles.add(f);
+        }
+
+        Benchmark benchmark = new Benchmark(warmupIterations, measurementIterations);
+        List<Result> results = new ArrayList<Result>();
+        results.addAll(print(VirtualMachineBenchmarks.measurePeekRegister(benchmark)));
+        for (File smaliFile : smaliFiles) {
+            try {
+                results.addAll(print(VirtualMachineBenchmarks.measure(benchmark, smaliFile)));
+                results.addAll(print(OptimizerBenchmarks.measure(benchmark, smaliFile)));
+            } catch (RuntimeException e) {
+                // Don't lose the rest of the corpus because the VM can't handle one file yet.
+                System.out.println("FAILED " + smaliFile.getName() + ": " + e);
+            }
+        }
+
+        if (outputFile != null) {
+            writeResults(outputFile, results);
+        }
+
+        if (baselineFile != null) {
+            int regressions = compareToBaseline(results, readResults(baselineFile), threshold);
+            if (regressions > 0) {
+                System.out.println(regressions + " regressions against " + baselineFile);
+                System.exit(1);
+            }
+        }
+    }
+
+    private static int compareToBaseline(List<Result> results, Map<String, Double> nameToBaseline, double threshold) {
+        int regressions = 0;
+        for (Result result : results) {
+            Double baseline = nameToBaseline.get(result.getName());
+            if (baseline == null) {
+                continue;
+            }
+
+            double change = (result.getOpsPerSecond() - baseline) / baseline;
+            if (change < -threshold) {
+                System.out.println(String.format("REGRESSION %s: %.3f ops/s, baseline %.3f ops/s (%+.1f%%)",
+                                result.getName(), result.getOpsPerSecond(), baseline, change * 100));
+                regressions++;
+            }
+        }
+
+        return regressions;
+    }
+
+    private static List<Result> print(List<Result> results) {
+        for (Result result : results) {
+            System.out.println(result);
+        }
+
+        return results;
+    }
+
+    private static Map<String, Double> readResults(File file) throws IOException {
+        Map<String, Double> result = new HashMap<String, Double>();
+        for (String line : FileUtils.readLines(file, Charset.forName("UTF-8"))) {
+            if (line.equals(CSV_HEADER) || line.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = line.split(",");
+            result.put(parts[0], Double.parseDouble(parts[1]));
+        }
+
+        return result;
+    }
+
+    private static void writeResults(File file, List<Result> results) throws IOException {
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        try {
+            writer.println(CSV_HEADER);
+            for (Result result : results) {
+                writer.println(result.getName() + "," + result.getOpsPerSecond() + "," + result.getError() + ","
+                                + result.getBytesPerOp());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+}
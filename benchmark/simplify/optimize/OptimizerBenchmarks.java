@@ -0,0 +1,94 @@
+package simplify.optimize;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jf.dexlib2.builder.MutableMethodImplementation;
+import org.jf.dexlib2.util.ReferenceUtil;
+import org.jf.dexlib2.writer.builder.BuilderClassDef;
+import org.jf.dexlib2.writer.builder.BuilderMethod;
+import org.jf.dexlib2.writer.builder.DexBuilder;
+
+import simplify.Benchmark;
+import simplify.Benchmark.Operation;
+import simplify.Benchmark.Result;
+import simplify.Dexifier;
+import simplify.vm.ContextGraph;
+import simplify.vm.VirtualMachine;
+
+public class OptimizerBenchmarks {
+
+    private static final int MAX_NODE_VISITS = 1000;
+    private static final int MAX_CALL_DEPTH = 10;
+
+    // Optimizers modify the methods they're given, so every run needs freshly parsed and executed methods.
+    private static abstract class OptimizerOperation extends Operation {
+
+        private final File smaliFile;
+
+        protected DexBuilder dexBuilder;
+        protected List<BuilderMethod> methods;
+        protected List<ContextGraph> graphs;
+
+        OptimizerOperation(File smaliFile) {
+            this.smaliFile = smaliFile;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            dexBuilder = DexBuilder.makeDexBuilder(Dexifier.API_LEVEL);
+            List<BuilderClassDef> classDefs = Dexifier.dexifySmaliFiles(Arrays.asList(smaliFile), dexBuilder);
+            VirtualMachine vm = new VirtualMachine(classDefs, MAX_NODE_VISITS, MAX_CALL_DEPTH);
+
+            methods = new ArrayList<BuilderMethod>();
+            graphs = new ArrayList<ContextGraph>();
+            for (BuilderClassDef classDef : classDefs) {
+                for (BuilderMethod method : classDef.getMethods()) {
+                    ContextGraph graph = vm.execute(ReferenceUtil.getMethodDescriptor(method));
+                    if (graph != null) {
+                        methods.add(method);
+                        graphs.add(graph);
+                    }
+                }
+            }
+        }
+
+    }
+
+    private static MethodRewriter newRewriter(BuilderMethod method) {
+        // Optimizers only plan changes, so they're applied to measure the same work as before.
+        return new MethodRewriter((MutableMethodImplementation) method.getImplementation());
+    }
+
+    public static List<Result> measure(Benchmark benchmark, File smaliFile) throws Exception {
+        List<Result> results = new ArrayList<Result>();
+        String name = smaliFile.getName();
+
+        results.add(benchmark.measure("ConstantPropigator.perform " + name, new OptimizerOperation(smaliFile) {
+            @Override
+            public void run() {
+                for (int i = 0; i < methods.size(); i++) {
+                    MethodRewriter rewriter = newRewriter(methods.get(i));
+                    new ConstantPropigator(dexBuilder, graphs.get(i), rewriter).perform();
+                    rewriter.apply();
+                }
+            }
+        }));
+
+        results.add(benchmark.measure("DeadRemover.perform " + name, new OptimizerOperation(smaliFile) {
+            @Override
+            public void run() {
+                for (int i = 0; i < methods.size(); i++) {
+                    MethodRewriter rewriter = newRewriter(methods.get(i));
+                    new DeadRemover(graphs.get(i), rewriter).perform();
+                    rewriter.apply();
+                }
+            }
+        }));
+
+        return results;
+    }
+
+}
@@ -0,0 +1,117 @@
+package simplify.vm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jf.dexlib2.util.ReferenceUtil;
+import org.jf.dexlib2.writer.builder.BuilderClassDef;
+import org.jf.dexlib2.writer.builder.BuilderMethod;
+import org.jf.dexlib2.writer.builder.DexBuilder;
+
+import simplify.Benchmark;
+import simplify.Benchmark.Operation;
+import simplify.Benchmark.Result;
+import simplify.Dexifier;
+import simplify.vm.types.UnknownValue;
+
+public class VirtualMachineBenchmarks {
+
+    private static final int MAX_NODE_VISITS = 1000;
+    private static final int MAX_CALL_DEPTH = 10;
+
+    private static final int REGISTER_COUNT = 16;
+    private static final int PEEKS_PER_OP = 1000;
+
+    private static List<String> getMethodDescriptors(List<BuilderClassDef> classDefs) {
+        List<String> result = new ArrayList<String>();
+        for (BuilderClassDef classDef : classDefs) {
+            for (BuilderMethod method : classDef.getMethods()) {
+                result.add(ReferenceUtil.getMethodDescriptor(method));
+            }
+        }
+
+        return result;
+    }
+
+    private static List<BuilderClassDef> dexify(File smaliFile) throws Exception {
+        DexBuilder dexBuilder = DexBuilder.makeDexBuilder(Dexifier.API_LEVEL);
+
+        return Dexifier.dexifySmaliFiles(Arrays.asList(smaliFile), dexBuilder);
+    }
+
+    public static List<Result> measure(Benchmark benchmark, File smaliFile) throws Exception {
+        List<Result> results = new ArrayList<Result>();
+        String name = smaliFile.getName();
+
+        final List<BuilderClassDef> classDefs = dexify(smaliFile);
+        final List<String> methodDescriptors = getMethodDescriptors(classDefs);
+
+        results.add(benchmark.measure("VirtualMachine.execute " + name, new Operation() {
+            private VirtualMachine vm;
+
+            @Override
+            public void setUp() {
+                // Fresh VM so summaries cached by earlier runs aren't reused.
+                vm = new VirtualMachine(classDefs, MAX_NODE_VISITS, MAX_CALL_DEPTH);
+            }
+
+            @Override
+            public void run() {
+                for (String methodDescriptor : methodDescriptors) {
+                    vm.execute(methodDescriptor);
+                }
+            }
+        }));
+
+        final VirtualMachine vm = new VirtualMachine(classDefs, MAX_NODE_VISITS, MAX_CALL_DEPTH);
+        results.add(benchmark.measure("ContextGraph copy " + name, new Operation() {
+            @Override
+            public void run() {
+                for (String methodDescriptor : methodDescriptors) {
+                    vm.getInstructionGraph(methodDescriptor);
+                }
+            }
+        }));
+
+        return results;
+    }
+
+    public static List<Result> measurePeekRegister(Benchmark benchmark) throws Exception {
+        List<Result> results = new ArrayList<Result>();
+
+        final MethodContext parent = new MethodContext(REGISTER_COUNT, 0, 0);
+        for (int register = 0; register < REGISTER_COUNT; register += 4) {
+            parent.pokeRegister(register, register);
+            parent.pokeRegister(register + 1, "string " + register);
+            parent.pokeRegister(register + 2, new UnknownValue("I"));
+            parent.pokeRegister(register + 3, new StringBuilder("mutable " + register));
+        }
+
+        results.add(benchmark.measure("VirtualMachineContext.peekRegister local", new Operation() {
+            @Override
+            public void run() {
+                for (int i = 0; i < PEEKS_PER_OP; i++) {
+                    parent.peekRegister(i % REGISTER_COUNT);
+                }
+            }
+        }));
+
+        // Children share their parent's registers. The first peek of a mutable value clones it.
+        results.add(benchmark.measure("VirtualMachineContext.peekRegister inherited", new Operation() {
+            @Override
+            public void run() {
+                for (int i = 0; i < (PEEKS_PER_OP / REGISTER_COUNT); i++) {
+                    MethodContext child = new MethodContext(parent);
+                    for (int register = 0; register < REGISTER_COUNT; register++) {
+                        child.peekRegister(register);
+                    }
+                }
+            }
+        }));
+
+        return results;
+    }
+
+}
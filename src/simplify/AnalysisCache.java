@@ -0,0 +1,731 @@
+package simplify;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.builder.BuilderTryBlock;
+import org.jf.dexlib2.builder.MethodLocation;
+import org.jf.dexlib2.builder.MutableMethodImplementation;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction10x;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction11n;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction11x;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction12x;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction21c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction21ih;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction21lh;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction21s;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction22x;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction31c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction31i;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction32x;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction51l;
+import org.jf.dexlib2.iface.ExceptionHandler;
+import org.jf.dexlib2.iface.MethodParameter;
+import org.jf.dexlib2.iface.instruction.FiveRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.OffsetInstruction;
+import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.instruction.RegisterRangeInstruction;
+import org.jf.dexlib2.iface.instruction.SwitchElement;
+import org.jf.dexlib2.iface.instruction.SwitchPayload;
+import org.jf.dexlib2.iface.instruction.ThreeRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.WideLiteralInstruction;
+import org.jf.dexlib2.iface.instruction.formats.ArrayPayload;
+import org.jf.dexlib2.iface.reference.Reference;
+import org.jf.dexlib2.iface.reference.StringReference;
+import org.jf.dexlib2.iface.reference.TypeReference;
+import org.jf.dexlib2.util.ReferenceUtil;
+import org.jf.dexlib2.writer.builder.BuilderMethod;
+import org.jf.dexlib2.writer.builder.DexBuilder;
+
+import simplify.graph.CallGraph;
+import simplify.vm.MethodSummary;
+import simplify.vm.MethodSummaryCache;
+import simplify.vm.types.SmaliClassInstance;
+import simplify.vm.types.UnknownValue;
+
+public class AnalysisCache {
+
+    // Results of simplifying methods, kept in a single file between runs. An entry's key is a hash of its method's
+    // instructions and the keys of everything it calls, so it's only found again if nothing the result depends on has
+    // changed. Entries hold the edits simplification made to the method and the summaries of calls to it, and are read
+    // from the memory mapped file only when asked for. Entries not used by a run are dropped when it's saved.
+
+    private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
+
+    private static final int MAGIC = 0x53494d43;
+    private static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte STRING_VALUE = 1;
+    private static final byte INTEGER_VALUE = 2;
+    private static final byte LONG_VALUE = 3;
+    private static final byte FLOAT_VALUE = 4;
+    private static final byte DOUBLE_VALUE = 5;
+    private static final byte BOOLEAN_VALUE = 6;
+    private static final byte CHARACTER_VALUE = 7;
+    private static final byte BYTE_VALUE = 8;
+    private static final byte SHORT_VALUE = 9;
+    private static final byte UNKNOWN_VALUE = 10;
+    private static final byte INSTANCE_VALUE = 11;
+
+    public static AnalysisCache open(File file, DexBuilder dexBuilder, String configuration) throws IOException {
+        // Configuration is anything besides the code which changes results, e.g. VM limits.
+        MappedByteBuffer buffer = null;
+        if (file.exists()) {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                // Mapping stays valid after the file is closed.
+                FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+        }
+
+        return new AnalysisCache(file, dexBuilder, configuration, buffer);
+    }
+
+    public static Map<MethodLocation, BuilderInstruction> getLocationToInstruction(BuilderMethod method) {
+        // Taken before simplifying. Replaced instructions keep their location and added ones get new locations, which
+        // is how edits are told apart from the original.
+        List<BuilderInstruction> instructions = getImplementation(method).getInstructions();
+        Map<MethodLocation, BuilderInstruction> result = new IdentityHashMap<MethodLocation, BuilderInstruction>(
+                        instructions.size());
+        for (BuilderInstruction instruction : instructions) {
+            result.put(instruction.getLocation(), instruction);
+        }
+
+        return result;
+    }
+
+    private static MutableMethodImplementation getImplementation(BuilderMethod method) {
+        return (MutableMethodImplementation) method.getImplementation();
+    }
+
+    public static String hashContents(File location) throws IOException {
+        // For configuration kept in files, e.g. emulation plugins, so a changed file isn't mistaken for the same one.
+        // A directory includes everything under it.
+        MessageDigest digest = getDigest();
+        addContents(digest, location, location.getName());
+
+        return toHex(digest.digest());
+    }
+
+    private static void addContents(MessageDigest digest, File file, String path) throws IOException {
+        digest.update(path.getBytes(UTF8));
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            Arrays.sort(children);
+            for (File child : children) {
+                addContents(digest, child, path + "/" + child.getName());
+            }
+        } else {
+            digest.update(Files.readAllBytes(file.toPath()));
+        }
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-1.
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        return toHex(getDigest().digest(bytes));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+
+        return new String(bytes, UTF8);
+    }
+
+    private static Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+        case NULL_VALUE:
+            return null;
+        case STRING_VALUE:
+            return readString(in);
+        case INTEGER_VALUE:
+            return in.getInt();
+        case LONG_VALUE:
+            return in.getLong();
+        case FLOAT_VALUE:
+            return in.getFloat();
+        case DOUBLE_VALUE:
+            return in.getDouble();
+        case BOOLEAN_VALUE:
+            return in.get() != 0;
+        case CHARACTER_VALUE:
+            return in.getChar();
+        case BYTE_VALUE:
+            return in.get();
+        case SHORT_VALUE:
+            return in.getShort();
+        case UNKNOWN_VALUE:
+            return new UnknownValue(readString(in));
+        case INSTANCE_VALUE:
+            return new SmaliClassInstance(readString(in));
+        default:
+            throw new IllegalArgumentException("Unknown value tag: " + tag);
+        }
+    }
+
+    private static void writeInstructionForKey(DataOutputStream out, Instruction instruction) throws IOException {
+        // Everything about an instruction which could change how it executes.
+        writeString(out, instruction.getOpcode().name);
+        if (instruction instanceof OneRegisterInstruction) {
+            out.writeInt(((OneRegisterInstruction) instruction).getRegisterA());
+        }
+        if (instruction instanceof TwoRegisterInstruction) {
+            out.writeInt(((TwoRegisterInstruction) instruction).getRegisterB());
+        }
+        if (instruction instanceof ThreeRegisterInstruction) {
+            out.writeInt(((ThreeRegisterInstruction) instruction).getRegisterC());
+        }
+        if (instruction instanceof FiveRegisterInstruction) {
+            FiveRegisterInstruction instr = (FiveRegisterInstruction) instruction;
+            out.writeInt(instr.getRegisterCount());
+            out.writeInt(instr.getRegisterC());
+            out.writeInt(instr.getRegisterD());
+            out.writeInt(instr.getRegisterE());
+            out.writeInt(instr.getRegisterF());
+            out.writeInt(instr.getRegisterG());
+        }
+        if (instruction instanceof RegisterRangeInstruction) {
+            RegisterRangeInstruction instr = (RegisterRangeInstruction) instruction;
+            out.writeInt(instr.getStartRegister());
+            out.writeInt(instr.getRegisterCount());
+        }
+        if (instruction instanceof WideLiteralInstruction) {
+            out.writeLong(((WideLiteralInstruction) instruction).getWideLiteral());
+        }
+        if (instruction instanceof ReferenceInstruction) {
+            writeString(out, ReferenceUtil.getReferenceString(((ReferenceInstruction) instruction).getReference()));
+        }
+        if (instruction instanceof OffsetInstruction) {
+            out.writeInt(((OffsetInstruction) instruction).getCodeOffset());
+        }
+        if (instruction instanceof SwitchPayload) {
+            for (SwitchElement element : ((SwitchPayload) instruction).getSwitchElements()) {
+                out.writeInt(element.getKey());
+                out.writeInt(element.getOffset());
+            }
+        }
+        if (instruction instanceof ArrayPayload) {
+            ArrayPayload payload = (ArrayPayload) instruction;
+            out.writeInt(payload.getElementWidth());
+            for (Number element : payload.getArrayElements()) {
+                out.writeLong(element.longValue());
+            }
+        }
+    }
+
+    private static void writeMethodForKey(DataOutputStream out, BuilderMethod method) throws IOException {
+        writeString(out, ReferenceUtil.getMethodDescriptor(method));
+        out.writeInt(method.getAccessFlags());
+        for (MethodParameter parameter : method.getParameters()) {
+            writeString(out, parameter.getType());
+        }
+
+        MutableMethodImplementation implementation = getImplementation(method);
+        if (implementation == null) {
+            return;
+        }
+
+        out.writeInt(implementation.getRegisterCount());
+        for (BuilderInstruction instruction : implementation.getInstructions()) {
+            writeInstructionForKey(out, instruction);
+        }
+        for (BuilderTryBlock tryBlock : implementation.getTryBlocks()) {
+            out.writeInt(tryBlock.getStartCodeAddress());
+            out.writeInt(tryBlock.getCodeUnitCount());
+            for (ExceptionHandler handler : tryBlock.getExceptionHandlers()) {
+                // Null for catch-all handlers.
+                writeString(out, String.valueOf(handler.getExceptionType()));
+                out.writeInt(handler.getHandlerCodeAddress());
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // Not writeUTF since that's limited to 64k.
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        // Throws UnsupportedOperationException for anything without a tag, e.g. class values.
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof String) {
+            out.writeByte(STRING_VALUE);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER_VALUE);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG_VALUE);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT_VALUE);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE_VALUE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN_VALUE);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHARACTER_VALUE);
+            out.writeChar((Character) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE_VALUE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT_VALUE);
+            out.writeShort((Short) value);
+        } else if (value instanceof UnknownValue) {
+            out.writeByte(UNKNOWN_VALUE);
+            writeString(out, ((UnknownValue) value).getType());
+        } else if (value instanceof SmaliClassInstance) {
+            out.writeByte(INSTANCE_VALUE);
+            writeString(out, ((SmaliClassInstance) value).getType());
+        } else {
+            throw new UnsupportedOperationException("Unable to cache value: " + value.getClass().getName());
+        }
+    }
+
+    private final File file;
+    private final DexBuilder dexBuilder;
+    private final String configuration;
+    private final ByteBuffer buffer;
+    private final Map<String, Integer> keyToOffset;
+    private final Map<String, String> methodDescriptorToKey;
+    private final Map<String, byte[]> methodDescriptorToEdits;
+    private int hits;
+    private int misses;
+    private int stores;
+
+    private AnalysisCache(File file, DexBuilder dexBuilder, String configuration, ByteBuffer buffer) {
+        this.file = file;
+        this.dexBuilder = dexBuilder;
+        this.configuration = configuration;
+        this.buffer = buffer;
+
+        keyToOffset = new HashMap<String, Integer>();
+        if (buffer != null) {
+            readIndex();
+        }
+        methodDescriptorToKey = new HashMap<String, String>();
+
+        // Only methods used this run are saved. Sorted so the same results make the same file.
+        methodDescriptorToEdits = new TreeMap<String, byte[]>();
+    }
+
+    public void addMethods(CallGraph callGraph, Map<String, BuilderMethod> methodDescriptorToMethod)
+                    throws IOException {
+        // Keys are built from the original instructions, so this must be done before anything is simplified. Methods
+        // in a component call each other, so they share a key made from all of them.
+        List<List<String>> components = callGraph.getComponents();
+        String[] componentKeys = new String[components.size()];
+        for (int component = 0; component < components.size(); component++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, configuration);
+            for (String methodDescriptor : components.get(component)) {
+                writeMethodForKey(out, methodDescriptorToMethod.get(methodDescriptor));
+            }
+
+            // Callees come first, so their keys are already done.
+            int[] callees = callGraph.getComponentCallees(component);
+            String[] calleeKeys = new String[callees.length];
+            for (int i = 0; i < callees.length; i++) {
+                calleeKeys[i] = componentKeys[callees[i]];
+            }
+            Arrays.sort(calleeKeys);
+            for (String calleeKey : calleeKeys) {
+                writeString(out, calleeKey);
+            }
+            out.close();
+
+            componentKeys[component] = hash(bytes.toByteArray());
+            for (String methodDescriptor : components.get(component)) {
+                String key = hash((componentKeys[component] + methodDescriptor).getBytes(UTF8));
+                methodDescriptorToKey.put(methodDescriptor, key);
+            }
+        }
+    }
+
+    public synchronized int loadSummaries(MethodSummaryCache summaryCache) {
+        // Summaries of unchanged methods are good for callers which did change. Returns how many were loaded.
+        int result = 0;
+        for (Map.Entry<String, String> entry : methodDescriptorToKey.entrySet()) {
+            ByteBuffer in = getEntry(entry.getValue());
+            if (in == null) {
+                continue;
+            }
+
+            // Skip edits
+            int editsLength = in.getInt();
+            in.position(in.position() + editsLength);
+            int summaryCount = in.getInt();
+            for (int i = 0; i < summaryCount; i++) {
+                Object[] arguments = new Object[in.getInt()];
+                for (int j = 0; j < arguments.length; j++) {
+                    arguments[j] = readValue(in);
+                }
+                MethodSummary summary = new MethodSummary(readValue(in), in.get() != 0);
+                summaryCache.put(entry.getKey(), arguments, summary);
+            }
+            result += summaryCount;
+        }
+
+        return result;
+    }
+
+    public synchronized boolean restore(BuilderMethod method) {
+        // Applies the edits from an earlier run if the method and everything it calls is unchanged. Otherwise, returns
+        // false and the method must be simplified.
+        String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
+        String key = methodDescriptorToKey.get(methodDescriptor);
+        ByteBuffer in = (key == null) ? null : getEntry(key);
+        if (in == null) {
+            misses++;
+            return false;
+        }
+
+        byte[] edits = new byte[in.getInt()];
+        in.get(edits);
+        ByteBuffer editsIn = ByteBuffer.wrap(edits);
+        int editCount = editsIn.getInt();
+        int[] indexes = new int[editCount];
+        BuilderInstruction[][] replacements = new BuilderInstruction[editCount][];
+        for (int i = 0; i < editCount; i++) {
+            indexes[i] = editsIn.getInt();
+            replacements[i] = new BuilderInstruction[editsIn.getInt()];
+            for (int j = 0; j < replacements[i].length; j++) {
+                replacements[i][j] = readInstruction(editsIn);
+            }
+        }
+
+        // Same as simplification applies them. Backwards so earlier indexes don't move, and the first replacement
+        // takes the place of the original to keep labels.
+        MutableMethodImplementation implementation = getImplementation(method);
+        for (int i = editCount - 1; i >= 0; i--) {
+            implementation.replaceInstruction(indexes[i], replacements[i][0]);
+            for (int j = 1; j < replacements[i].length; j++) {
+                implementation.addInstruction(indexes[i] + j, replacements[i][j]);
+            }
+        }
+
+        methodDescriptorToEdits.put(methodDescriptor, edits);
+        hits++;
+
+        return true;
+    }
+
+    public synchronized void save(MethodSummaryCache summaryCache) throws IOException {
+        // Written to a new file and moved over the old one, which is still mapped.
+        Map<String, Map<Object[], MethodSummary>> methodDescriptorToSummaries = summaryCache.getSummaries();
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(methodDescriptorToEdits.size());
+            for (Map.Entry<String, byte[]> entry : methodDescriptorToEdits.entrySet()) {
+                String methodDescriptor = entry.getKey();
+                byte[] bytes = buildEntry(entry.getValue(), methodDescriptorToSummaries.get(methodDescriptor));
+                writeString(out, methodDescriptorToKey.get(methodDescriptor));
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public synchronized void store(BuilderMethod method,
+                    Map<MethodLocation, BuilderInstruction> locationToInstruction) {
+        // Records the edits made since the instructions were taken. An original instruction is never removed, so each
+        // edit is an original index and what's there now, which may be more than one instruction.
+        String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
+        if (!methodDescriptorToKey.containsKey(methodDescriptor)) {
+            return;
+        }
+
+        List<BuilderInstruction> instructions = getImplementation(method).getInstructions();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int editCount = 0;
+            ByteArrayOutputStream editBytes = new ByteArrayOutputStream();
+            DataOutputStream editOut = new DataOutputStream(editBytes);
+            int originalIndex = 0;
+            int index = 0;
+            while (index < instructions.size()) {
+                BuilderInstruction instruction = instructions.get(index);
+                BuilderInstruction original = locationToInstruction.get(instruction.getLocation());
+                if (original == null) {
+                    log.warning("Not caching " + methodDescriptor + ", instructions were added before the first");
+                    return;
+                }
+
+                int end = index + 1;
+                while ((end < instructions.size())
+                                && !locationToInstruction.containsKey(instructions.get(end).getLocation())) {
+                    end++;
+                }
+
+                if ((instruction != original) || ((end - index) > 1)) {
+                    editCount++;
+                    editOut.writeInt(originalIndex);
+                    editOut.writeInt(end - index);
+                    for (int i = index; i < end; i++) {
+                        writeInstruction(editOut, instructions.get(i));
+                    }
+                }
+                originalIndex++;
+                index = end;
+            }
+            if (originalIndex != locationToInstruction.size()) {
+                log.warning("Not caching " + methodDescriptor + ", instructions were removed");
+                return;
+            }
+            editOut.close();
+
+            out.writeInt(editCount);
+            out.write(editBytes.toByteArray());
+            out.close();
+        } catch (UnsupportedOperationException e) {
+            log.warning("Not caching " + methodDescriptor + ": " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            // Only writing to memory
+            throw new RuntimeException(e);
+        }
+
+        methodDescriptorToEdits.put(methodDescriptor, bytes.toByteArray());
+        stores++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("entries=").append(keyToOffset.size()).append(", hits=").append(hits).append(", misses=")
+                        .append(misses).append(", stores=").append(stores);
+
+        return sb.toString();
+    }
+
+    private byte[] buildEntry(byte[] edits, Map<Object[], MethodSummary> argumentsToSummary) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(edits.length);
+        out.write(edits);
+
+        List<byte[]> summaries = new ArrayList<byte[]>();
+        if (argumentsToSummary != null) {
+            for (Map.Entry<Object[], MethodSummary> entry : argumentsToSummary.entrySet()) {
+                if (entry.getValue().isRunDependent()) {
+                    // Another run could get a different one.
+                    continue;
+                }
+
+                ByteArrayOutputStream summaryBytes = new ByteArrayOutputStream();
+                DataOutputStream summaryOut = new DataOutputStream(summaryBytes);
+                try {
+                    summaryOut.writeInt(entry.getKey().length);
+                    for (Object argument : entry.getKey()) {
+                        writeValue(summaryOut, argument);
+                    }
+                    writeValue(summaryOut, entry.getValue().getReturnValue());
+                    summaryOut.writeBoolean(entry.getValue().hasSideEffects());
+                } catch (UnsupportedOperationException e) {
+                    // Just this summary isn't kept.
+                    continue;
+                }
+                summaryOut.close();
+                summaries.add(summaryBytes.toByteArray());
+            }
+        }
+        out.writeInt(summaries.size());
+        for (byte[] summary : summaries) {
+            out.write(summary);
+        }
+        out.close();
+
+        return bytes.toByteArray();
+    }
+
+    private ByteBuffer getEntry(String key) {
+        // Null if there's none. Each caller gets its own position.
+        Integer offset = keyToOffset.get(key);
+        if (offset == null) {
+            return null;
+        }
+
+        ByteBuffer result = buffer.duplicate();
+        result.position(offset);
+
+        return result;
+    }
+
+    private BuilderInstruction readInstruction(ByteBuffer in) {
+        Opcode op = Opcode.valueOf(readString(in));
+        switch (op.format) {
+        case Format10x:
+            return new BuilderInstruction10x(op);
+        case Format11n:
+            return new BuilderInstruction11n(op, in.getInt(), (int) in.getLong());
+        case Format11x:
+            return new BuilderInstruction11x(op, in.getInt());
+        case Format12x:
+            return new BuilderInstruction12x(op, in.getInt(), in.getInt());
+        case Format21c:
+            return new BuilderInstruction21c(op, in.getInt(), readReference(in, op));
+        case Format21ih:
+            return new BuilderInstruction21ih(op, in.getInt(), (int) in.getLong());
+        case Format21lh:
+            return new BuilderInstruction21lh(op, in.getInt(), in.getLong());
+        case Format21s:
+            return new BuilderInstruction21s(op, in.getInt(), (int) in.getLong());
+        case Format22x:
+            return new BuilderInstruction22x(op, in.getInt(), in.getInt());
+        case Format31c:
+            return new BuilderInstruction31c(op, in.getInt(), readReference(in, op));
+        case Format31i:
+            return new BuilderInstruction31i(op, in.getInt(), (int) in.getLong());
+        case Format32x:
+            return new BuilderInstruction32x(op, in.getInt(), in.getInt());
+        case Format51l:
+            return new BuilderInstruction51l(op, in.getInt(), in.getLong());
+        default:
+            throw new IllegalArgumentException("Unable to read instruction: " + op.name);
+        }
+    }
+
+    private void readIndex() {
+        // A file which isn't a cache, or is from another version, is ignored and replaced on save.
+        try {
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                log.warning("Ignoring analysis cache " + file + ", wrong format or version");
+                return;
+            }
+
+            int entryCount = buffer.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                String key = readString(buffer);
+                int length = buffer.getInt();
+                keyToOffset.put(key, buffer.position());
+                buffer.position(buffer.position() + length);
+            }
+        } catch (RuntimeException e) {
+            // Truncated or corrupt, e.g. buffer underflow or a bad length
+            log.warning("Ignoring analysis cache " + file + ", it's corrupt: " + e);
+            keyToOffset.clear();
+        }
+    }
+
+    private Reference readReference(ByteBuffer in, Opcode op) {
+        String value = readString(in);
+        if ((op == Opcode.CONST_STRING) || (op == Opcode.CONST_STRING_JUMBO)) {
+            return dexBuilder.internStringReference(value);
+        }
+
+        return dexBuilder.internTypeReference(value);
+    }
+
+    private void writeInstruction(DataOutputStream out, BuilderInstruction instruction) throws IOException {
+        // Only formats simplification creates, none of which have offsets.
+        Opcode op = instruction.getOpcode();
+        writeString(out, op.name());
+        switch (op.format) {
+        case Format10x:
+            break;
+        case Format11x:
+            out.writeInt(((OneRegisterInstruction) instruction).getRegisterA());
+            break;
+        case Format12x:
+        case Format22x:
+        case Format32x:
+            out.writeInt(((TwoRegisterInstruction) instruction).getRegisterA());
+            out.writeInt(((TwoRegisterInstruction) instruction).getRegisterB());
+            break;
+        case Format11n:
+        case Format21ih:
+        case Format21lh:
+        case Format21s:
+        case Format31i:
+        case Format51l:
+            out.writeInt(((OneRegisterInstruction) instruction).getRegisterA());
+            out.writeLong(((WideLiteralInstruction) instruction).getWideLiteral());
+            break;
+        case Format21c:
+        case Format31c:
+            out.writeInt(((OneRegisterInstruction) instruction).getRegisterA());
+            writeReference(out, op, ((ReferenceInstruction) instruction).getReference());
+            break;
+        default:
+            throw new UnsupportedOperationException("Unable to cache instruction: " + op.name);
+        }
+    }
+
+    private void writeReference(DataOutputStream out, Opcode op, Reference reference) throws IOException {
+        if ((op == Opcode.CONST_STRING) || (op == Opcode.CONST_STRING_JUMBO)) {
+            writeString(out, ((StringReference) reference).getString());
+        } else if (op == Opcode.CONST_CLASS) {
+            writeString(out, ((TypeReference) reference).getType());
+        } else {
+            // Field references, e.g. sget, aren't made by simplification.
+            throw new UnsupportedOperationException("Unable to cache instruction: " + op.name);
+        }
+    }
+
+}
@@ -0,0 +1,303 @@
+package simplify;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.jf.dexlib2.DebugItemType;
+import org.jf.dexlib2.DexFileFactory;
+import org.jf.dexlib2.base.BaseExceptionHandler;
+import org.jf.dexlib2.base.BaseTryBlock;
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.builder.MutableMethodImplementation;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction21c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction22c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction31c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction35c;
+import org.jf.dexlib2.builder.instruction.BuilderInstruction3rc;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.DexFile;
+import org.jf.dexlib2.iface.ExceptionHandler;
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.MethodImplementation;
+import org.jf.dexlib2.iface.TryBlock;
+import org.jf.dexlib2.iface.debug.DebugItem;
+import org.jf.dexlib2.iface.debug.SetSourceFile;
+import org.jf.dexlib2.iface.debug.StartLocal;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.instruction.formats.Instruction21c;
+import org.jf.dexlib2.iface.instruction.formats.Instruction22c;
+import org.jf.dexlib2.iface.instruction.formats.Instruction31c;
+import org.jf.dexlib2.iface.instruction.formats.Instruction35c;
+import org.jf.dexlib2.iface.instruction.formats.Instruction3rc;
+import org.jf.dexlib2.iface.reference.Reference;
+import org.jf.dexlib2.iface.reference.StringReference;
+import org.jf.dexlib2.iface.reference.TypeReference;
+import org.jf.dexlib2.writer.builder.BuilderClassDef;
+import org.jf.dexlib2.writer.builder.BuilderField;
+import org.jf.dexlib2.writer.builder.BuilderMethod;
+import org.jf.dexlib2.writer.builder.DexBuilder;
+
+public class DexImporter {
+
+    private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
+
+    public static boolean isDexFile(File file) {
+        String name = file.getName().toLowerCase();
+
+        return name.endsWith(".dex") || name.endsWith(".apk");
+    }
+
+    public static List<BuilderClassDef> importDexFile(File dexFile, DexBuilder dexBuilder) throws Exception {
+        log.info("Importing: " + dexFile);
+
+        // For an APK, this reads classes.dex.
+        DexFile dex = DexFileFactory.loadDexFile(dexFile, Dexifier.API_LEVEL);
+
+        List<BuilderClassDef> result = new ArrayList<BuilderClassDef>();
+        for (ClassDef classDef : dex.getClasses()) {
+            result.add(importClassDef(classDef, dexBuilder));
+        }
+
+        return result;
+    }
+
+    private static BuilderClassDef importClassDef(ClassDef classDef, DexBuilder dexBuilder) {
+        List<BuilderField> fields = new ArrayList<BuilderField>();
+        for (Field field : classDef.getFields()) {
+            fields.add(dexBuilder.internField(field.getDefiningClass(), field.getName(), field.getType(),
+                            field.getAccessFlags(), field.getInitialValue(), field.getAnnotations()));
+        }
+
+        List<BuilderMethod> methods = new ArrayList<BuilderMethod>();
+        for (Method method : classDef.getMethods()) {
+            MethodImplementation implementation = method.getImplementation();
+            if (implementation != null) {
+                implementation = importImplementation(implementation, dexBuilder);
+            }
+
+            methods.add(dexBuilder.internMethod(method.getDefiningClass(), method.getName(), method.getParameters(),
+                            method.getReturnType(), method.getAccessFlags(), method.getAnnotations(), implementation));
+        }
+
+        return dexBuilder.internClassDef(classDef.getType(), classDef.getAccessFlags(), classDef.getSuperclass(),
+                        new ArrayList<String>(classDef.getInterfaces()), classDef.getSourceFile(),
+                        classDef.getAnnotations(), fields, methods);
+    }
+
+    private static MutableMethodImplementation importImplementation(final MethodImplementation implementation,
+                    final DexBuilder dexBuilder) {
+        // DexBuilder only writes references it interned itself, but everything read from the dex file references its
+        // own pools. Try blocks and debug items are interned while being copied.
+        MethodImplementation internedImplementation = new MethodImplementation() {
+            @Override
+            public int getRegisterCount() {
+                return implementation.getRegisterCount();
+            }
+
+            @Override
+            public Iterable<? extends Instruction> getInstructions() {
+                return implementation.getInstructions();
+            }
+
+            @Override
+            public List<? extends TryBlock<? extends ExceptionHandler>> getTryBlocks() {
+                List<TryBlock<ExceptionHandler>> result = new ArrayList<TryBlock<ExceptionHandler>>();
+                for (TryBlock<? extends ExceptionHandler> tryBlock : implementation.getTryBlocks()) {
+                    result.add(internTryBlock(tryBlock, dexBuilder));
+                }
+
+                return result;
+            }
+
+            @Override
+            public Iterable<? extends DebugItem> getDebugItems() {
+                List<DebugItem> result = new ArrayList<DebugItem>();
+                for (DebugItem debugItem : implementation.getDebugItems()) {
+                    result.add(internDebugItem(debugItem, dexBuilder));
+                }
+
+                return result;
+            }
+        };
+
+        MutableMethodImplementation result = new MutableMethodImplementation(internedImplementation);
+
+        // Instructions are replaced after copying since replacing an instruction with one of the same size keeps labels
+        // and addresses intact.
+        List<BuilderInstruction> instructions = result.getInstructions();
+        for (int index = 0; index < instructions.size(); index++) {
+            BuilderInstruction instruction = instructions.get(index);
+            if (instruction instanceof ReferenceInstruction) {
+                BuilderInstruction internedInstruction = internReferenceInstruction(instruction, dexBuilder);
+                if (internedInstruction != instruction) {
+                    result.replaceInstruction(index, internedInstruction);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static BuilderInstruction internReferenceInstruction(BuilderInstruction instruction,
+                    DexBuilder dexBuilder) {
+        Reference reference = dexBuilder.internReference(((ReferenceInstruction) instruction).getReference());
+
+        switch (instruction.getOpcode().format) {
+        case Format21c: {
+            Instruction21c instr = (Instruction21c) instruction;
+            return new BuilderInstruction21c(instr.getOpcode(), instr.getRegisterA(), reference);
+        }
+        case Format22c: {
+            Instruction22c instr = (Instruction22c) instruction;
+            return new BuilderInstruction22c(instr.getOpcode(), instr.getRegisterA(), instr.getRegisterB(), reference);
+        }
+        case Format31c: {
+            Instruction31c instr = (Instruction31c) instruction;
+            return new BuilderInstruction31c(instr.getOpcode(), instr.getRegisterA(), reference);
+        }
+        case Format35c: {
+            Instruction35c instr = (Instruction35c) instruction;
+            return new BuilderInstruction35c(instr.getOpcode(), instr.getRegisterCount(), instr.getRegisterC(),
+                            instr.getRegisterD(), instr.getRegisterE(), instr.getRegisterF(), instr.getRegisterG(),
+                            reference);
+        }
+        case Format3rc: {
+            Instruction3rc instr = (Instruction3rc) instruction;
+            return new BuilderInstruction3rc(instr.getOpcode(), instr.getStartRegister(), instr.getRegisterCount(),
+                            reference);
+        }
+        default:
+            // The method is still imported, and this instruction keeps the reference it was read with.
+            log.warning("Unable to intern reference of instruction: " + instruction.getOpcode().name);
+
+            return instruction;
+        }
+    }
+
+    private static DebugItem internDebugItem(final DebugItem debugItem, final DexBuilder dexBuilder) {
+        switch (debugItem.getDebugItemType()) {
+        case DebugItemType.START_LOCAL: {
+            final StartLocal startLocal = (StartLocal) debugItem;
+            return new StartLocal() {
+                @Override
+                public int getDebugItemType() {
+                    return startLocal.getDebugItemType();
+                }
+
+                @Override
+                public int getCodeAddress() {
+                    return startLocal.getCodeAddress();
+                }
+
+                @Override
+                public int getRegister() {
+                    return startLocal.getRegister();
+                }
+
+                @Override
+                public String getName() {
+                    return startLocal.getName();
+                }
+
+                @Override
+                public String getType() {
+                    return startLocal.getType();
+                }
+
+                @Override
+                public String getSignature() {
+                    return startLocal.getSignature();
+                }
+
+                @Override
+                public StringReference getNameReference() {
+                    return dexBuilder.internNullableStringReference(startLocal.getName());
+                }
+
+                @Override
+                public TypeReference getTypeReference() {
+                    return dexBuilder.internNullableTypeReference(startLocal.getType());
+                }
+
+                @Override
+                public StringReference getSignatureReference() {
+                    return dexBuilder.internNullableStringReference(startLocal.getSignature());
+                }
+            };
+        }
+        case DebugItemType.SET_SOURCE_FILE: {
+            final SetSourceFile setSourceFile = (SetSourceFile) debugItem;
+            return new SetSourceFile() {
+                @Override
+                public int getDebugItemType() {
+                    return setSourceFile.getDebugItemType();
+                }
+
+                @Override
+                public int getCodeAddress() {
+                    return setSourceFile.getCodeAddress();
+                }
+
+                @Override
+                public String getSourceFile() {
+                    return setSourceFile.getSourceFile();
+                }
+
+                @Override
+                public StringReference getSourceFileReference() {
+                    return dexBuilder.internNullableStringReference(setSourceFile.getSourceFile());
+                }
+            };
+        }
+        default:
+            // Everything else has no references.
+            return debugItem;
+        }
+    }
+
+    private static TryBlock<ExceptionHandler> internTryBlock(final TryBlock<? extends ExceptionHandler> tryBlock,
+                    final DexBuilder dexBuilder) {
+        final List<ExceptionHandler> handlers = new ArrayList<ExceptionHandler>();
+        for (final ExceptionHandler handler : tryBlock.getExceptionHandlers()) {
+            handlers.add(new BaseExceptionHandler() {
+                @Override
+                public String getExceptionType() {
+                    return handler.getExceptionType();
+                }
+
+                @Override
+                public TypeReference getExceptionTypeReference() {
+                    // Null for catch-all handlers.
+                    return dexBuilder.internNullableTypeReference(handler.getExceptionType());
+                }
+
+                @Override
+                public int getHandlerCodeAddress() {
+                    return handler.getHandlerCodeAddress();
+                }
+            });
+        }
+
+        return new BaseTryBlock<ExceptionHandler>() {
+            @Override
+            public int getStartCodeAddress() {
+                return tryBlock.getStartCodeAddress();
+            }
+
+            @Override
+            public int getCodeUnitCount() {
+                return tryBlock.getCodeUnitCount();
+            }
+
+            @Override
+            public List<? extends ExceptionHandler> getExceptionHandlers() {
+                return handlers;
+            }
+        };
+    }
+
+}
@@ -5,6 +5,11 @@ import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import org.antlr.runtime.CommonTokenStream;
@@ -34,23 +39,67 @@ public class Dexifier {
         return result;
     }
 
+    public static List<BuilderClassDef> dexifySmaliFiles(List<File> smaliFiles, final DexBuilder dexBuilder,
+                    int workerCount) throws Exception {
+        if (workerCount <= 1) {
+            return dexifySmaliFiles(smaliFiles, dexBuilder);
+        }
+
+        log.info("Dexifying " + smaliFiles.size() + " files with " + workerCount + " workers");
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            List<Future<BuilderClassDef>> futures = new ArrayList<Future<BuilderClassDef>>(smaliFiles.size());
+            for (final File smaliFile : smaliFiles) {
+                futures.add(executor.submit(new Callable<BuilderClassDef>() {
+                    @Override
+                    public BuilderClassDef call() throws Exception {
+                        return dexifySmaliFile(smaliFile, dexBuilder);
+                    }
+                }));
+            }
+
+            // Keep the same class order as a serial run.
+            List<BuilderClassDef> result = new ArrayList<BuilderClassDef>(smaliFiles.size());
+            for (Future<BuilderClassDef> future : futures) {
+                try {
+                    result.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     public static BuilderClassDef dexifySmaliFile(File smaliFile, DexBuilder dexBuilder) throws Exception {
         log.info("Dexifying: " + smaliFile);
 
+        // Lexing and parsing only touch this file, so they can run on many files at once.
         FileInputStream fis = new FileInputStream(smaliFile.getAbsolutePath());
         InputStreamReader reader = new InputStreamReader(fis, "UTF-8");
 
-        LexerErrorInterface lexer = new smaliFlexLexer(reader);
-        ((smaliFlexLexer) lexer).setSourceFile(smaliFile);
-        CommonTokenStream tokens = new CommonTokenStream((TokenSource) lexer);
+        CommonTokenStream tokens;
+        smaliParser.smali_file_return result;
+        try {
+            LexerErrorInterface lexer = new smaliFlexLexer(reader);
+            ((smaliFlexLexer) lexer).setSourceFile(smaliFile);
+            tokens = new CommonTokenStream((TokenSource) lexer);
 
-        smaliParser parser = new smaliParser(tokens);
-        parser.setApiLevel(API_LEVEL);
+            smaliParser parser = new smaliParser(tokens);
+            parser.setApiLevel(API_LEVEL);
 
-        smaliParser.smali_file_return result = parser.smali_file();
+            result = parser.smali_file();
 
-        if ((parser.getNumberOfSyntaxErrors() > 0) || (lexer.getNumberOfSyntaxErrors() > 0)) {
-            throw new RuntimeException("Unable to parse: " + smaliFile);
+            if ((parser.getNumberOfSyntaxErrors() > 0) || (lexer.getNumberOfSyntaxErrors() > 0)) {
+                throw new RuntimeException("Unable to parse: " + smaliFile);
+            }
+        } finally {
+            reader.close();
         }
 
         CommonTree t = result.getTree();
@@ -3,19 +3,37 @@ package simplify;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.builder.MethodLocation;
 import org.jf.dexlib2.util.ReferenceUtil;
 import org.jf.dexlib2.writer.builder.BuilderClassDef;
 import org.jf.dexlib2.writer.builder.BuilderMethod;
 import org.jf.dexlib2.writer.builder.DexBuilder;
 import org.jf.dexlib2.writer.io.FileDataStore;
 
+import simplify.emulate.MethodEmulator;
+import simplify.graph.CallGraph;
+import simplify.graph.CallGraphBuilder;
 import simplify.optimize.Simplifier;
 import simplify.vm.ContextGraph;
+import simplify.vm.ExecutionBudget;
+import simplify.vm.ExecutionProfiler;
+import simplify.vm.ExecutionTracer;
+import simplify.vm.SchedulingStrategy;
 import simplify.vm.VirtualMachine;
 
 public class Main {
@@ -24,56 +42,152 @@ public class Main {
 
     private static final Level LOG_LEVEL = Level.FINE;
 
+    // Part of every analysis cache key. Bump it when a change to the VM or optimizers changes what they produce.
+    private static final int ANALYSIS_VERSION = 1;
+
     private static final int MAX_NODE_VISITS = 1000;
     private static final int MAX_CALL_DEPTH = 10;
+    // Execution budgets are opt in since running out of one widens the rest of the method and changes the output.
+    private static final int MAX_METHOD_NODES = 0;
+    private static final long MAX_METHOD_MILLIS = 0;
+    private static final long MAX_METHOD_MEMORY = 0;
+    private static final int DEFAULT_WORKER_COUNT = 1;
 
     public static void main(String[] argv) throws Exception {
         setupLogger();
 
-        List<File> smaliFiles = new ArrayList<File>();
-        File f = new File(argv[0]);
-        if (f.isDirectory()) {
-            smaliFiles.addAll(Arrays.asList(f.listFiles()));
-        } else {
-            smaliFiles.add(f);
+        String inputPath = null;
+        int workerCount = DEFAULT_WORKER_COUNT;
+        boolean incremental = false;
+        boolean mergeStates = false;
+        boolean compactGraphs = false;
+        File profileFile = null;
+        File traceFile = null;
+        Pattern traceMethodPattern = null;
+        int traceSampleRate = 1;
+        File emulationPluginsFile = null;
+        SchedulingStrategy schedulingStrategy = SchedulingStrategy.BREADTH_FIRST;
+        int maxMethodNodes = MAX_METHOD_NODES;
+        long maxMethodMillis = MAX_METHOD_MILLIS;
+        long maxMethodMemory = MAX_METHOD_MEMORY;
+        File cacheFile = null;
+        for (int i = 0; i < argv.length; i++) {
+            String arg = argv[i];
+            if (arg.equals("-t") || arg.equals("--threads")) {
+                workerCount = Integer.parseInt(argv[++i]);
+            } else if (arg.equals("-i") || arg.equals("--incremental")) {
+                incremental = true;
+            } else if (arg.equals("-m") || arg.equals("--merge-states")) {
+                mergeStates = true;
+            } else if (arg.equals("-c") || arg.equals("--compact-graphs")) {
+                compactGraphs = true;
+            } else if (arg.equals("-p") || arg.equals("--profile")) {
+                profileFile = new File(argv[++i]);
+            } else if (arg.equals("-r") || arg.equals("--trace")) {
+                traceFile = new File(argv[++i]);
+            } else if (arg.equals("--trace-methods")) {
+                traceMethodPattern = Pattern.compile(argv[++i]);
+            } else if (arg.equals("--trace-sample")) {
+                // Trace every nth execution of each method.
+                traceSampleRate = Integer.parseInt(argv[++i]);
+            } else if (arg.equals("-e") || arg.equals("--emulation-plugins")) {
+                // Plugin jar or directory of jars with more emulated methods
+                emulationPluginsFile = new File(argv[++i]);
+            } else if (arg.equals("-s") || arg.equals("--scheduler")) {
+                // dfs, bfs, address or loop
+                schedulingStrategy = SchedulingStrategy.forName(argv[++i]);
+            } else if (arg.equals("--max-method-nodes")) {
+                // Budgets are per method execution, and 0 is unlimited.
+                maxMethodNodes = Integer.parseInt(argv[++i]);
+            } else if (arg.equals("--max-method-millis")) {
+                maxMethodMillis = Long.parseLong(argv[++i]);
+            } else if (arg.equals("--max-method-memory")) {
+                // Megabytes allocated by the executing thread, which includes garbage
+                maxMethodMemory = Long.parseLong(argv[++i]) * 1024 * 1024;
+            } else if (arg.equals("--cache")) {
+                // Results are kept here between runs, and unchanged methods aren't simplified again.
+                cacheFile = new File(argv[++i]);
+            } else {
+                inputPath = arg;
+            }
+        }
+
+        if (emulationPluginsFile != null) {
+            int libraryCount = MethodEmulator.loadLibraries(emulationPluginsFile);
+            log.info("Loaded " + libraryCount + " emulated method libraries from " + emulationPluginsFile);
         }
 
         DexBuilder dexBuilder = DexBuilder.makeDexBuilder(Dexifier.API_LEVEL);
-        List<BuilderClassDef> classDefs = Dexifier.dexifySmaliFiles(smaliFiles, dexBuilder);
+        List<BuilderClassDef> classDefs;
+        File f = new File(inputPath);
+        if (DexImporter.isDexFile(f)) {
+            classDefs = DexImporter.importDexFile(f, dexBuilder);
+        } else {
+            List<File> smaliFiles = new ArrayList<File>();
+            if (f.isDirectory()) {
+                addSmaliFiles(f, smaliFiles);
+            } else {
+                smaliFiles.add(f);
+            }
+            classDefs = Dexifier.dexifySmaliFiles(smaliFiles, dexBuilder, workerCount);
+        }
         List<BuilderMethod> methods = new ArrayList<BuilderMethod>();
         for (BuilderClassDef classDef : classDefs) {
             methods.addAll(classDef.getMethods());
         }
 
-        VirtualMachine vm = new VirtualMachine(classDefs, MAX_NODE_VISITS, MAX_CALL_DEPTH);
+        VirtualMachine vm = new VirtualMachine(classDefs, MAX_NODE_VISITS, MAX_CALL_DEPTH, mergeStates,
+                        compactGraphs);
+        vm.setSchedulingStrategy(schedulingStrategy);
+        vm.setExecutionBudget(new ExecutionBudget(maxMethodNodes, maxMethodMillis, maxMethodMemory));
+        if (profileFile != null) {
+            vm.setProfiler(new ExecutionProfiler());
+        }
+        if (traceFile != null) {
+            vm.setTracer(new ExecutionTracer(traceFile, traceMethodPattern, traceSampleRate));
+        }
 
-        outer: for (BuilderMethod method : methods) {
-            String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
+        // Callees are simplified before their callers so callers execute the simpler versions.
+        CallGraph callGraph = CallGraphBuilder.build(vm, methods);
+        Map<String, BuilderMethod> methodDescriptorToMethod = new HashMap<String, BuilderMethod>(methods.size());
+        for (BuilderMethod method : methods) {
+            methodDescriptorToMethod.put(ReferenceUtil.getMethodDescriptor(method), method);
+        }
 
-            boolean madeChanges = false;
-            int sweeps = 0;
-            do {
-                if (sweeps >= 1) {
-                    // break;
-                }
+        AnalysisCache cache = null;
+        if (cacheFile != null) {
+            // Time and memory budgets aren't included. Results from executions where they ran out aren't stored.
+            String plugins = emulationPluginsFile != null ? AnalysisCache.hashContents(emulationPluginsFile) : "none";
+            String configuration = ANALYSIS_VERSION + "," + MAX_NODE_VISITS + "," + MAX_CALL_DEPTH + "," + mergeStates
+                            + "," + maxMethodNodes + "," + schedulingStrategy.getName() + "," + plugins;
+            cache = AnalysisCache.open(cacheFile, dexBuilder, configuration);
+            cache.addMethods(callGraph, methodDescriptorToMethod);
+            int summaryCount = cache.loadSummaries(vm.getMethodSummaryCache());
+            log.info("Opened analysis cache " + cacheFile + ": " + cache + ", summaries=" + summaryCount);
+        }
 
-                ContextGraph graph = vm.execute(methodDescriptor);
-                if (graph == null) {
-                    log.info("Skipping " + methodDescriptor);
-                    continue outer;
-                }
+        if (workerCount > 1) {
+            simplifyComponentsInParallel(vm, dexBuilder, callGraph, methodDescriptorToMethod, workerCount,
+                            incremental, cache);
+        } else {
+            for (List<String> component : callGraph.getComponents()) {
+                simplifyComponent(vm, dexBuilder, component, methodDescriptorToMethod, incremental, cache);
+            }
+        }
 
-                // String methodName = method.getName();
-                // FileUtils.writeStringToFile(new File("graphs/" + methodName + ".dot"), graph.toGraph());
+        log.info("Method summary cache: " + vm.getMethodSummaryCache());
 
-                madeChanges = Simplifier.simplify(dexBuilder, method, graph);
-                if (madeChanges) {
-                    // Method implementations will have changed, so prepare to execute this again with the changes.
-                    vm.updateInstructionGraph(method);
-                }
+        if (cache != null) {
+            log.info("Saving analysis cache " + cacheFile + ": " + cache);
+            cache.save(vm.getMethodSummaryCache());
+        }
 
-                sweeps++;
-            } while (madeChanges);
+        if (profileFile != null) {
+            log.info("Writing profile to " + profileFile);
+            vm.getProfiler().writeReport(profileFile);
+        }
+        if (traceFile != null) {
+            vm.getTracer().close();
         }
 
         String outputDexFile = "out_simple.dex";
@@ -81,6 +195,133 @@ public class Main {
         dexBuilder.writeTo(new FileDataStore(new File(outputDexFile)));
     }
 
+    private static void addSmaliFiles(File directory, List<File> smaliFiles) {
+        // Baksmali writes a directory per package.
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addSmaliFiles(file, smaliFiles);
+            } else if (file.getName().endsWith(".smali")) {
+                smaliFiles.add(file);
+            }
+        }
+    }
+
+    private static void simplifyMethod(VirtualMachine vm, DexBuilder dexBuilder, BuilderMethod method,
+                    boolean incremental, AnalysisCache cache) {
+        String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
+
+        Map<MethodLocation, BuilderInstruction> locationToInstruction = null;
+        if (cache != null) {
+            if (cache.restore(method)) {
+                log.info("Restored " + methodDescriptor + " from analysis cache");
+                vm.updateInstructionGraph(method);
+                return;
+            }
+            locationToInstruction = AnalysisCache.getLocationToInstruction(method);
+        }
+        long runDependentCount = ExecutionBudget.getRunDependentCount();
+
+        ContextGraph graph = vm.execute(methodDescriptor);
+        boolean madeChanges = false;
+        int sweeps = 0;
+        do {
+            if (sweeps >= 1) {
+                // break;
+            }
+
+            if (graph == null) {
+                log.info("Skipping " + methodDescriptor);
+                return;
+            }
+
+            // String methodName = method.getName();
+            // FileUtils.writeStringToFile(new File("graphs/" + methodName + ".dot"), graph.toGraph());
+
+            madeChanges = Simplifier.simplify(dexBuilder, method, graph);
+            if (madeChanges) {
+                // Method implementations will have changed, so execute again with the changes. Incremental execution
+                // only re-executes paths through changed instructions.
+                graph = vm.updateAndExecute(method, incremental ? graph : null);
+            }
+
+            sweeps++;
+        } while (madeChanges);
+
+        if (cache != null) {
+            if (ExecutionBudget.getRunDependentCount() == runDependentCount) {
+                cache.store(method, locationToInstruction);
+            } else {
+                log.info("Not caching " + methodDescriptor + ", a time or memory budget ran out");
+            }
+        }
+    }
+
+    private static void simplifyComponent(VirtualMachine vm, DexBuilder dexBuilder, List<String> component,
+                    Map<String, BuilderMethod> methodDescriptorToMethod, boolean incremental, AnalysisCache cache) {
+        for (String methodDescriptor : component) {
+            simplifyMethod(vm, dexBuilder, methodDescriptorToMethod.get(methodDescriptor), incremental, cache);
+        }
+    }
+
+    private static void simplifyComponentsInParallel(final VirtualMachine vm, final DexBuilder dexBuilder,
+                    final CallGraph callGraph, final Map<String, BuilderMethod> methodDescriptorToMethod,
+                    int workerCount, final boolean incremental, final AnalysisCache cache) throws InterruptedException,
+                    ExecutionException {
+        log.info("Simplifying " + callGraph + " with " + workerCount + " workers");
+
+        // Each method is only ever touched by one worker, so its implementation can be changed without locking. Shared
+        // state is the VM (graph map, class initialization) and the DexBuilder's interned references. A component is
+        // only started once every component it calls is done, so components which don't depend on each other run
+        // in parallel.
+        int componentCount = callGraph.getComponentCount();
+        int[] remainingCallees = new int[componentCount];
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+        try {
+            int running = 0;
+            for (int component = 0; component < componentCount; component++) {
+                remainingCallees[component] = callGraph.getComponentCallees(component).length;
+                if (remainingCallees[component] == 0) {
+                    submitComponent(completionService, vm, dexBuilder, callGraph, component, methodDescriptorToMethod,
+                                    incremental, cache);
+                    running++;
+                }
+            }
+
+            while (running > 0) {
+                int finished = completionService.take().get();
+                running--;
+                for (int caller : callGraph.getComponentCallers(finished)) {
+                    remainingCallees[caller]--;
+                    if (remainingCallees[caller] == 0) {
+                        submitComponent(completionService, vm, dexBuilder, callGraph, caller,
+                                        methodDescriptorToMethod, incremental, cache);
+                        running++;
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void submitComponent(CompletionService<Integer> completionService, final VirtualMachine vm,
+                    final DexBuilder dexBuilder, final CallGraph callGraph, final int component,
+                    final Map<String, BuilderMethod> methodDescriptorToMethod, final boolean incremental,
+                    final AnalysisCache cache) {
+        completionService.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                simplifyComponent(vm, dexBuilder, callGraph.getComponents().get(component), methodDescriptorToMethod,
+                                incremental, cache);
+
+                return component;
+            }
+        });
+    }
+
     private static void setupLogger() {
         log.setLevel(LOG_LEVEL);
 
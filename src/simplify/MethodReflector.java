@@ -1,13 +1,17 @@
 package simplify;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.commons.beanutils.ConstructorUtils;
-import org.apache.commons.beanutils.MethodUtils;
 import org.jf.dexlib2.iface.reference.MethodReference;
 import org.jf.dexlib2.util.ReferenceUtil;
 
@@ -19,7 +23,12 @@ public class MethodReflector {
 
     private static List<String> SafeClasses;
     private static List<String> SafeMethods;
+
+    // Resolved once per method and shared by every reflector and thread.
+    private static final ConcurrentMap<String, MethodHandle> methodDescriptorToInvoker;
     static {
+        methodDescriptorToInvoker = new ConcurrentHashMap<String, MethodHandle>();
+
         SafeClasses = new ArrayList<String>();
         SafeClasses.add("Ljava/lang/Boolean;");
         SafeClasses.add("Ljava/lang/Byte;");
@@ -67,22 +76,73 @@ public class MethodReflector {
         return false;
     }
 
+    private static Class<?> getClass(String type) throws ClassNotFoundException {
+        switch (type) {
+        case "Z":
+            return boolean.class;
+        case "B":
+            return byte.class;
+        case "S":
+            return short.class;
+        case "C":
+            return char.class;
+        case "I":
+            return int.class;
+        case "J":
+            return long.class;
+        case "F":
+            return float.class;
+        case "D":
+            return double.class;
+        case "V":
+            return void.class;
+        }
+
+        if (type.startsWith("[")) {
+            // Class.forName takes arrays as [Ljava.lang.String; and [I
+            return Class.forName(type.replace('/', '.'));
+        }
+
+        return Class.forName(type.substring(1, type.length() - 1).replace('/', '.'));
+    }
+
+    private static Object getArgument(Object arg, String paramType) {
+        // Smali has no registers narrower than int, so booleans, bytes, chars and shorts are stored as integers.
+        if (!(arg instanceof Number)) {
+            return arg;
+        }
+
+        Number number = (Number) arg;
+        switch (paramType) {
+        case "Z":
+        case "Ljava/lang/Boolean;":
+            return number.intValue() != 0;
+        case "B":
+            return number.byteValue();
+        case "S":
+            return number.shortValue();
+        case "C":
+            return (char) number.intValue();
+        default:
+            return arg;
+        }
+    }
+
     private final String methodDescriptor;
     private final String methodName;
-    private final String className;
+    private final String definingClass;
     private final String returnType;
     private final boolean isStatic;
+    private final boolean isConstructor;
     private final List<String> parameterTypes;
 
     public MethodReflector(MethodReference methodReference, boolean isStatic) {
         methodDescriptor = ReferenceUtil.getMethodDescriptor(methodReference);
         methodName = methodReference.getName();
-
-        // ClassUtils expects Ljava.lang.Class;
-        className = methodReference.getDefiningClass().replaceAll("/", ".");
-
+        definingClass = methodReference.getDefiningClass();
         returnType = methodReference.getReturnType();
         this.isStatic = isStatic;
+        isConstructor = methodName.equals("<init>");
 
         List<? extends CharSequence> paramTypes = methodReference.getParameterTypes();
         parameterTypes = new ArrayList<String>(paramTypes.size());
@@ -91,72 +151,97 @@ public class MethodReflector {
         }
     }
 
-    public void reflect(MethodContext calleeContext) {
-        log.fine("Reflecting " + methodDescriptor + " with context:\n" + calleeContext);
+    public boolean reflect(MethodContext calleeContext) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Reflecting " + methodDescriptor + " with context:\n" + calleeContext);
+        }
 
         Object result = null;
         try {
-            // Class<?> clazz = ClassUtils.getClass(className, false);
-            Class<?> clazz = Class.forName(className.substring(1, className.length() - 1));
-
-            Object[] args = getArguments(calleeContext, isStatic, parameterTypes);
-            if (methodName.equals("<init>")) {
-                // This class is used by the JVM to do instance initialization, i.e. newInstance. Can't just reflect it.
-                log.fine("Reflecting " + methodDescriptor + ", clazz=" + clazz + " args=" + Arrays.toString(args));
-                result = ConstructorUtils.invokeConstructor(clazz, args);
-
-                calleeContext.assignParameter(-1, result);
-            } else {
-                if (isStatic) {
-                    log.fine("Reflecting " + methodDescriptor + ", clazz=" + clazz + " args=" + Arrays.toString(args));
-                    result = MethodUtils.invokeStaticMethod(clazz, methodName, args);
-                } else {
-                    Object target = calleeContext.peekRegister(0);
-                    log.fine("Reflecting " + methodDescriptor + ", target=" + target + " args=" + Arrays.toString(args));
-                    result = MethodUtils.invokeMethod(target, methodName, args);
-                }
-
-                boolean returnsVoid = returnType.equals("V");
-                if (!returnsVoid) {
-                    calleeContext.assignReturnRegister(result);
-                }
+            MethodHandle invoker = getInvoker();
+            Object[] args = getArguments(calleeContext);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Reflecting " + methodDescriptor + ", args=" + Arrays.toString(args));
             }
-        } catch (ClassNotFoundException | NoSuchMethodException | SecurityException | InstantiationException
-                        | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-            e.printStackTrace();
+            result = (Object) invoker.invokeExact(args);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            log.warning("Unable to resolve " + methodDescriptor + ": " + e);
+
+            return false;
+        } catch (Exception e) {
+            // Thrown by the reflected method, or arguments which don't fit the parameter types.
+            log.warning("Exception reflecting " + methodDescriptor + ": " + e);
+
+            return false;
+        } catch (Throwable e) {
+            // Only errors are left and those aren't the method's doing.
+            throw (Error) e;
         }
-    }
 
-    private static Object[] getArguments(MethodContext mctx, boolean isStatic, List<String> parameterTypes) {
-        int offset = 0;
-        if (!isStatic) {
-            // First element in context will be instance reference if non-static method.
-            offset = 1;
+        if (isConstructor) {
+            // This class is used by the JVM to do instance initialization, i.e. newInstance. The new instance replaces
+            // the uninitialized one.
+            calleeContext.assignParameter(-1, result);
+        } else if (!returnType.equals("V")) {
+            calleeContext.assignReturnRegister(result);
         }
 
-        List<Object> args = new ArrayList<Object>(mctx.getRegisterCount() - offset);
+        return true;
+    }
+
+    private Object[] getArguments(MethodContext mctx) {
         // For reflected methods, there are no locals. Instance and arguments start at 0.
         // 0=[instance register or arg1], 1=[arg#], ...
-        for (int i = offset; i < mctx.getRegisterCount(); i++) {
-            Object arg = mctx.peekRegister(i);
-
-            String paramType = parameterTypes.get(i - offset);
-            // Booleans are represented in Smali and stored internally as integers. Convert to boolean.
-            if (paramType.equals("Z") || paramType.equals("Ljava/lang/Boolean;")) {
-                if (arg.getClass() == Integer.class) {
-                    int intValue = (Integer) arg;
-                    arg = intValue == 0 ? false : true;
-                }
+        List<Object> args = new ArrayList<Object>(mctx.getRegisterCount());
+        int register = 0;
+        if (!isStatic) {
+            if (!isConstructor) {
+                // The instance is the target. Constructors make their own.
+                args.add(mctx.peekRegister(register));
             }
-            args.add(arg);
+            register++;
+        }
 
-            if (paramType.equals("J")) {
-                // Long tried every diet but is still fat and takes 2 registers. Could be thyroid.
-                i++;
-            }
+        for (String paramType : parameterTypes) {
+            args.add(getArgument(mctx.peekRegister(register), paramType));
+
+            // Long tried every diet but is still fat and takes 2 registers. Could be thyroid.
+            register += (paramType.equals("J") || paramType.equals("D")) ? 2 : 1;
         }
 
         return args.toArray();
     }
 
+    private MethodHandle getInvoker() throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
+        MethodHandle result = methodDescriptorToInvoker.get(methodDescriptor);
+        if (result != null) {
+            return result;
+        }
+
+        // Resolve the exact member named by the descriptor, rather than searching for one which fits the argument
+        // types on every call.
+        Class<?> clazz = getClass(definingClass);
+        Class<?>[] params = new Class<?>[parameterTypes.size()];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = getClass(parameterTypes.get(i));
+        }
+
+        Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle handle;
+        if (isConstructor) {
+            handle = lookup.findConstructor(clazz, MethodType.methodType(void.class, params));
+        } else if (isStatic) {
+            handle = lookup.findStatic(clazz, methodName, MethodType.methodType(getClass(returnType), params));
+        } else {
+            handle = lookup.findVirtual(clazz, methodName, MethodType.methodType(getClass(returnType), params));
+        }
+
+        // Take every argument as one Object[] and return an Object, boxing and unboxing primitives.
+        int parameterCount = handle.type().parameterCount();
+        result = handle.asType(handle.type().generic()).asSpreader(Object[].class, parameterCount);
+        methodDescriptorToInvoker.putIfAbsent(methodDescriptor, result);
+
+        return result;
+    }
+
 }
@@ -1,18 +1,21 @@
 package simplify;
 
-import gnu.trove.list.TIntList;
-
 public class Utils {
 
-    public static void deDuplicate(TIntList list) {
-        for (int i = 0; i < list.size(); i++) {
-            int item = list.get(i);
-            int firstIndex = list.indexOf(item);
-            while (firstIndex != list.lastIndexOf(item)) {
-                int lastIndex = list.lastIndexOf(item);
-                list.removeAt(lastIndex);
+    public static String escapeJson(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
             }
         }
+
+        return sb.toString();
     }
 
 }
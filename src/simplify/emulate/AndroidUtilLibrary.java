@@ -0,0 +1,172 @@
+package simplify.emulate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+
+import simplify.vm.MethodContext;
+
+@PluginImplementation
+public class AndroidUtilLibrary implements EmulatedMethodLibrary {
+
+    // android.util.Base64 flags
+    private static final int NO_PADDING = 1;
+    private static final int NO_WRAP = 2;
+    private static final int CRLF = 4;
+    private static final int URL_SAFE = 8;
+
+    // Groups of four characters per line when wrapping, i.e. 76 characters.
+    private static final int LINE_GROUPS = 19;
+
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final String URL_SAFE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    static byte[] base64Decode(byte[] input, int flags) {
+        // Like Android, characters outside of the alphabet are skipped and bad padding is an error.
+        String alphabet = (flags & URL_SAFE) == 0 ? ALPHABET : URL_SAFE_ALPHABET;
+        ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 3 / 4);
+        int bits = 0;
+        int count = 0;
+        int padding = 0;
+        for (byte b : input) {
+            char c = (char) (b & 0xff);
+            if (c == '=') {
+                padding++;
+                continue;
+            }
+
+            int value = alphabet.indexOf(c);
+            if (value < 0) {
+                continue;
+            }
+            if (padding > 0) {
+                throw new IllegalArgumentException("bad base-64");
+            }
+
+            bits = (bits << 6) | value;
+            count++;
+            if (count == 4) {
+                output.write(bits >> 16);
+                output.write(bits >> 8);
+                output.write(bits);
+                bits = 0;
+                count = 0;
+            }
+        }
+
+        if ((count == 1) || ((padding > 0) && ((count == 0) || ((count + padding) != 4)))) {
+            throw new IllegalArgumentException("bad base-64");
+        }
+        if (count == 2) {
+            output.write(bits >> 4);
+        } else if (count == 3) {
+            output.write(bits >> 10);
+            output.write(bits >> 2);
+        }
+
+        return output.toByteArray();
+    }
+
+    static byte[] base64Encode(byte[] input, int flags) {
+        String alphabet = (flags & URL_SAFE) == 0 ? ALPHABET : URL_SAFE_ALPHABET;
+        boolean doPadding = (flags & NO_PADDING) == 0;
+        boolean doNewline = (flags & NO_WRAP) == 0;
+        String newline = (flags & CRLF) == 0 ? "\n" : "\r\n";
+
+        StringBuilder sb = new StringBuilder((input.length + 2) / 3 * 4);
+        int groups = 0;
+        int i = 0;
+        for (; (i + 3) <= input.length; i += 3) {
+            int bits = ((input[i] & 0xff) << 16) | ((input[i + 1] & 0xff) << 8) | (input[i + 2] & 0xff);
+            sb.append(alphabet.charAt((bits >> 18) & 0x3f)).append(alphabet.charAt((bits >> 12) & 0x3f));
+            sb.append(alphabet.charAt((bits >> 6) & 0x3f)).append(alphabet.charAt(bits & 0x3f));
+
+            groups++;
+            if (doNewline && (groups == LINE_GROUPS)) {
+                sb.append(newline);
+                groups = 0;
+            }
+        }
+
+        int tail = input.length - i;
+        if (tail > 0) {
+            int bits = (input[i] & 0xff) << 16;
+            if (tail == 2) {
+                bits |= (input[i + 1] & 0xff) << 8;
+            }
+            sb.append(alphabet.charAt((bits >> 18) & 0x3f)).append(alphabet.charAt((bits >> 12) & 0x3f));
+            if (tail == 2) {
+                sb.append(alphabet.charAt((bits >> 6) & 0x3f));
+            }
+            if (doPadding) {
+                sb.append(tail == 2 ? "=" : "==");
+            }
+        }
+
+        // Wrapped output always ends with a newline unless it's empty or one was just added.
+        if (doNewline && ((tail > 0) || (groups > 0))) {
+            sb.append(newline);
+        }
+
+        return sb.toString().getBytes(US_ASCII);
+    }
+
+    private final Map<String, EmulatedMethod> emulatedMethods;
+    private final Set<String> methodsWithSideEffects;
+
+    public AndroidUtilLibrary() {
+        emulatedMethods = new HashMap<String, EmulatedMethod>();
+        methodsWithSideEffects = new HashSet<String>();
+
+        addBase64Methods();
+    }
+
+    @Override
+    public Map<String, EmulatedMethod> getEmulatedMethods() {
+        return emulatedMethods;
+    }
+
+    @Override
+    public Set<String> getMethodsWithSideEffects() {
+        return methodsWithSideEffects;
+    }
+
+    private void addBase64Methods() {
+        emulatedMethods.put("Landroid/util/Base64;->decode(Ljava/lang/String;I)[B", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] input = ((String) mctx.peekRegister(0)).getBytes(US_ASCII);
+                mctx.assignReturnRegister(base64Decode(input, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Landroid/util/Base64;->decode([BI)[B", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] input = (byte[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(base64Decode(input, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Landroid/util/Base64;->encode([BI)[B", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] input = (byte[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(base64Encode(input, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Landroid/util/Base64;->encodeToString([BI)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] input = (byte[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(new String(base64Encode(input, mctx.peekIntRegister(1)), US_ASCII));
+            }
+        });
+    }
+
+}
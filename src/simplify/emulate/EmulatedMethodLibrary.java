@@ -0,0 +1,16 @@
+package simplify.emulate;
+
+import java.util.Map;
+import java.util.Set;
+
+import net.xeoh.plugins.base.Plugin;
+
+public interface EmulatedMethodLibrary extends Plugin {
+
+    // Method descriptor to emulated method.
+    public Map<String, EmulatedMethod> getEmulatedMethods();
+
+    // Descriptors of methods which change something other than the instance or return value, e.g. an array argument.
+    public Set<String> getMethodsWithSideEffects();
+
+}
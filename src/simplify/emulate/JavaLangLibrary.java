@@ -0,0 +1,743 @@
+package simplify.emulate;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+
+import simplify.vm.MethodContext;
+
+@PluginImplementation
+public class JavaLangLibrary implements EmulatedMethodLibrary {
+
+    // Arguments start at r0, or r1 after the instance. Wide arguments take two registers. Results are boxed the same
+    // way reflection would box them so emulated and reflected values can't be told apart.
+
+    private final Map<String, EmulatedMethod> emulatedMethods;
+    private final Set<String> methodsWithSideEffects;
+
+    public JavaLangLibrary() {
+        emulatedMethods = new HashMap<String, EmulatedMethod>();
+        methodsWithSideEffects = new HashSet<String>();
+
+        addStringMethods();
+        addStringBuilderMethods();
+        addIntegerMethods();
+        addLongMethods();
+        addCharacterMethods();
+        addMathMethods();
+        addSystemMethods();
+    }
+
+    @Override
+    public Map<String, EmulatedMethod> getEmulatedMethods() {
+        return emulatedMethods;
+    }
+
+    @Override
+    public Set<String> getMethodsWithSideEffects() {
+        return methodsWithSideEffects;
+    }
+
+    private void addStringMethods() {
+        emulatedMethods.put("Ljava/lang/String;-><init>()V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, new String());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;-><init>(Ljava/lang/String;)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, new String((String) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;-><init>([B)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, new String((byte[]) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;-><init>([BII)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] bytes = (byte[]) mctx.peekRegister(1);
+                mctx.assignParameter(-1, new String(bytes, mctx.peekIntRegister(2), mctx.peekIntRegister(3)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;-><init>([BLjava/lang/String;)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] bytes = (byte[]) mctx.peekRegister(1);
+                String charsetName = (String) mctx.peekRegister(2);
+                try {
+                    mctx.assignParameter(-1, new String(bytes, charsetName));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;-><init>([C)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, new String((char[]) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;-><init>([CII)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                char[] chars = (char[]) mctx.peekRegister(1);
+                mctx.assignParameter(-1, new String(chars, mctx.peekIntRegister(2), mctx.peekIntRegister(3)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->charAt(I)C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.charAt(mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->compareTo(Ljava/lang/String;)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.compareTo((String) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->concat(Ljava/lang/String;)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.concat((String) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->contains(Ljava/lang/CharSequence;)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.contains((CharSequence) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->endsWith(Ljava/lang/String;)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.endsWith((String) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->equals(Ljava/lang/Object;)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.equals(mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->equalsIgnoreCase(Ljava/lang/String;)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.equalsIgnoreCase((String) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->getBytes()[B", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.getBytes());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->getBytes(Ljava/lang/String;)[B", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                try {
+                    mctx.assignReturnRegister(instance.getBytes((String) mctx.peekRegister(1)));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalArgumentException(e);
+                }
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->hashCode()I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.hashCode());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->indexOf(I)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.indexOf(mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->indexOf(Ljava/lang/String;)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.indexOf((String) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->intern()Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.intern());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->isEmpty()Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.isEmpty());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->lastIndexOf(I)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.lastIndexOf(mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->length()I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.length());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->replace(CC)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                char oldChar = (char) mctx.peekIntRegister(1);
+                char newChar = (char) mctx.peekIntRegister(2);
+                mctx.assignReturnRegister(instance.replace(oldChar, newChar));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->replace(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)"
+                        + "Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                CharSequence target = (CharSequence) mctx.peekRegister(1);
+                CharSequence replacement = (CharSequence) mctx.peekRegister(2);
+                mctx.assignReturnRegister(instance.replace(target, replacement));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->split(Ljava/lang/String;)[Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.split((String) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->startsWith(Ljava/lang/String;)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.startsWith((String) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->substring(I)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.substring(mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->substring(II)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.substring(mctx.peekIntRegister(1), mctx.peekIntRegister(2)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->toCharArray()[C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.toCharArray());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->toLowerCase()Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.toLowerCase());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->toString()Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(mctx.peekRegister(0));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->toUpperCase()Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.toUpperCase());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->trim()Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String instance = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.trim());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->valueOf(C)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(String.valueOf((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->valueOf(I)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(String.valueOf(mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->valueOf(J)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(String.valueOf(mctx.peekLongRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->valueOf(Z)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(String.valueOf(mctx.peekIntRegister(0) != 0));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/String;->valueOf([C)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(String.valueOf((char[]) mctx.peekRegister(0)));
+            }
+        });
+    }
+
+    private void addStringBuilderMethods() {
+        emulatedMethods.put("Ljava/lang/StringBuilder;-><init>()V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, new StringBuilder());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;-><init>(I)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, new StringBuilder(mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;-><init>(Ljava/lang/String;)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, new StringBuilder((String) mctx.peekRegister(1)));
+            }
+        });
+        // Appends and inserts change the instance in place and return it, same as the real method.
+        emulatedMethods.put("Ljava/lang/StringBuilder;->append(C)Ljava/lang/StringBuilder;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.append((char) mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->append(I)Ljava/lang/StringBuilder;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.append(mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->append(J)Ljava/lang/StringBuilder;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.append(mctx.peekLongRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->append(Z)Ljava/lang/StringBuilder;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.append(mctx.peekIntRegister(1) != 0));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->append(Ljava/lang/CharSequence;)Ljava/lang/StringBuilder;",
+                        new EmulatedMethod() {
+                            @Override
+                            public void execute(MethodContext mctx) {
+                                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                                CharSequence value = (CharSequence) mctx.peekRegister(1);
+                                mctx.assignReturnRegister(instance.append(value));
+                            }
+                        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->append(Ljava/lang/String;)Ljava/lang/StringBuilder;",
+                        new EmulatedMethod() {
+                            @Override
+                            public void execute(MethodContext mctx) {
+                                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                                mctx.assignReturnRegister(instance.append((String) mctx.peekRegister(1)));
+                            }
+                        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->charAt(I)C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.charAt(mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->deleteCharAt(I)Ljava/lang/StringBuilder;",
+                        new EmulatedMethod() {
+                            @Override
+                            public void execute(MethodContext mctx) {
+                                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                                mctx.assignReturnRegister(instance.deleteCharAt(mctx.peekIntRegister(1)));
+                            }
+                        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->insert(IC)Ljava/lang/StringBuilder;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                int offset = mctx.peekIntRegister(1);
+                mctx.assignReturnRegister(instance.insert(offset, (char) mctx.peekIntRegister(2)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->insert(ILjava/lang/String;)Ljava/lang/StringBuilder;",
+                        new EmulatedMethod() {
+                            @Override
+                            public void execute(MethodContext mctx) {
+                                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                                int offset = mctx.peekIntRegister(1);
+                                mctx.assignReturnRegister(instance.insert(offset, (String) mctx.peekRegister(2)));
+                            }
+                        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->length()I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.length());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->reverse()Ljava/lang/StringBuilder;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.reverse());
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->setCharAt(IC)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                instance.setCharAt(mctx.peekIntRegister(1), (char) mctx.peekIntRegister(2));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->setLength(I)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                instance.setLength(mctx.peekIntRegister(1));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/StringBuilder;->toString()Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                StringBuilder instance = (StringBuilder) mctx.peekRegister(0);
+                mctx.assignReturnRegister(instance.toString());
+            }
+        });
+    }
+
+    private void addIntegerMethods() {
+        emulatedMethods.put("Ljava/lang/Integer;-><init>(I)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, Integer.valueOf(mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->intValue()I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(mctx.peekIntRegister(0));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->parseInt(Ljava/lang/String;)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Integer.parseInt((String) mctx.peekRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->parseInt(Ljava/lang/String;I)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String value = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(Integer.parseInt(value, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->toBinaryString(I)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Integer.toBinaryString(mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->toHexString(I)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Integer.toHexString(mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->toString()Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Integer.toString(mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->toString(I)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Integer.toString(mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->toString(II)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Integer.toString(mctx.peekIntRegister(0), mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->valueOf(I)Ljava/lang/Integer;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Integer.valueOf(mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Integer;->valueOf(Ljava/lang/String;)Ljava/lang/Integer;",
+                        new EmulatedMethod() {
+                            @Override
+                            public void execute(MethodContext mctx) {
+                                mctx.assignReturnRegister(Integer.valueOf((String) mctx.peekRegister(0)));
+                            }
+                        });
+    }
+
+    private void addLongMethods() {
+        emulatedMethods.put("Ljava/lang/Long;-><init>(J)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignParameter(-1, Long.valueOf(mctx.peekLongRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Long;->longValue()J", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(mctx.peekLongRegister(0));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Long;->parseLong(Ljava/lang/String;)J", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Long.parseLong((String) mctx.peekRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Long;->parseLong(Ljava/lang/String;I)J", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                String value = (String) mctx.peekRegister(0);
+                mctx.assignReturnRegister(Long.parseLong(value, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Long;->toHexString(J)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Long.toHexString(mctx.peekLongRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Long;->toString(J)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Long.toString(mctx.peekLongRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Long;->valueOf(J)Ljava/lang/Long;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Long.valueOf(mctx.peekLongRegister(0)));
+            }
+        });
+    }
+
+    private void addCharacterMethods() {
+        emulatedMethods.put("Ljava/lang/Character;->charValue()C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister((char) mctx.peekIntRegister(0));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->digit(CI)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                char ch = (char) mctx.peekIntRegister(0);
+                mctx.assignReturnRegister(Character.digit(ch, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->forDigit(II)C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.forDigit(mctx.peekIntRegister(0), mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->isDigit(C)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.isDigit((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->isLetter(C)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.isLetter((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->isLetterOrDigit(C)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.isLetterOrDigit((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->isLowerCase(C)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.isLowerCase((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->isUpperCase(C)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.isUpperCase((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->isWhitespace(C)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.isWhitespace((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->toLowerCase(C)C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.toLowerCase((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->toUpperCase(C)C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.toUpperCase((char) mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Character;->valueOf(C)Ljava/lang/Character;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Character.valueOf((char) mctx.peekIntRegister(0)));
+            }
+        });
+    }
+
+    private void addMathMethods() {
+        emulatedMethods.put("Ljava/lang/Math;->abs(I)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.abs(mctx.peekIntRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->abs(J)J", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.abs(mctx.peekLongRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->abs(D)D", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.abs(mctx.peekDoubleRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->ceil(D)D", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.ceil(mctx.peekDoubleRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->floor(D)D", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.floor(mctx.peekDoubleRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->max(II)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.max(mctx.peekIntRegister(0), mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->max(JJ)J", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.max(mctx.peekLongRegister(0), mctx.peekLongRegister(2)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->min(II)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.min(mctx.peekIntRegister(0), mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->min(JJ)J", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.min(mctx.peekLongRegister(0), mctx.peekLongRegister(2)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->pow(DD)D", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.pow(mctx.peekDoubleRegister(0), mctx.peekDoubleRegister(2)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->round(D)J", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.round(mctx.peekDoubleRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/lang/Math;->sqrt(D)D", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Math.sqrt(mctx.peekDoubleRegister(0)));
+            }
+        });
+    }
+
+    private void addSystemMethods() {
+        String arraycopy = "Ljava/lang/System;->arraycopy(Ljava/lang/Object;ILjava/lang/Object;II)V";
+        emulatedMethods.put(arraycopy, new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                Object src = mctx.peekRegister(0);
+                int srcPos = mctx.peekIntRegister(1);
+                Object dest = mctx.peekRegister(2);
+                int destPos = mctx.peekIntRegister(3);
+                System.arraycopy(src, srcPos, dest, destPos, mctx.peekIntRegister(4));
+            }
+        });
+        // Changes the destination array, which isn't the instance.
+        methodsWithSideEffects.add(arraycopy);
+    }
+
+}
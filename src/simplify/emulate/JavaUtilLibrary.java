@@ -0,0 +1,146 @@
+package simplify.emulate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.xeoh.plugins.base.annotations.PluginImplementation;
+
+import simplify.vm.MethodContext;
+
+@PluginImplementation
+public class JavaUtilLibrary implements EmulatedMethodLibrary {
+
+    private final Map<String, EmulatedMethod> emulatedMethods;
+    private final Set<String> methodsWithSideEffects;
+
+    public JavaUtilLibrary() {
+        emulatedMethods = new HashMap<String, EmulatedMethod>();
+        methodsWithSideEffects = new HashSet<String>();
+
+        addArraysMethods();
+    }
+
+    @Override
+    public Map<String, EmulatedMethod> getEmulatedMethods() {
+        return emulatedMethods;
+    }
+
+    @Override
+    public Set<String> getMethodsWithSideEffects() {
+        return methodsWithSideEffects;
+    }
+
+    private void addArraysMethods() {
+        emulatedMethods.put("Ljava/util/Arrays;->copyOf([BI)[B", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] original = (byte[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(Arrays.copyOf(original, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->copyOf([CI)[C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                char[] original = (char[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(Arrays.copyOf(original, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->copyOf([II)[I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                int[] original = (int[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(Arrays.copyOf(original, mctx.peekIntRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->copyOfRange([BII)[B", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] original = (byte[]) mctx.peekRegister(0);
+                int from = mctx.peekIntRegister(1);
+                mctx.assignReturnRegister(Arrays.copyOfRange(original, from, mctx.peekIntRegister(2)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->copyOfRange([CII)[C", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                char[] original = (char[]) mctx.peekRegister(0);
+                int from = mctx.peekIntRegister(1);
+                mctx.assignReturnRegister(Arrays.copyOfRange(original, from, mctx.peekIntRegister(2)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->copyOfRange([III)[I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                int[] original = (int[]) mctx.peekRegister(0);
+                int from = mctx.peekIntRegister(1);
+                mctx.assignReturnRegister(Arrays.copyOfRange(original, from, mctx.peekIntRegister(2)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->equals([B[B)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                byte[] a = (byte[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(Arrays.equals(a, (byte[]) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->equals([C[C)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                char[] a = (char[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(Arrays.equals(a, (char[]) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->equals([I[I)Z", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                int[] a = (int[]) mctx.peekRegister(0);
+                mctx.assignReturnRegister(Arrays.equals(a, (int[]) mctx.peekRegister(1)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->hashCode([B)I", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Arrays.hashCode((byte[]) mctx.peekRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->toString([B)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Arrays.toString((byte[]) mctx.peekRegister(0)));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->toString([I)Ljava/lang/String;", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                mctx.assignReturnRegister(Arrays.toString((int[]) mctx.peekRegister(0)));
+            }
+        });
+
+        // Fills change the array argument, which isn't the instance.
+        emulatedMethods.put("Ljava/util/Arrays;->fill([BB)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                Arrays.fill((byte[]) mctx.peekRegister(0), (byte) mctx.peekIntRegister(1));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->fill([CC)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                Arrays.fill((char[]) mctx.peekRegister(0), (char) mctx.peekIntRegister(1));
+            }
+        });
+        emulatedMethods.put("Ljava/util/Arrays;->fill([II)V", new EmulatedMethod() {
+            @Override
+            public void execute(MethodContext mctx) {
+                Arrays.fill((int[]) mctx.peekRegister(0), mctx.peekIntRegister(1));
+            }
+        });
+        methodsWithSideEffects.add("Ljava/util/Arrays;->fill([BB)V");
+        methodsWithSideEffects.add("Ljava/util/Arrays;->fill([CC)V");
+        methodsWithSideEffects.add("Ljava/util/Arrays;->fill([II)V");
+    }
+
+}
@@ -1,27 +1,84 @@
 package simplify.emulate;
 
-import java.util.HashMap;
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 
+import net.xeoh.plugins.base.PluginManager;
+import net.xeoh.plugins.base.impl.PluginManagerFactory;
+import net.xeoh.plugins.base.util.PluginManagerUtil;
+
+import simplify.Main;
 import simplify.vm.MethodContext;
 
 public class MethodEmulator {
 
-    private static Map<String, EmulatedMethod> emulatedMethods;
+    private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
+
+    private static final Map<String, EmulatedMethod> emulatedMethods;
+    private static final Set<String> methodsWithSideEffects;
     static {
-        emulatedMethods = new HashMap<String, EmulatedMethod>();
+        emulatedMethods = new ConcurrentHashMap<String, EmulatedMethod>();
+        methodsWithSideEffects = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        addLibrary(new JavaLangLibrary());
+        addLibrary(new JavaUtilLibrary());
+        addLibrary(new AndroidUtilLibrary());
+    }
 
-        // emulatedMethods.put("Ljava/lang/Integer;-><init>(I)V", new java_lang_Integer_init());
+    public static void addLibrary(EmulatedMethodLibrary library) {
+        // Later libraries replace any methods already emulated.
+        Set<String> libraryMethodsWithSideEffects = library.getMethodsWithSideEffects();
+        for (Map.Entry<String, EmulatedMethod> entry : library.getEmulatedMethods().entrySet()) {
+            String methodDescriptor = entry.getKey();
+            emulatedMethods.put(methodDescriptor, entry.getValue());
+            if (libraryMethodsWithSideEffects.contains(methodDescriptor)) {
+                methodsWithSideEffects.add(methodDescriptor);
+            } else {
+                methodsWithSideEffects.remove(methodDescriptor);
+            }
+        }
+    }
+
+    public static int loadLibraries(File location) {
+        // Location can be a plugin jar or a directory of them.
+        PluginManager pluginManager = PluginManagerFactory.createPluginManager();
+        pluginManager.addPluginsFrom(location.toURI());
+
+        Collection<EmulatedMethodLibrary> libraries = new PluginManagerUtil(pluginManager)
+                        .getPlugins(EmulatedMethodLibrary.class);
+        for (EmulatedMethodLibrary library : libraries) {
+            log.info("Adding emulated method library " + library.getClass().getName());
+            addLibrary(library);
+        }
+
+        return libraries.size();
     }
 
     public static boolean canEmulate(String methodDescriptor) {
         return emulatedMethods.containsKey(methodDescriptor);
     }
 
-    public static void emulate(MethodContext mctx, String methodDescriptor) {
+    public static boolean emulate(MethodContext mctx, String methodDescriptor) {
+        // Returns false if the emulated method threw, e.g. from a bad index, and nothing was assigned.
         EmulatedMethod em = emulatedMethods.get(methodDescriptor);
-        if (em instanceof EmulatedMethod) {
+        try {
             em.execute(mctx);
+        } catch (RuntimeException e) {
+            log.warning("Exception emulating " + methodDescriptor + ": " + e);
+
+            return false;
         }
+
+        return true;
     }
+
+    public static boolean hasSideEffects(String methodDescriptor) {
+        return methodsWithSideEffects.contains(methodDescriptor);
+    }
+
 }
@@ -0,0 +1,80 @@
+package simplify.graph;
+
+public class BasicBlock {
+
+    private final int index;
+    private final int[] addresses;
+
+    private int[] successors;
+    private int[] predecessors;
+    private int immediateDominator;
+    private boolean isLoopHeader;
+
+    BasicBlock(int index, int[] addresses) {
+        this.index = index;
+        this.addresses = addresses;
+
+        immediateDominator = -1;
+    }
+
+    public int[] getAddresses() {
+        return addresses;
+    }
+
+    public int getEndAddress() {
+        return addresses[addresses.length - 1];
+    }
+
+    public int getImmediateDominator() {
+        // Index of the closest block every path from the entry passes through, or -1 for the entry and unreachable
+        // blocks.
+        return immediateDominator;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int[] getPredecessors() {
+        return predecessors;
+    }
+
+    public int getStartAddress() {
+        return addresses[0];
+    }
+
+    public int[] getSuccessors() {
+        return successors;
+    }
+
+    public boolean isLoopHeader() {
+        return isLoopHeader;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("block ").append(index).append(" [#").append(getStartAddress()).append(" - #")
+                        .append(getEndAddress()).append("]");
+
+        return sb.toString();
+    }
+
+    void setImmediateDominator(int immediateDominator) {
+        this.immediateDominator = immediateDominator;
+    }
+
+    void setLoopHeader(boolean isLoopHeader) {
+        this.isLoopHeader = isLoopHeader;
+    }
+
+    void setPredecessors(int[] predecessors) {
+        this.predecessors = predecessors;
+    }
+
+    void setSuccessors(int[] successors) {
+        this.successors = successors;
+    }
+
+}
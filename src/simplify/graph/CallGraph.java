@@ -0,0 +1,186 @@
+package simplify.graph;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class CallGraph {
+
+    private final List<String> methodDescriptors;
+    private final TObjectIntMap<String> methodDescriptorToIndex;
+    private final List<int[]> methodToCallees;
+
+    private final List<List<String>> components;
+    private final int[] methodToComponent;
+    private final List<int[]> componentToCallees;
+    private final List<int[]> componentToCallers;
+
+    CallGraph(List<String> methodDescriptors, Map<String, ? extends Collection<String>> methodDescriptorToCallees) {
+        this.methodDescriptors = methodDescriptors;
+
+        methodDescriptorToIndex = new TObjectIntHashMap<String>(methodDescriptors.size(), 0.5F, -1);
+        for (int i = 0; i < methodDescriptors.size(); i++) {
+            methodDescriptorToIndex.put(methodDescriptors.get(i), i);
+        }
+
+        methodToCallees = new ArrayList<int[]>(methodDescriptors.size());
+        for (String methodDescriptor : methodDescriptors) {
+            TIntList callees = new TIntArrayList();
+            for (String callee : methodDescriptorToCallees.get(methodDescriptor)) {
+                int calleeIndex = methodDescriptorToIndex.get(callee);
+                if ((calleeIndex >= 0) && !callees.contains(calleeIndex)) {
+                    callees.add(calleeIndex);
+                }
+            }
+            methodToCallees.add(callees.toArray());
+        }
+
+        components = new ArrayList<List<String>>();
+        methodToComponent = new int[methodDescriptors.size()];
+        buildComponents();
+
+        componentToCallees = new ArrayList<int[]>(components.size());
+        List<TIntSet> componentToCallerSet = new ArrayList<TIntSet>(components.size());
+        for (int i = 0; i < components.size(); i++) {
+            componentToCallerSet.add(new TIntHashSet());
+        }
+        for (int component = 0; component < components.size(); component++) {
+            TIntSet callees = new TIntHashSet();
+            for (String methodDescriptor : components.get(component)) {
+                for (int callee : methodToCallees.get(methodDescriptorToIndex.get(methodDescriptor))) {
+                    int calleeComponent = methodToComponent[callee];
+                    if (calleeComponent != component) {
+                        callees.add(calleeComponent);
+                        componentToCallerSet.get(calleeComponent).add(component);
+                    }
+                }
+            }
+            componentToCallees.add(callees.toArray());
+        }
+
+        componentToCallers = new ArrayList<int[]>(components.size());
+        for (TIntSet callers : componentToCallerSet) {
+            componentToCallers.add(callers.toArray());
+        }
+    }
+
+    public List<String> getCallees(String methodDescriptor) {
+        List<String> result = new ArrayList<String>();
+        for (int callee : methodToCallees.get(methodDescriptorToIndex.get(methodDescriptor))) {
+            result.add(methodDescriptors.get(callee));
+        }
+
+        return result;
+    }
+
+    public int getComponentCount() {
+        return components.size();
+    }
+
+    public int[] getComponentCallees(int component) {
+        // Other components with methods called by this component's methods.
+        return componentToCallees.get(component);
+    }
+
+    public int[] getComponentCallers(int component) {
+        return componentToCallers.get(component);
+    }
+
+    public List<List<String>> getComponents() {
+        // Strongly connected components, callees before callers. Methods in the same component call each other
+        // recursively, so there's no order which puts every callee first.
+        return components;
+    }
+
+    public List<String> getMethodDescriptors() {
+        return methodDescriptors;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("methods=").append(methodDescriptors.size()).append(", components=").append(components.size());
+
+        return sb.toString();
+    }
+
+    private void buildComponents() {
+        // Tarjan's algorithm, without recursion since call chains can be deep. A component is finished only after
+        // every component it calls, so they come out callees first.
+        int methodCount = methodDescriptors.size();
+        int[] visitIndex = new int[methodCount];
+        int[] lowLink = new int[methodCount];
+        boolean[] onStack = new boolean[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            visitIndex[i] = -1;
+        }
+
+        TIntList componentStack = new TIntArrayList();
+        TIntList callStack = new TIntArrayList();
+        TIntList calleeIndexStack = new TIntArrayList();
+        int nextVisitIndex = 0;
+        for (int root = 0; root < methodCount; root++) {
+            if (visitIndex[root] >= 0) {
+                continue;
+            }
+
+            visitIndex[root] = lowLink[root] = nextVisitIndex++;
+            componentStack.add(root);
+            onStack[root] = true;
+            callStack.add(root);
+            calleeIndexStack.add(0);
+            while (callStack.size() > 0) {
+                int top = callStack.size() - 1;
+                int method = callStack.get(top);
+                int[] callees = methodToCallees.get(method);
+                int calleeIndex = calleeIndexStack.get(top);
+                if (calleeIndex < callees.length) {
+                    calleeIndexStack.set(top, calleeIndex + 1);
+                    int callee = callees[calleeIndex];
+                    if (visitIndex[callee] < 0) {
+                        visitIndex[callee] = lowLink[callee] = nextVisitIndex++;
+                        componentStack.add(callee);
+                        onStack[callee] = true;
+                        callStack.add(callee);
+                        calleeIndexStack.add(0);
+                    } else if (onStack[callee]) {
+                        lowLink[method] = Math.min(lowLink[method], visitIndex[callee]);
+                    }
+                    continue;
+                }
+
+                callStack.removeAt(top);
+                calleeIndexStack.removeAt(top);
+                if (top > 0) {
+                    int caller = callStack.get(top - 1);
+                    lowLink[caller] = Math.min(lowLink[caller], lowLink[method]);
+                }
+
+                if (lowLink[method] == visitIndex[method]) {
+                    int component = components.size();
+                    List<String> componentMethods = new ArrayList<String>();
+                    int member;
+                    do {
+                        member = componentStack.removeAt(componentStack.size() - 1);
+                        onStack[member] = false;
+                        methodToComponent[member] = component;
+                        componentMethods.add(methodDescriptors.get(member));
+                    } while (member != method);
+                    Collections.reverse(componentMethods);
+                    components.add(componentMethods);
+                }
+            }
+        }
+    }
+
+}
@@ -1,83 +1,62 @@
-//package simplify.graph;
-//
-//import java.util.List;
-//import java.util.logging.Logger;
-//
-//import org.jf.dexlib2.builder.BuilderInstruction;
-//import org.jf.dexlib2.builder.MutableMethodImplementation;
-//import org.jf.dexlib2.iface.instruction.OffsetInstruction;
-//import org.jf.dexlib2.iface.instruction.SwitchElement;
-//import org.jf.dexlib2.iface.instruction.SwitchPayload;
-//import org.jf.dexlib2.writer.builder.BuilderMethod;
-//import org.jf.util.SparseArray;
-//
-//import simplify.Main;
-//
-//public class CallGraphBuilder {
-//
-//    private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
-//
-//    public static InstructionNode build(BuilderMethod method) {
-//        log.fine("Building refactor.graph for: " + method.getName());
-//
-//        MutableMethodImplementation impl = (MutableMethodImplementation) method.getImplementation();
-//        List<BuilderInstruction> instructions = impl.getInstructions();
-//        SparseArray<BuilderInstruction> instructionOffsets = getInstructionOffsets(instructions);
-//        SparseArray<InstructionNode> nodeIndicies = getNodeIndicies(instructions);
-//
-//        InstructionNode rootNode = nodeIndicies.get(0);
-//        int currentCodeOffset = 0;
-//        for (int i = 0; i < instructions.size(); i++) {
-//            BuilderInstruction instruction = instructions.get(i);
-//            InstructionNode currentNode = nodeIndicies.get(instruction.getLocation().getIndex());
-//
-//            if (instruction instanceof OffsetInstruction) {
-//                int targetOffset = currentCodeOffset + ((OffsetInstruction) instruction).getCodeOffset();
-//                BuilderInstruction targetInstruction = instructionOffsets.get(targetOffset);
-//                if (targetInstruction instanceof SwitchPayload) {
-//                    SwitchPayload payload = (SwitchPayload) targetInstruction;
-//                    for (SwitchElement element : payload.getSwitchElements()) {
-//                        BuilderInstruction switchInstruction = instructionOffsets.get(element.getOffset());
-//                        InstructionNode child = nodeIndicies.get(switchInstruction.getLocation().getIndex());
-//                        currentNode.addChild(child);
-//                    }
-//                } else {
-//                    InstructionNode child = nodeIndicies.get(targetInstruction.getLocation().getIndex());
-//                    currentNode.addChild(child);
-//                }
-//            }
-//
-//            if (instruction.getOpcode().canContinue() && ((i + 1) < instructions.size())) {
-//                InstructionNode child = nodeIndicies.get(instructions.get(i + 1).getLocation().getIndex());
-//                currentNode.addChild(child);
-//            }
-//
-//            currentCodeOffset += instruction.getCodeUnits();
-//        }
-//
-//        return rootNode;
-//    }
-//
-//    private static SparseArray<BuilderInstruction> getInstructionOffsets(List<BuilderInstruction> instructions) {
-//        SparseArray<BuilderInstruction> result = new SparseArray<BuilderInstruction>();
-//
-//        int currentCodeOffset = 0;
-//        for (BuilderInstruction instruction : instructions) {
-//            result.append(currentCodeOffset, instruction);
-//            currentCodeOffset += instruction.getCodeUnits();
-//        }
-//
-//        return result;
-//    }
-//
-//    private static SparseArray<InstructionNode> getNodeIndicies(List<BuilderInstruction> instructions) {
-//        SparseArray<InstructionNode> result = new SparseArray<InstructionNode>(instructions.size());
-//
-//        for (BuilderInstruction instruction : instructions) {
-//            // result.put(instruction.getLocation().getIndex(), new ContextNode(instruction));
-//        }
-//
-//        return result;
-//    }
-//
-// }
+package simplify.graph;
+
+import gnu.trove.list.TIntList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.jf.dexlib2.util.ReferenceUtil;
+import org.jf.dexlib2.writer.builder.BuilderMethod;
+
+import simplify.Main;
+import simplify.vm.ContextGraph;
+import simplify.vm.VirtualMachine;
+import simplify.vm.handlers.InvokeOpHandler;
+import simplify.vm.handlers.OpHandler;
+
+public class CallGraphBuilder {
+
+    private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
+
+    public static CallGraph build(VirtualMachine vm, List<BuilderMethod> methods) {
+        List<String> methodDescriptors = new ArrayList<String>(methods.size());
+        Map<String, Set<String>> methodDescriptorToCallees = new HashMap<String, Set<String>>(methods.size());
+        for (BuilderMethod method : methods) {
+            String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
+            methodDescriptors.add(methodDescriptor);
+            methodDescriptorToCallees.put(methodDescriptor, getCallees(vm, methodDescriptor));
+        }
+
+        CallGraph result = new CallGraph(methodDescriptors, methodDescriptorToCallees);
+        log.info("Built call graph: " + result);
+
+        return result;
+    }
+
+    private static Set<String> getCallees(VirtualMachine vm, String methodDescriptor) {
+        // Same calls the VM makes when executing the method. Anything not defined locally is emulated, reflected or
+        // unknown, and has nothing to simplify first.
+        Set<String> result = new LinkedHashSet<String>();
+        ContextGraph graph = vm.getInstructionGraph(methodDescriptor);
+        TIntList addresses = graph.getAddresses();
+        for (int i = 0; i < addresses.size(); i++) {
+            OpHandler handler = graph.getOpHandler(addresses.get(i));
+            if (!(handler instanceof InvokeOpHandler)) {
+                continue;
+            }
+
+            String callee = ((InvokeOpHandler) handler).getMethodDescriptor();
+            if (vm.isMethodDefined(callee)) {
+                result.add(callee);
+            }
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,298 @@
+package simplify.graph;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.builder.BuilderOffsetInstruction;
+import org.jf.dexlib2.builder.BuilderSwitchPayload;
+import org.jf.dexlib2.builder.BuilderTryBlock;
+import org.jf.dexlib2.builder.MutableMethodImplementation;
+import org.jf.dexlib2.builder.instruction.BuilderSwitchElement;
+import org.jf.util.SparseArray;
+
+public class ControlFlowGraph {
+
+    private static boolean isPayload(Opcode op) {
+        return (op == Opcode.PACKED_SWITCH_PAYLOAD) || (op == Opcode.SPARSE_SWITCH_PAYLOAD)
+                        || (op == Opcode.ARRAY_PAYLOAD);
+    }
+
+    private static int[] getSuccessorAddresses(BuilderInstruction instruction, int nextAddress,
+                    SparseArray<BuilderInstruction> addressToInstruction, List<BuilderTryBlock> tryBlocks) {
+        Opcode op = instruction.getOpcode();
+        if (isPayload(op)) {
+            // Payloads are data for switch and fill-array-data, not something that's executed.
+            return new int[0];
+        }
+
+        TIntList result = new TIntArrayList(2);
+        if (op.canContinue() && (nextAddress >= 0)) {
+            result.add(nextAddress);
+        }
+
+        if ((instruction instanceof BuilderOffsetInstruction) && (op != Opcode.FILL_ARRAY_DATA)) {
+            int targetAddress = ((BuilderOffsetInstruction) instruction).getTarget().getCodeAddress();
+            BuilderInstruction target = addressToInstruction.get(targetAddress);
+            if (target instanceof BuilderSwitchPayload) {
+                for (BuilderSwitchElement element : ((BuilderSwitchPayload) target).getSwitchElements()) {
+                    result.add(element.getTarget().getCodeAddress());
+                }
+            } else {
+                result.add(targetAddress);
+            }
+        }
+
+        if (op.canThrow()) {
+            int address = instruction.getLocation().getCodeAddress();
+            for (BuilderTryBlock tryBlock : tryBlocks) {
+                int startAddress = tryBlock.getStartCodeAddress();
+                if ((startAddress <= address) && (address < (startAddress + tryBlock.getCodeUnitCount()))) {
+                    result.add(tryBlock.exceptionHandler.getHandlerCodeAddress());
+                }
+            }
+        }
+
+        TIntList distinct = new TIntArrayList(result.size());
+        for (int i = 0; i < result.size(); i++) {
+            if (!distinct.contains(result.get(i))) {
+                distinct.add(result.get(i));
+            }
+        }
+
+        return distinct.toArray();
+    }
+
+    private static int intersect(int[] dominators, int[] orderNumber, int block, int otherBlock) {
+        while (block != otherBlock) {
+            while (orderNumber[block] > orderNumber[otherBlock]) {
+                block = dominators[block];
+            }
+            while (orderNumber[otherBlock] > orderNumber[block]) {
+                otherBlock = dominators[otherBlock];
+            }
+        }
+
+        return block;
+    }
+
+    private final List<BasicBlock> blocks;
+
+    private final SparseArray<BasicBlock> addressToBlock;
+
+    private final List<BasicBlock> reversePostOrder;
+
+    public ControlFlowGraph(MutableMethodImplementation implementation) {
+        List<BuilderInstruction> instructions = implementation.getInstructions();
+        SparseArray<BuilderInstruction> addressToInstruction = new SparseArray<BuilderInstruction>(
+                        instructions.size());
+        for (BuilderInstruction instruction : instructions) {
+            addressToInstruction.put(instruction.getLocation().getCodeAddress(), instruction);
+        }
+
+        SparseArray<int[]> addressToSuccessors = new SparseArray<int[]>(instructions.size());
+        TIntSet leaders = new TIntHashSet();
+        leaders.add(0);
+        for (int i = 0; i < instructions.size(); i++) {
+            BuilderInstruction instruction = instructions.get(i);
+            int address = instruction.getLocation().getCodeAddress();
+            int nextAddress = -1;
+            if ((i + 1) < instructions.size()) {
+                nextAddress = instructions.get(i + 1).getLocation().getCodeAddress();
+            }
+
+            int[] successors = getSuccessorAddresses(instruction, nextAddress, addressToInstruction,
+                            implementation.getTryBlocks());
+            addressToSuccessors.put(address, successors);
+
+            // A block ends at anything which doesn't simply fall through to the next instruction.
+            boolean fallsThrough = (successors.length == 1) && (successors[0] == nextAddress);
+            if (!fallsThrough) {
+                if (nextAddress >= 0) {
+                    leaders.add(nextAddress);
+                }
+                leaders.addAll(successors);
+            }
+            if (isPayload(instruction.getOpcode())) {
+                leaders.add(address);
+            }
+        }
+
+        blocks = new ArrayList<BasicBlock>();
+        addressToBlock = new SparseArray<BasicBlock>(instructions.size());
+        TIntList blockAddresses = new TIntArrayList();
+        for (int i = 0; i < instructions.size(); i++) {
+            int address = instructions.get(i).getLocation().getCodeAddress();
+            blockAddresses.add(address);
+
+            boolean isLast = (i + 1) == instructions.size();
+            if (isLast || leaders.contains(instructions.get(i + 1).getLocation().getCodeAddress())) {
+                BasicBlock block = new BasicBlock(blocks.size(), blockAddresses.toArray());
+                blocks.add(block);
+                for (int j = 0; j < blockAddresses.size(); j++) {
+                    addressToBlock.put(blockAddresses.get(j), block);
+                }
+                blockAddresses.clear();
+            }
+        }
+
+        List<TIntList> blockToPredecessors = new ArrayList<TIntList>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            blockToPredecessors.add(new TIntArrayList(1));
+        }
+        for (BasicBlock block : blocks) {
+            int[] successorAddresses = addressToSuccessors.get(block.getEndAddress());
+            int[] successors = new int[successorAddresses.length];
+            for (int i = 0; i < successors.length; i++) {
+                successors[i] = addressToBlock.get(successorAddresses[i]).getIndex();
+                blockToPredecessors.get(successors[i]).add(block.getIndex());
+            }
+            block.setSuccessors(successors);
+        }
+        for (BasicBlock block : blocks) {
+            block.setPredecessors(blockToPredecessors.get(block.getIndex()).toArray());
+        }
+
+        reversePostOrder = buildReversePostOrder();
+        buildDominators();
+        buildLoopHeaders();
+    }
+
+    public boolean dominates(BasicBlock dominator, BasicBlock block) {
+        int index = block.getIndex();
+        while (index >= 0) {
+            if (index == dominator.getIndex()) {
+                return true;
+            }
+            index = blocks.get(index).getImmediateDominator();
+        }
+
+        return false;
+    }
+
+    public BasicBlock getBlock(int address) {
+        // Block containing the address.
+        return addressToBlock.get(address);
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public BasicBlock getEntryBlock() {
+        return blocks.get(0);
+    }
+
+    public List<BasicBlock> getReversePostOrder() {
+        // Only blocks reachable from the entry. Every block comes before its successors, ignoring back edges.
+        return reversePostOrder;
+    }
+
+    public boolean isBlockStart(int address) {
+        BasicBlock block = addressToBlock.get(address);
+
+        return (block == null) || (block.getStartAddress() == address);
+    }
+
+    private void buildDominators() {
+        // Cooper, Harvey and Kennedy's iterative algorithm. Blocks are visited in reverse post order until no immediate
+        // dominator changes, which is usually two passes.
+        int[] orderNumber = new int[blocks.size()];
+        for (int i = 0; i < orderNumber.length; i++) {
+            orderNumber[i] = -1;
+        }
+        for (int i = 0; i < reversePostOrder.size(); i++) {
+            orderNumber[reversePostOrder.get(i).getIndex()] = i;
+        }
+
+        int[] dominators = new int[blocks.size()];
+        for (int i = 0; i < dominators.length; i++) {
+            dominators[i] = -1;
+        }
+        dominators[0] = 0;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < reversePostOrder.size(); i++) {
+                BasicBlock block = reversePostOrder.get(i);
+                int newDominator = -1;
+                for (int predecessor : block.getPredecessors()) {
+                    if (dominators[predecessor] < 0) {
+                        continue;
+                    }
+
+                    if (newDominator < 0) {
+                        newDominator = predecessor;
+                    } else {
+                        newDominator = intersect(dominators, orderNumber, predecessor, newDominator);
+                    }
+                }
+
+                if (dominators[block.getIndex()] != newDominator) {
+                    dominators[block.getIndex()] = newDominator;
+                    changed = true;
+                }
+            }
+        }
+
+        for (BasicBlock block : reversePostOrder) {
+            if (block.getIndex() != 0) {
+                block.setImmediateDominator(dominators[block.getIndex()]);
+            }
+        }
+    }
+
+    private void buildLoopHeaders() {
+        // A back edge goes to a block which dominates its source. Irreducible loops have no such header and aren't
+        // found.
+        for (BasicBlock block : reversePostOrder) {
+            for (int successor : block.getSuccessors()) {
+                BasicBlock successorBlock = blocks.get(successor);
+                if (dominates(successorBlock, block)) {
+                    successorBlock.setLoopHeader(true);
+                }
+            }
+        }
+    }
+
+    private List<BasicBlock> buildReversePostOrder() {
+        List<BasicBlock> result = new ArrayList<BasicBlock>(blocks.size());
+        boolean[] visited = new boolean[blocks.size()];
+        TIntList blockStack = new TIntArrayList();
+        TIntList successorIndexStack = new TIntArrayList();
+
+        visited[0] = true;
+        blockStack.add(0);
+        successorIndexStack.add(0);
+        while (blockStack.size() > 0) {
+            int top = blockStack.size() - 1;
+            BasicBlock block = blocks.get(blockStack.get(top));
+            int successorIndex = successorIndexStack.get(top);
+            if (successorIndex < block.getSuccessors().length) {
+                successorIndexStack.set(top, successorIndex + 1);
+                int successor = block.getSuccessors()[successorIndex];
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    blockStack.add(successor);
+                    successorIndexStack.add(0);
+                }
+            } else {
+                result.add(block);
+                blockStack.removeAt(top);
+                successorIndexStack.removeAt(top);
+            }
+        }
+        Collections.reverse(result);
+
+        return result;
+    }
+
+}
@@ -0,0 +1,217 @@
+package simplify.graph;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.jf.dexlib2.Format;
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
+import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
+import org.jf.util.SparseArray;
+
+public class CountedLoop {
+
+    // A natural loop whose only way out is an if comparing an induction variable. An induction variable only changes by
+    // a constant, either directly or through a temporary which is moved back, e.g. add-int/lit8 v1, v0, -0x1 then
+    // move v0, v1. If the variable starts out known, every iteration takes a known branch.
+
+    public static SparseArray<CountedLoop> build(ControlFlowGraph cfg,
+                    SparseArray<BuilderInstruction> addressToInstruction) {
+        // Keyed by header address.
+        SparseArray<CountedLoop> result = new SparseArray<CountedLoop>(0);
+        for (BasicBlock header : cfg.getBlocks()) {
+            if (!header.isLoopHeader()) {
+                continue;
+            }
+
+            CountedLoop loop = build(cfg, header, buildLoopBlocks(cfg, header), addressToInstruction);
+            if (loop != null) {
+                result.put(header.getStartAddress(), loop);
+            }
+        }
+
+        return result;
+    }
+
+    private static CountedLoop build(ControlFlowGraph cfg, BasicBlock header, BitSet loopBlocks,
+                    SparseArray<BuilderInstruction> addressToInstruction) {
+        List<BasicBlock> blocks = cfg.getBlocks();
+        BasicBlock exitBlock = null;
+        BitSet addresses = new BitSet();
+        for (int i = loopBlocks.nextSetBit(0); i >= 0; i = loopBlocks.nextSetBit(i + 1)) {
+            BasicBlock block = blocks.get(i);
+            for (int address : block.getAddresses()) {
+                addresses.set(address);
+            }
+
+            for (int successor : block.getSuccessors()) {
+                if (loopBlocks.get(successor)) {
+                    continue;
+                }
+
+                if (exitBlock != null) {
+                    // More than one way out
+                    return null;
+                }
+                exitBlock = block;
+            }
+        }
+        if (exitBlock == null) {
+            return null;
+        }
+
+        BuilderInstruction exit = addressToInstruction.get(exitBlock.getEndAddress());
+        Format format = exit.getOpcode().format;
+        if ((format != Format.Format21t) && (format != Format.Format22t)) {
+            return null;
+        }
+
+        int[] comparedRegisters;
+        if (format == Format.Format22t) {
+            TwoRegisterInstruction instr = (TwoRegisterInstruction) exit;
+            comparedRegisters = new int[] { instr.getRegisterA(), instr.getRegisterB() };
+        } else {
+            comparedRegisters = new int[] { ((OneRegisterInstruction) exit).getRegisterA() };
+        }
+
+        for (int register : comparedRegisters) {
+            if (isInductionVariable(register, blocks, loopBlocks, addressToInstruction)) {
+                return new CountedLoop(header.getStartAddress(), exitBlock.getEndAddress(), register, addresses);
+            }
+        }
+
+        return null;
+    }
+
+    private static BitSet buildLoopBlocks(ControlFlowGraph cfg, BasicBlock header) {
+        // Blocks which reach a back edge to the header without going through it. Only blocks the header dominates
+        // count, so dead code jumping into the loop isn't part of it.
+        List<BasicBlock> blocks = cfg.getBlocks();
+        BitSet result = new BitSet(blocks.size());
+        result.set(header.getIndex());
+
+        TIntList stack = new TIntArrayList();
+        for (int predecessor : header.getPredecessors()) {
+            if (!result.get(predecessor) && cfg.dominates(header, blocks.get(predecessor))) {
+                result.set(predecessor);
+                stack.add(predecessor);
+            }
+        }
+        while (stack.size() > 0) {
+            BasicBlock block = blocks.get(stack.removeAt(stack.size() - 1));
+            for (int predecessor : block.getPredecessors()) {
+                if (!result.get(predecessor) && cfg.dominates(header, blocks.get(predecessor))) {
+                    result.set(predecessor);
+                    stack.add(predecessor);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isAddLiteral(Opcode op) {
+        return (op == Opcode.ADD_INT_LIT8) || (op == Opcode.ADD_INT_LIT16);
+    }
+
+    private static boolean isMove(Opcode op) {
+        return (op == Opcode.MOVE) || (op == Opcode.MOVE_FROM16) || (op == Opcode.MOVE_16);
+    }
+
+    private static boolean isAssigned(BuilderInstruction instruction, int register) {
+        Opcode op = instruction.getOpcode();
+        if (!(instruction instanceof OneRegisterInstruction) || !(op.setsRegister() || op.setsWideRegister())) {
+            return false;
+        }
+
+        int registerA = ((OneRegisterInstruction) instruction).getRegisterA();
+
+        return (registerA == register) || (op.setsWideRegister() && ((registerA + 1) == register));
+    }
+
+    private static boolean isInductionVariable(int register, List<BasicBlock> blocks, BitSet loopBlocks,
+                    SparseArray<BuilderInstruction> addressToInstruction) {
+        boolean isAssigned = false;
+        for (int i = loopBlocks.nextSetBit(0); i >= 0; i = loopBlocks.nextSetBit(i + 1)) {
+            int[] addresses = blocks.get(i).getAddresses();
+            for (int j = 0; j < addresses.length; j++) {
+                BuilderInstruction instruction = addressToInstruction.get(addresses[j]);
+                if (!isAssigned(instruction, register)) {
+                    continue;
+                }
+
+                isAssigned = true;
+                Opcode op = instruction.getOpcode();
+                if (isAddLiteral(op)) {
+                    if (((TwoRegisterInstruction) instruction).getRegisterB() != register) {
+                        return false;
+                    }
+                } else if (isMove(op)) {
+                    // Temporary must have been set from the register plus a constant earlier in the same block.
+                    int temporary = ((TwoRegisterInstruction) instruction).getRegisterB();
+                    BuilderInstruction temporaryAssignment = null;
+                    for (int k = j - 1; k >= 0; k--) {
+                        BuilderInstruction previous = addressToInstruction.get(addresses[k]);
+                        if (isAssigned(previous, temporary)) {
+                            temporaryAssignment = previous;
+                            break;
+                        }
+                    }
+
+                    if ((temporaryAssignment == null) || !isAddLiteral(temporaryAssignment.getOpcode())
+                                    || (((TwoRegisterInstruction) temporaryAssignment).getRegisterB() != register)) {
+                        return false;
+                    }
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        return isAssigned;
+    }
+
+    private final int headerAddress;
+    private final int exitAddress;
+    private final int inductionRegister;
+    private final BitSet addresses;
+
+    private CountedLoop(int headerAddress, int exitAddress, int inductionRegister, BitSet addresses) {
+        this.headerAddress = headerAddress;
+        this.exitAddress = exitAddress;
+        this.inductionRegister = inductionRegister;
+        this.addresses = addresses;
+    }
+
+    public boolean contains(int address) {
+        return addresses.get(address);
+    }
+
+    public int getExitAddress() {
+        // Address of the if which leaves the loop.
+        return exitAddress;
+    }
+
+    public int getHeaderAddress() {
+        return headerAddress;
+    }
+
+    public int getInductionRegister() {
+        return inductionRegister;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("header=#").append(headerAddress).append(", exit=#").append(exitAddress).append(", induction=r")
+                        .append(inductionRegister);
+
+        return sb.toString();
+    }
+
+}
@@ -1,13 +1,9 @@
 package simplify.optimize;
 
-import gnu.trove.list.TIntList;
-
-import java.util.List;
 import java.util.logging.Logger;
 
 import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.builder.BuilderInstruction;
-import org.jf.dexlib2.builder.MutableMethodImplementation;
 import org.jf.dexlib2.builder.instruction.BuilderInstruction11n;
 import org.jf.dexlib2.builder.instruction.BuilderInstruction11x;
 import org.jf.dexlib2.builder.instruction.BuilderInstruction21c;
@@ -15,21 +11,19 @@ import org.jf.dexlib2.builder.instruction.BuilderInstruction21s;
 import org.jf.dexlib2.builder.instruction.BuilderInstruction31i;
 import org.jf.dexlib2.builder.instruction.BuilderInstruction51l;
 import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
-import org.jf.dexlib2.writer.builder.BuilderMethod;
 import org.jf.dexlib2.writer.builder.BuilderStringReference;
 import org.jf.dexlib2.writer.builder.BuilderTypeReference;
 import org.jf.dexlib2.writer.builder.DexBuilder;
 
 import simplify.Main;
 import simplify.SmaliClassUtils;
+import simplify.graph.BasicBlock;
 import simplify.vm.ContextGraph;
-import simplify.vm.ContextNode;
 import simplify.vm.handlers.BinaryMathOpHandler;
 import simplify.vm.handlers.MoveOpHandler;
 import simplify.vm.handlers.OpHandler;
 import simplify.vm.handlers.ReturnOpHandler;
 import simplify.vm.handlers.UnaryMathOpHandler;
-import util.SparseArray;
 
 public class ConstantPropigator {
 
@@ -50,6 +44,25 @@ public class ConstantPropigator {
         return result;
     }
 
+    private static boolean isConst(Opcode op) {
+        switch (op) {
+        case CONST:
+        case CONST_4:
+        case CONST_16:
+        case CONST_HIGH16:
+        case CONST_WIDE:
+        case CONST_WIDE_16:
+        case CONST_WIDE_32:
+        case CONST_WIDE_HIGH16:
+        case CONST_STRING:
+        case CONST_STRING_JUMBO:
+        case CONST_CLASS:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     private static boolean isConstableHandler(OpHandler handler) {
         for (Class<?> clazz : OpHandlersToMakeConst) {
             if (handler.getClass() == clazz) {
@@ -70,22 +83,17 @@ public class ConstantPropigator {
         return false;
     }
 
-    private final SparseArray<BuilderInstruction> addressToInstruction;
     private final DexBuilder dexBuilder;
     private int emitCount = 0;
     private final ContextGraph graph;
-    private final MutableMethodImplementation implementation;
+    private final MethodRewriter rewriter;
 
     private int peepCount = 0;
 
-    ConstantPropigator(DexBuilder dexBuilder, BuilderMethod method, ContextGraph graph) {
+    ConstantPropigator(DexBuilder dexBuilder, ContextGraph graph, MethodRewriter rewriter) {
         this.dexBuilder = dexBuilder;
         this.graph = graph;
-
-        MutableMethodImplementation impl = (MutableMethodImplementation) method.getImplementation();
-        implementation = impl;
-
-        addressToInstruction = Simplifier.buildAddressToInstruction(impl.getInstructions());
+        this.rewriter = rewriter;
     }
 
     @Override
@@ -145,65 +153,68 @@ public class ConstantPropigator {
         return result;
     }
 
-    boolean perform() {
-        boolean madeChanges = false;
-
-        TIntList addresses = graph.getAddresses();
-        for (int i = 0; i < addresses.size(); i++) {
-            int address = addresses.get(i);
-
-            List<ContextNode> nodePile = graph.getNodePile(address);
-            if (nodePile.size() == 0) {
-                // Node wasn't reached.
+    void perform() {
+        for (BasicBlock block : graph.getControlFlowGraph().getBlocks()) {
+            // Blocks are only entered at the start, so if that wasn't reached, nothing in the block was.
+            if (!graph.wasAddressReached(block.getStartAddress())) {
                 continue;
             }
 
-            // Check handler first since we expect to be able to cast instructions to OneRegisterInstruction
-            OpHandler handler = nodePile.get(0).getHandler();
-            if (!isConstableHandler(handler)) {
-                log.finer("Can't make hanlder constant: " + handler);
-                continue;
+            // Execution may still have stopped partway through a block.
+
+            for (int address : block.getAddresses()) {
+                if (!graph.wasAddressReached(address)) {
+                    break;
+                }
+                propigate(address);
             }
+        }
+    }
 
-            BuilderInstruction originalInstruction = addressToInstruction.get(address);
-            int registerA = ((OneRegisterInstruction) originalInstruction).getRegisterA();
-            Object consensus = graph.getRegisterConsensus(address, registerA);
-            String type = SmaliClassUtils.getValueType(consensus);
-            type = getUnboxedType(type);
+    private boolean propigate(int address) {
+        // Check handler first since we expect to be able to cast instructions to OneRegisterInstruction
+        OpHandler handler = graph.getOpHandler(address);
+        if (!isConstableHandler(handler)) {
+            log.finer("Can't make hanlder constant: " + handler);
+            return false;
+        }
 
-            if (!isConstableType(type)) {
-                log.warning("Can't make type constant: " + type);
-                continue;
-            }
+        BuilderInstruction originalInstruction = rewriter.getInstruction(address);
+        int registerA = ((OneRegisterInstruction) originalInstruction).getRegisterA();
+        Object consensus = graph.getRegisterConsensus(address, registerA);
+        String type = SmaliClassUtils.getValueType(consensus);
+        type = getUnboxedType(type);
 
-            log.fine("Build constant for r" + registerA + ", type=" + type + ", value=" + consensus);
-            BuilderInstruction constInstruction = buildConstant(registerA, type, consensus);
-
-            int index = originalInstruction.getLocation().getIndex();
-            if (originalInstruction.getOpcode().name.startsWith("return")) {
-                // Add const before return only if previous instruction is not a const. Otherwise repeated sweeps will
-                // always add one.
-                BuilderInstruction prevInstr = implementation.getInstructions().get(index - 1);
-                boolean previousConst = prevInstr.getOpcode().name.startsWith("const");
-                if (previousConst) {
-                    continue;
-                }
+        if (!isConstableType(type)) {
+            log.warning("Can't make type constant: " + type);
+            return false;
+        }
 
-                // Replace the return to retain labels
-                implementation.replaceInstruction(index, constInstruction);
+        log.fine("Build constant for r" + registerA + ", type=" + type + ", value=" + consensus);
+        BuilderInstruction constInstruction = buildConstant(registerA, type, consensus);
+        if (constInstruction == null) {
+            return false;
+        }
 
-                BuilderInstruction newReturn = new BuilderInstruction11x(originalInstruction.getOpcode(), registerA);
-                implementation.addInstruction(index + 1, newReturn);
-                madeChanges = true;
-            } else {
-                implementation.replaceInstruction(index, constInstruction);
-                madeChanges = true;
+        if (handler instanceof ReturnOpHandler) {
+            // Add const before return only if previous instruction is not a const. Otherwise repeated sweeps will
+            // always add one.
+            BuilderInstruction prevInstr = rewriter.getPreviousInstruction(address);
+            boolean previousConst = isConst(prevInstr.getOpcode());
+            if (previousConst) {
+                return false;
             }
 
-            emitCount++;
+            // Const takes the place of the return to retain labels
+            BuilderInstruction newReturn = new BuilderInstruction11x(originalInstruction.getOpcode(), registerA);
+            rewriter.replace(address, constInstruction, newReturn);
+        } else {
+            rewriter.replace(address, constInstruction);
         }
 
-        return madeChanges;
+        emitCount++;
+
+        return true;
     }
 
     private String getUnboxedType(String type) {
@@ -1,25 +1,23 @@
 package simplify.optimize;
 
+import gnu.trove.TIntCollection;
+import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
+import java.util.BitSet;
 import java.util.logging.Logger;
 
 import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.builder.BuilderInstruction;
-import org.jf.dexlib2.builder.MutableMethodImplementation;
 import org.jf.dexlib2.builder.instruction.BuilderInstruction10x;
-import org.jf.dexlib2.writer.builder.BuilderMethod;
-import org.jf.dexlib2.writer.builder.DexBuilder;
 
 import simplify.Main;
-import simplify.Utils;
+import simplify.graph.BasicBlock;
+import simplify.graph.ControlFlowGraph;
 import simplify.vm.ContextGraph;
-import simplify.vm.ContextNode;
 import simplify.vm.MethodContext;
 import simplify.vm.handlers.InvokeOpHandler;
 import simplify.vm.handlers.OpHandler;
@@ -29,80 +27,142 @@ public class DeadRemover {
 
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
 
-    private static boolean areAssignmentsRead(int address, ContextGraph graph, TIntList assigned) {
-        Deque<ContextNode> stack = new ArrayDeque<ContextNode>();
-        stack.addAll(getChildrenAtAddress(address, graph));
-
-        while (stack.peek() != null) {
-            ContextNode node = stack.poll();
-            MethodContext ctx = node.getContext();
-
-            for (int i = 0; i < assigned.size(); i++) {
-                int assignedRegister = assigned.get(i);
-                if (ctx.wasRegisterRead(assignedRegister)) {
-                    log.info("r" + assignedRegister + " is read after this address (" + address + ") @"
-                                    + node.getAddress() + ", " + node.getHandler());
-                    return true;
-                } else if (ctx.wasRegisterAssigned(assignedRegister)) {
-                    log.info("r" + assignedRegister + " is reassigned without being read @" + node.getAddress() + ", "
-                                    + node.getHandler());
-                    return false;
-                }
-            }
+    // Liveness bits are indexed by register + this offset because result and return registers are negative.
+    private static final int REGISTER_OFFSET = -MethodContext.ReturnRegister;
 
-            stack.addAll(node.getChildren());
+    private static BitSet buildRegisterBits(TIntCollection registers) {
+        BitSet result = new BitSet();
+        TIntIterator iter = registers.iterator();
+        while (iter.hasNext()) {
+            result.set(iter.next() + REGISTER_OFFSET);
         }
 
-        return false;
+        return result;
     }
 
-    private static List<ContextNode> getChildrenAtAddress(int address, ContextGraph graph) {
-        List<ContextNode> result = new ArrayList<ContextNode>();
+    private static SparseArray<BitSet> buildAddressToLiveOut(ContextGraph graph) {
+        // Backwards liveness over addresses reached during execution. A register is live after an address if any
+        // successor path reads it before assigning it. One pass answers every address instead of searching the
+        // execution graph once per assignment. Successors are the ones seen during execution rather than every static
+        // successor, so paths the VM knows aren't taken don't keep registers alive.
+        TIntList addresses = graph.getAddresses();
+        SparseArray<BitSet> addressToUse = new SparseArray<BitSet>(addresses.size());
+        SparseArray<BitSet> addressToDef = new SparseArray<BitSet>(addresses.size());
+        SparseArray<int[]> addressToChildren = new SparseArray<int[]>(addresses.size());
+        SparseArray<TIntList> addressToParents = new SparseArray<TIntList>(addresses.size());
+        SparseArray<BitSet> addressToLiveIn = new SparseArray<BitSet>(addresses.size());
+        TIntList reachedAddresses = new TIntArrayList(addresses.size());
+        for (int i = 0; i < addresses.size(); i++) {
+            int address = addresses.get(i);
+            if (!graph.wasAddressReached(address)) {
+                continue;
+            }
 
-        List<ContextNode> nodePile = graph.getNodePile(address);
-        for (ContextNode node : nodePile) {
-            result.addAll(node.getChildren());
+            reachedAddresses.add(address);
+            addressToUse.put(address, buildRegisterBits(graph.getRegistersRead(address)));
+            addressToDef.put(address, buildRegisterBits(graph.getRegistersAssigned(address)));
+            addressToLiveIn.put(address, new BitSet());
+            addressToParents.put(address, new TIntArrayList(1));
         }
 
-        return result;
+        for (int i = 0; i < reachedAddresses.size(); i++) {
+            int address = reachedAddresses.get(i);
+            int[] children = graph.getChildAddresses(address).toArray();
+            addressToChildren.put(address, children);
+            for (int child : children) {
+                addressToParents.get(child).add(address);
+            }
+        }
+
+        // Work a basic block at a time, walking its addresses backwards so each one sees its successor's result from
+        // the same pass. Blocks are popped from the end, so most are visited after their successors.
+        ControlFlowGraph cfg = graph.getControlFlowGraph();
+        TIntList stack = new TIntArrayList();
+        TIntSet queuedBlocks = new TIntHashSet();
+        for (int i = 0; i < reachedAddresses.size(); i++) {
+            int blockIndex = cfg.getBlock(reachedAddresses.get(i)).getIndex();
+            if (queuedBlocks.add(blockIndex)) {
+                stack.add(blockIndex);
+            }
+        }
+
+        SparseArray<BitSet> addressToLiveOut = new SparseArray<BitSet>(reachedAddresses.size());
+        while (stack.size() > 0) {
+            BasicBlock block = cfg.getBlocks().get(stack.removeAt(stack.size() - 1));
+            queuedBlocks.remove(block.getIndex());
+
+            int[] blockAddresses = block.getAddresses();
+            for (int i = blockAddresses.length - 1; i >= 0; i--) {
+                int address = blockAddresses[i];
+                if (addressToChildren.get(address) == null) {
+                    // Not reached
+                    continue;
+                }
+
+                BitSet liveOut = new BitSet();
+                for (int child : addressToChildren.get(address)) {
+                    liveOut.or(addressToLiveIn.get(child));
+                }
+                addressToLiveOut.put(address, liveOut);
+
+                BitSet liveIn = (BitSet) liveOut.clone();
+                liveIn.andNot(addressToDef.get(address));
+                liveIn.or(addressToUse.get(address));
+                if (liveIn.equals(addressToLiveIn.get(address))) {
+                    continue;
+                }
+
+                // Only loops need to revisit blocks.
+                addressToLiveIn.put(address, liveIn);
+                TIntList parents = addressToParents.get(address);
+                for (int j = 0; j < parents.size(); j++) {
+                    int parent = parents.get(j);
+                    BasicBlock parentBlock = cfg.getBlock(parent);
+                    if ((parentBlock == block) && (parent < address)) {
+                        // Still ahead in this pass
+                        continue;
+                    }
+                    if (queuedBlocks.add(parentBlock.getIndex())) {
+                        stack.add(parentBlock.getIndex());
+                    }
+                }
+            }
+        }
+
+        return addressToLiveOut;
     }
 
     private void nopInstruction(int address) {
-        noppedAddresses.add(address);
+        if (rewriter.getInstruction(address).getOpcode() == Opcode.NOP) {
+            // Already a nop, e.g. unreachable code from an earlier sweep, so there's nothing to change.
+            return;
+        }
 
-        int index = addressToInstruction.get(address).getLocation().getIndex();
-        BuilderInstruction replacementInstruction = new BuilderInstruction10x(Opcode.NOP);
-        implementation.replaceInstruction(index, replacementInstruction);
+        rewriter.replace(address, new BuilderInstruction10x(Opcode.NOP));
     }
 
-    private static boolean opHasSideEffects(OpHandler handler) {
-        if (handler instanceof InvokeOpHandler) {
-            if (((InvokeOpHandler) handler).hasSideEffects()) {
-                return true;
-            }
+    private static boolean isMoveResult(Opcode op) {
+        return (op == Opcode.MOVE_RESULT) || (op == Opcode.MOVE_RESULT_WIDE) || (op == Opcode.MOVE_RESULT_OBJECT);
+    }
+
+    private static boolean opHasSideEffects(ContextGraph graph, int address) {
+        // Handlers are shared by every execution, so side effects are recorded on each execution's context.
+        if (graph.getOpHandler(address) instanceof InvokeOpHandler) {
+            return graph.hasSideEffects(address);
         }
 
         return false;
     }
 
-    private final DexBuilder dexBuilder;
-    private final SparseArray<BuilderInstruction> addressToInstruction;
     private final ContextGraph graph;
-    private final MutableMethodImplementation implementation;
+    private final MethodRewriter rewriter;
 
     private int deadCount = 0;
     private int unreachableCount = 0;
-    private TIntArrayList noppedAddresses;
 
-    DeadRemover(DexBuilder dexBuilder, BuilderMethod method, ContextGraph graph) {
-        this.dexBuilder = dexBuilder;
+    DeadRemover(ContextGraph graph, MethodRewriter rewriter) {
         this.graph = graph;
-
-        MutableMethodImplementation impl = (MutableMethodImplementation) method.getImplementation();
-        implementation = impl;
-
-        addressToInstruction = Simplifier.buildAddressToInstruction(impl.getInstructions());
-        noppedAddresses = new TIntArrayList();
+        this.rewriter = rewriter;
     }
 
     @Override
@@ -114,72 +174,76 @@ public class DeadRemover {
         return sb.toString();
     }
 
-    private TIntList getDeadAssignmentAddresses() {
-        TIntList nopAddresses = new TIntArrayList(0);
+    private BitSet getDeadAssignmentAddresses() {
+        BitSet nopAddresses = new BitSet();
         TIntList addresses = graph.getAddresses();
+        SparseArray<BitSet> addressToLiveOut = buildAddressToLiveOut(graph);
         for (int i = 0; i < addresses.size(); i++) {
             int address = addresses.get(i);
             OpHandler handler = graph.getOpHandler(address);
 
             // Even if assignments are made and never used, it's almost impossible to know if a method invoke can be
             // removed because it may have side-effects. E.g. write to network, disk, etc.
-            if (opHasSideEffects(handler)) {
+            if (opHasSideEffects(graph, address)) {
+                continue;
+            }
+
+            if (!graph.wasAddressReached(address)) {
+                // Removed as unreachable code
                 continue;
             }
 
             // Only invokes will have > 1 assignments, all others will have <= 1
-            // All executions of the same instruction should set the same registers
-            TIntList assigned = graph.getNodePile(address).get(0).getContext().getRegistersAssigned();
+            TIntList assigned = graph.getRegistersAssigned(address);
             if (assigned.size() > 0) {
                 log.fine("Read assignments test for: " + handler);
 
-                if (!areAssignmentsRead(address, graph, assigned)) {
+                if (!addressToLiveOut.get(address).intersects(buildRegisterBits(assigned))) {
                     log.info("Nop dead assignment: " + handler + ", assign=" + assigned);
-                    nopAddresses.add(address);
+                    nopAddresses.set(address);
                     continue;
                 }
             }
         }
 
-        deadCount = nopAddresses.size();
+        deadCount = nopAddresses.cardinality();
 
         return nopAddresses;
     }
 
-    private TIntList getUnreachedCodeAddresses() {
-        TIntList nopAddresses = new TIntArrayList(0);
+    private BitSet getUnreachedCodeAddresses() {
+        BitSet nopAddresses = new BitSet();
         TIntList addresses = graph.getAddresses();
         for (int i = 0; i < addresses.size(); i++) {
             int address = addresses.get(i);
             OpHandler handler = graph.getOpHandler(address);
 
-            if (opHasSideEffects(handler)) {
+            if (opHasSideEffects(graph, address)) {
                 continue;
             }
 
             log.fine("Reachability test for: " + handler);
 
-            List<ContextNode> nodePile = graph.getNodePile(address);
-            if (nodePile.size() == 0) {
+            if (!graph.wasAddressReached(address)) {
                 log.fine("Nop unreachable instruction: " + handler);
-                nopAddresses.add(address);
+                nopAddresses.set(address);
                 continue;
             }
         }
 
-        unreachableCount = nopAddresses.size();
+        unreachableCount = nopAddresses.cardinality();
 
         return nopAddresses;
     }
 
-    private TIntList getUnusedResultAddresses() {
-        TIntList nopAddresses = new TIntArrayList(0);
+    private BitSet getUnusedResultAddresses() {
+        BitSet nopAddresses = new BitSet();
         TIntList addresses = graph.getAddresses();
         for (int i = 0; i < addresses.size(); i++) {
             int address = addresses.get(i);
             OpHandler handler = graph.getOpHandler(address);
 
-            if (opHasSideEffects(handler)) {
+            if (opHasSideEffects(graph, address)) {
                 continue;
             }
 
@@ -191,48 +255,42 @@ public class DeadRemover {
                     boolean unusedResult = true;
                     if ((i + 1) < addresses.size()) {
                         int nextAddress = addresses.get(i + 1);
-                        BuilderInstruction nextInstr = addressToInstruction.get(nextAddress);
-                        if (nextInstr.getOpcode().name.startsWith("move-result")) {
+                        // Sees constants planned in this sweep, so an invoke whose move-result became one is unused.
+                        BuilderInstruction nextInstr = rewriter.getInstruction(nextAddress);
+                        if (isMoveResult(nextInstr.getOpcode())) {
                             unusedResult = false;
                         }
                     }
 
                     if (unusedResult) {
                         log.info("Nop unused, no side-effect op: " + handler);
-                        nopAddresses.add(address);
+                        nopAddresses.set(address);
                         continue;
                     }
                 }
             }
         }
 
-        deadCount = nopAddresses.size();
+        deadCount = nopAddresses.cardinality();
 
         return nopAddresses;
     }
 
-    private void nopInstructions(TIntList addresses) {
-        Utils.deDuplicate(addresses);
-
-        addresses.sort();
-
-        for (int i = addresses.size() - 1; i >= 0; i--) {
-            int address = addresses.get(i);
+    private void nopInstructions(BitSet addresses) {
+        // Addresses are bits, so each is only planned once.
+        for (int address = addresses.nextSetBit(0); address >= 0; address = addresses.nextSetBit(address + 1)) {
             nopInstruction(address);
         }
     }
 
-    boolean perform() {
-        TIntList nopAddresses = new TIntArrayList(0);
+    void perform() {
+        // Each sweep collects addresses from the same graph, so they're unioned and planned in one batch.
+        BitSet nopAddresses = getUnreachedCodeAddresses();
 
-        nopAddresses.addAll(getUnreachedCodeAddresses());
+        nopAddresses.or(getDeadAssignmentAddresses());
 
-        nopAddresses.addAll(getDeadAssignmentAddresses());
-
-        nopAddresses.addAll(getUnusedResultAddresses());
+        nopAddresses.or(getUnusedResultAddresses());
 
         nopInstructions(nopAddresses);
-
-        return nopAddresses.size() > 0;
     }
 }
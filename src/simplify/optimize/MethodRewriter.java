@@ -0,0 +1,67 @@
+package simplify.optimize;
+
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.builder.MutableMethodImplementation;
+
+import util.SparseArray;
+
+class MethodRewriter {
+
+    // Optimizations plan their changes by the addresses in the execution graph, and they're all applied at once after.
+    // Otherwise, each change could shift the addresses of the instructions after it and they'd no longer match the
+    // graph.
+
+    private final MutableMethodImplementation implementation;
+    private final SparseArray<BuilderInstruction> addressToInstruction;
+    private final SparseArray<BuilderInstruction[]> addressToReplacements;
+
+    MethodRewriter(MutableMethodImplementation implementation) {
+        this.implementation = implementation;
+
+        addressToInstruction = Simplifier.buildAddressToInstruction(implementation.getInstructions());
+        addressToReplacements = new SparseArray<BuilderInstruction[]>();
+    }
+
+    int apply() {
+        // Work backwards so the indexes of earlier instructions don't move. Returns the number of addresses changed.
+        int size = addressToReplacements.size();
+        for (int i = size - 1; i >= 0; i--) {
+            int address = addressToReplacements.keyAt(i);
+            BuilderInstruction[] replacements = addressToReplacements.valueAt(i);
+
+            // Replace the first instruction to retain labels
+            int index = addressToInstruction.get(address).getLocation().getIndex();
+            implementation.replaceInstruction(index, replacements[0]);
+            for (int j = 1; j < replacements.length; j++) {
+                implementation.addInstruction(index + j, replacements[j]);
+            }
+        }
+        addressToReplacements.clear();
+
+        return size;
+    }
+
+    BuilderInstruction getInstruction(int address) {
+        // Instruction at the address once planned changes are applied.
+        BuilderInstruction[] replacements = addressToReplacements.get(address);
+
+        return replacements == null ? addressToInstruction.get(address) : replacements[0];
+    }
+
+    BuilderInstruction getPreviousInstruction(int address) {
+        int index = addressToInstruction.get(address).getLocation().getIndex();
+        BuilderInstruction previous = implementation.getInstructions().get(index - 1);
+
+        return getInstruction(previous.getLocation().getCodeAddress());
+    }
+
+    boolean hasChanges() {
+        return addressToReplacements.size() > 0;
+    }
+
+    void replace(int address, BuilderInstruction... replacements) {
+        // Replaces any change already planned for this address.
+        addressToReplacements.put(address, replacements);
+    }
+
+}
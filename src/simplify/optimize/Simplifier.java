@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.builder.MutableMethodImplementation;
 import org.jf.dexlib2.util.ReferenceUtil;
 import org.jf.dexlib2.writer.builder.BuilderMethod;
 import org.jf.dexlib2.writer.builder.DexBuilder;
@@ -17,20 +18,23 @@ public class Simplifier {
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
 
     public static boolean simplify(DexBuilder dexBuilder, BuilderMethod method, ContextGraph graph) {
-        boolean madeChanges = false;
-
         String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
         System.out.println("Simplifying " + methodDescriptor);
 
-        ConstantPropigator propigator = new ConstantPropigator(dexBuilder, method, graph);
-        madeChanges |= propigator.perform();
+        // Both optimizations plan against the same graph and addresses, and the dead remover sees the planned
+        // constants, so one sweep does the work of both. Changes are applied together at the end.
+        MethodRewriter rewriter = new MethodRewriter((MutableMethodImplementation) method.getImplementation());
+
+        ConstantPropigator propigator = new ConstantPropigator(dexBuilder, graph, rewriter);
+        propigator.perform();
 
-        DeadRemover remover = new DeadRemover(dexBuilder, method, graph);
-        madeChanges |= remover.perform();
+        DeadRemover remover = new DeadRemover(graph, rewriter);
+        remover.perform();
 
         System.out.println("Optimizations: " + propigator.toString() + ", " + remover.toString());
 
-        return madeChanges;
+        // Only changed instructions mean the method needs to execute again.
+        return rewriter.apply() > 0;
     }
 
     protected static SparseArray<BuilderInstruction> buildAddressToInstruction(List<BuilderInstruction> instructions) {
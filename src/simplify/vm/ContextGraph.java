@@ -2,111 +2,89 @@ package simplify.vm;
 
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.jf.dexlib2.builder.BuilderInstruction;
-import org.jf.dexlib2.builder.MutableMethodImplementation;
-import org.jf.dexlib2.util.ReferenceUtil;
-import org.jf.dexlib2.writer.builder.BuilderMethod;
 import org.jf.util.SparseArray;
 
 import simplify.Main;
-import simplify.SmaliClassUtils;
+import simplify.graph.ControlFlowGraph;
+import simplify.graph.CountedLoop;
 import simplify.vm.handlers.OpHandler;
-import simplify.vm.handlers.OpHandlerFactory;
 import simplify.vm.types.UnknownValue;
 
 public class ContextGraph implements Iterable {
 
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
 
-    private static SparseArray<List<ContextNode>> buildAddressToNodePile(VirtualMachine vm, String methodDescriptor,
-                    List<BuilderInstruction> instructions) {
-        OpHandlerFactory handlerFactory = new OpHandlerFactory(vm, methodDescriptor);
-
-        SparseArray<List<ContextNode>> result = new SparseArray<List<ContextNode>>(instructions.size());
-        for (BuilderInstruction instruction : instructions) {
-            int address = instruction.getLocation().getCodeAddress();
-            OpHandler handler = handlerFactory.create(instruction, address);
-            ContextNode node = new ContextNode(handler);
-
-            // Most node piles will be a template node and one node with context.
-            List<ContextNode> nodePile = new ArrayList<ContextNode>(2);
-            nodePile.add(node);
-
-            result.put(address, nodePile);
+    static boolean isSameValue(Object value, Object otherValue) {
+        if (value == otherValue) {
+            return true;
         }
 
-        return result;
-    }
-
-    private static TIntList buildTerminatingAddresses(List<BuilderInstruction> instructions) {
-        TIntList result = new TIntArrayList(1);
-
-        for (BuilderInstruction instruction : instructions) {
-            int address = instruction.getLocation().getCodeAddress();
-            if (!instruction.getOpcode().canContinue()) {
-                result.add(address);
-            }
+        // Numeric registers are stored unboxed and each peek boxes a new instance.
+        if ((value instanceof Number) && (otherValue != null) && (value.getClass() == otherValue.getClass())) {
+            return value.equals(otherValue);
         }
 
-        return result;
+        return false;
     }
 
-    private final SparseArray<List<ContextNode>> addressToNodePile;
+    // Shared by every execution of this version of the method.
+    private final InstructionGraph template;
 
-    private final String methodDescriptor;
+    // Only addresses reached during this execution have piles, so nothing is copied for code that's never executed.
+    // The root node is the first node in the pile for address 0.
+    private final TIntObjectMap<List<ContextNode>> addressToNodePile;
 
-    private final TIntList terminatingAddresses;
+    private final ContextNode rootNode;
 
-    ContextGraph(ContextGraph other) {
-        methodDescriptor = other.methodDescriptor;
+    private boolean hasMergedStates;
 
-        addressToNodePile = new SparseArray<List<ContextNode>>(other.addressToNodePile.size());
-        for (int i = 0; i < other.addressToNodePile.size(); i++) {
-            int address = other.addressToNodePile.keyAt(i);
-            List<ContextNode> otherNodePile = other.addressToNodePile.get(address);
-            List<ContextNode> nodePile = new ArrayList<ContextNode>(otherNodePile.size());
-            for (ContextNode otherNode : otherNodePile) {
-                nodePile.add(new ContextNode(otherNode));
-            }
-
-            addressToNodePile.put(address, nodePile);
-        }
-
-        terminatingAddresses = other.terminatingAddresses;
-    }
+    private boolean isCompact;
 
-    ContextGraph(VirtualMachine vm, BuilderMethod method) {
-        methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
+    // Executions summarized without keeping their nodes. That's every execution in compact mode, and otherwise only
+    // iterations of counted loops. Null until something is summarized.
+    private SparseArray<NodePileSummary> addressToSummary;
 
-        MutableMethodImplementation implementation = (MutableMethodImplementation) method.getImplementation();
-        List<BuilderInstruction> instructions = implementation.getInstructions();
+    // Consensus of every register at an address, built from its node pile the first time any register is asked for.
+    // Optimizations ask about many registers and addresses, and this walks each pile once without cloning.
+    private final SparseArray<RegisterConsensus> addressToConsensus = new SparseArray<RegisterConsensus>();
 
-        addressToNodePile = buildAddressToNodePile(vm, methodDescriptor, instructions);
+    ContextGraph(InstructionGraph template) {
+        this.template = template;
 
-        terminatingAddresses = buildTerminatingAddresses(instructions);
+        addressToNodePile = new TIntObjectHashMap<List<ContextNode>>();
+        rootNode = new ContextNode(template.getOpHandler(0));
+        addNode(0, rootNode);
     }
 
     public TIntList getAddresses() {
-        TIntList addresses = new TIntArrayList(addressToNodePile.size());
-
-        for (int i = 0; i < addressToNodePile.size(); i++) {
-            addresses.add(addressToNodePile.keyAt(i));
-        }
-
-        return addresses;
+        return template.getAddresses();
     }
 
     public void addNode(int address, ContextNode child) {
-        addressToNodePile.get(address).add(child);
+        List<ContextNode> nodePile = addressToNodePile.get(address);
+        if (nodePile == null) {
+            // Most node piles will only have one node.
+            nodePile = new ArrayList<ContextNode>(1);
+            addressToNodePile.put(address, nodePile);
+        }
+        nodePile.add(child);
+        invalidateConsensus(address);
     }
 
     public TIntList getConnectedTerminatingAddresses() {
+        TIntList terminatingAddresses = template.getTerminatingAddresses();
         TIntList result = new TIntArrayList(1);
         for (int i = 0; i < terminatingAddresses.size(); i++) {
             int address = terminatingAddresses.get(i);
@@ -126,39 +104,100 @@ public class ContextGraph implements Iterable {
     }
 
     public Object getRegisterConsensus(TIntList addresses, int register) {
-        ContextNode fistNode = getNodePile(addresses.get(0)).get(0);
-        Object value = fistNode.getContext().peekRegister(register);
+        Object value = null;
+        boolean hasValue = false;
         for (int i = 0; i < addresses.size(); i++) {
-            int address = addresses.get(i);
-            for (ContextNode node : getNodePile(address)) {
-                Object otherValue = node.getContext().peekRegister(register);
-
-                if (value != otherValue) {
-                    log.finer("No conensus value for register #" + register + ", returning unknown");
+            RegisterConsensus consensus = getConsensus(addresses.get(i));
+            if (consensus == null) {
+                // Not reached
+                continue;
+            }
 
-                    return new UnknownValue(SmaliClassUtils.getValueType(value));
-                }
+            Object otherValue = consensus.get(register);
+            if (!hasValue) {
+                value = otherValue;
+                hasValue = true;
+            } else {
+                value = RegisterConsensus.merge(value, otherValue);
             }
         }
 
+        if ((value instanceof UnknownValue) && log.isLoggable(Level.FINER)) {
+            log.finer("No conensus value for register #" + register + ", returning unknown");
+        }
+
         return value;
     }
 
+    public TIntList getRegistersAssigned(int address) {
+        // All executions of the same instruction should set the same registers
+        List<ContextNode> nodePile = getNodePile(address);
+        if (nodePile.isEmpty()) {
+            return getSummary(address).getRegistersAssigned();
+        }
+
+        return nodePile.get(0).getContext().getRegistersAssigned();
+    }
+
+    public TIntSet getChildAddresses(int address) {
+        NodePileSummary summary = getSummary(address);
+        List<ContextNode> nodePile = getNodePile(address);
+        if (nodePile.isEmpty()) {
+            return summary != null ? summary.getChildAddresses() : new TIntHashSet(0);
+        }
+
+        TIntSet result = new TIntHashSet();
+        for (ContextNode node : nodePile) {
+            for (ContextNode child : node.getChildren()) {
+                result.add(child.getAddress());
+            }
+        }
+        if (summary != null) {
+            result.addAll(summary.getChildAddresses());
+        }
+
+        return result;
+    }
+
+    public TIntSet getRegistersRead(int address) {
+        // Registers read by any execution of the address.
+        NodePileSummary summary = getSummary(address);
+        List<ContextNode> nodePile = getNodePile(address);
+        if (nodePile.isEmpty()) {
+            return summary != null ? summary.getRegistersRead() : new TIntHashSet(0);
+        }
+
+        TIntSet result = new TIntHashSet();
+        for (ContextNode node : nodePile) {
+            node.getContext().addRegistersRead(result);
+        }
+        if (summary != null) {
+            result.addAll(summary.getRegistersRead());
+        }
+
+        return result;
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return template.getControlFlowGraph();
+    }
+
     public String getMethodDescriptor() {
-        return methodDescriptor;
+        return template.getMethodDescriptor();
     }
 
     public List<ContextNode> getNodePile(int address) {
         List<ContextNode> result = addressToNodePile.get(address);
-        if (address > 0) {
-            result = result.subList(1, result.size()); // remove template node
+        if (result == null) {
+            // Not reached
+            result = Collections.emptyList();
         }
 
         return result;
     }
 
     public OpHandler getOpHandler(int address) {
-        return addressToNodePile.get(address).get(0).getHandler();
+        return template.getOpHandler(address);
     }
 
     public MethodContext getRootContext() {
@@ -169,33 +208,141 @@ public class ContextGraph implements Iterable {
         return getRootNode().toGraph();
     }
 
+    public boolean hasMergedStates() {
+        // If true, nodes were reused for every visit of an address and the graph may contain cycles.
+        return hasMergedStates;
+    }
+
+    public boolean hasSideEffects(int address) {
+        // True if any execution of the address had side effects.
+        for (ContextNode node : getNodePile(address)) {
+            if (node.getContext().hasSideEffects()) {
+                return true;
+            }
+        }
+        NodePileSummary summary = getSummary(address);
+
+        return (summary != null) && summary.hasSideEffects();
+    }
+
+    public boolean hasSummaries() {
+        // If true, some executions were summarized rather than kept as nodes, so the nodes don't cover every path.
+        return addressToSummary != null;
+    }
+
+    public boolean isCompact() {
+        return isCompact;
+    }
+
     public boolean wasAddressReached(int address) {
         if (address == 0) {
             // Root is always reachable
             return true;
         }
 
-        List<ContextNode> nodePile = addressToNodePile.get(address);
+        if (addressToNodePile.containsKey(address)) {
+            return true;
+        }
 
-        // If this address was reached during execution there will be clones in the pile.
-        return nodePile.size() > 0;
+        NodePileSummary summary = getSummary(address);
+
+        return (summary != null) && (summary.getNodeCount() > 0);
+    }
+
+    void addSummary(int address, NodePileSummary summary) {
+        if (addressToSummary == null) {
+            addressToSummary = new SparseArray<NodePileSummary>();
+        }
+
+        NodePileSummary existing = addressToSummary.get(address);
+        if (existing == null) {
+            addressToSummary.put(address, summary);
+        } else {
+            existing.add(summary);
+        }
+        invalidateConsensus(address);
     }
 
-    int getNodeCount() {
-        return addressToNodePile.size();
+    CountedLoop getCountedLoop(int address) {
+        // Null unless the address is the header of a counted loop.
+        return template.getCountedLoop(address);
+    }
+
+    int getInstructionCount() {
+        return template.getInstructionCount();
     }
 
     ContextNode getRootNode() {
         // There is only one entry point for a method.
-        return addressToNodePile.get(0).get(0);
+        return rootNode;
+    }
+
+    void replaceNode(ContextNode node, ContextNode replacement) {
+        // Drops a node which was never executed and points its parent at one which will be instead.
+        int address = node.getAddress();
+        List<ContextNode> nodePile = addressToNodePile.get(address);
+        nodePile.remove(node);
+        if (nodePile.isEmpty()) {
+            addressToNodePile.remove(address);
+        }
+        invalidateConsensus(address);
+
+        node.getParent().replaceChild(node, replacement);
+    }
+
+    void setCompact() {
+        isCompact = true;
+        addressToSummary = new SparseArray<NodePileSummary>(template.getInstructionCount());
+    }
+
+    void summarize(ContextNode node, int[] childAddresses) {
+        // In compact mode, only what the optimizers query is kept and the node can be dropped.
+        int address = node.getAddress();
+        NodePileSummary summary = addressToSummary.get(address);
+        if (summary == null) {
+            summary = new NodePileSummary(node.getContext().getRegisterCount());
+            addressToSummary.put(address, summary);
+        }
+        summary.add(node.getContext(), childAddresses);
+        invalidateConsensus(address);
     }
 
-    ContextNode getTemplateNode(int address) {
-        return addressToNodePile.get(address).get(0);
+    void setMergedStates() {
+        hasMergedStates = true;
     }
 
-    void setRootContext(MethodContext mctx) {
-        getRootNode().setContext(mctx);
+    private RegisterConsensus getConsensus(int address) {
+        // Null if the address wasn't reached.
+        NodePileSummary summary = getSummary(address);
+        List<ContextNode> nodePile = getNodePile(address);
+        if (nodePile.isEmpty()) {
+            return summary != null ? summary.getRegisterConsensus() : null;
+        }
+
+        RegisterConsensus consensus = addressToConsensus.get(address);
+        if (consensus == null) {
+            consensus = new RegisterConsensus(nodePile.get(0).getContext().getRegisterCount());
+            for (ContextNode node : nodePile) {
+                consensus.add(node.getContext());
+            }
+            if (summary != null) {
+                consensus.add(summary.getRegisterConsensus());
+            }
+            addressToConsensus.put(address, consensus);
+        }
+
+        return consensus;
+    }
+
+    private NodePileSummary getSummary(int address) {
+        return addressToSummary != null ? addressToSummary.get(address) : null;
+    }
+
+    private void invalidateConsensus(int address) {
+        if ((addressToConsensus.size() > 0) && (addressToConsensus.get(address) != null)) {
+            // Pile changed after its consensus was built.
+            addressToConsensus.put(address, null);
+        }
     }
 
     @Override
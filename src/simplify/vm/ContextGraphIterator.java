@@ -2,17 +2,22 @@ package simplify.vm;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 public class ContextGraphIterator implements Iterator<ContextNode> {
     private final Deque<ContextNode> stack;
+    private final Set<ContextNode> visitedNodes;
 
     ContextGraphIterator(ContextGraph graph) {
         stack = new ArrayDeque<ContextNode>();
+        visitedNodes = new HashSet<ContextNode>();
         ContextNode rootNode = graph.getRootNode();
 
         if (rootNode != null) {
             stack.push(rootNode);
+            visitedNodes.add(rootNode);
         }
     }
 
@@ -26,7 +31,10 @@ public class ContextGraphIterator implements Iterator<ContextNode> {
         ContextNode result = stack.poll();
 
         for (ContextNode child : result.getChildren()) {
-            stack.push(child);
+            // Graphs with merged states may have cycles.
+            if (visitedNodes.add(child)) {
+                stack.push(child);
+            }
         }
 
         return result;
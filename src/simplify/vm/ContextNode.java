@@ -2,29 +2,18 @@ package simplify.vm;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Logger;
 
-import simplify.Main;
 import simplify.vm.handlers.OpHandler;
 
 public class ContextNode {
 
     private final static String DOT = "[^a-zA-Z\200-\377_0-9\\s\\p{Punct}]";
 
-    private static Logger log = Logger.getLogger(Main.class.getSimpleName());
     private final List<ContextNode> children;
     private final OpHandler handler;
     private MethodContext mctx;
     private ContextNode parent;
 
-    ContextNode(ContextNode node) {
-        this(node.handler);
-
-        if (node.mctx != null) {
-            mctx = new MethodContext(node.mctx);
-        }
-    }
-
     ContextNode(OpHandler handler) {
         this.handler = handler;
 
@@ -38,13 +27,8 @@ public class ContextNode {
     }
 
     public int[] execute() {
-        log.fine("HANDLING @" + handler.getAddress() + ": " + handler);
-
-        int[] result = handler.execute(mctx);
-
-        log.fine("Context after: " + mctx);
-
-        return result;
+        // Per instruction logging is done by ExecutionTracer, which costs nothing unless a method is traced.
+        return handler.execute(mctx);
     }
 
     public int getAddress() {
@@ -105,6 +89,16 @@ public class ContextNode {
         }
     }
 
+    void replaceChild(ContextNode child, ContextNode replacement) {
+        // Replacement keeps its own parent. With merged states a node can be reached from several.
+        int index = children.indexOf(child);
+        if (children.contains(replacement)) {
+            children.remove(index);
+        } else {
+            children.set(index, replacement);
+        }
+    }
+
     private void setParent(ContextNode parent) {
         // All nodes will have [0,1] parents since a node represents both an instruction and a context, or vm state.
         // Each execution of an instruction will have a new state.
@@ -0,0 +1,143 @@
+package simplify.vm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public class ExecutionBudget {
+
+    // Limits for a single execution of a method. When one runs out, the rest of the method is executed with merged
+    // states rather than giving up on it. A limit <= 0 means there is none.
+
+    // Time and memory are checked every this many nodes since they aren't free.
+    private static final int CHECK_INTERVAL = 256;
+
+    public static final ExecutionBudget UNLIMITED = new ExecutionBudget(0, 0, 0);
+
+    // Time and memory limits which ran out on the current thread. Whatever was executed since depends on how fast the
+    // run was, so it shouldn't be kept for other runs. Node limits give the same results every time.
+    private static final ThreadLocal<long[]> runDependentCount = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    static class Meter {
+
+        private final ExecutionBudget budget;
+        private final long startNanos;
+        private final long startMemory;
+        private int nodeCount;
+        private long stepCount;
+        private String exhausted;
+
+        private Meter(ExecutionBudget budget) {
+            this.budget = budget;
+            startNanos = budget.maxMillis > 0 ? System.nanoTime() : 0;
+            startMemory = budget.maxMemory > 0 ? getAllocatedBytes() : -1;
+        }
+
+        String getExhausted() {
+            // Which limit ran out, or null.
+            return exhausted;
+        }
+
+        boolean spend() {
+            // Counts a node about to be executed. Returns false once any limit has run out.
+            if (exhausted != null) {
+                return false;
+            }
+
+            nodeCount++;
+            if ((budget.maxNodes > 0) && (nodeCount > budget.maxNodes)) {
+                exhausted = "nodes > " + budget.maxNodes;
+            } else if ((nodeCount % CHECK_INTERVAL) == 0) {
+                checkTimeAndMemory();
+            }
+
+            return exhausted == null;
+        }
+
+        boolean spendStep() {
+            // Counts an instruction executed without a node, e.g. in a summarized loop. These don't use up nodes.
+            if (exhausted != null) {
+                return false;
+            }
+
+            stepCount++;
+            if ((stepCount % CHECK_INTERVAL) == 0) {
+                checkTimeAndMemory();
+            }
+
+            return exhausted == null;
+        }
+
+        private void checkTimeAndMemory() {
+            if ((budget.maxMillis > 0) && ((System.nanoTime() - startNanos) / 1000000 > budget.maxMillis)) {
+                exhausted = "time > " + budget.maxMillis + "ms";
+                markRunDependent();
+            } else if ((startMemory >= 0) && ((getAllocatedBytes() - startMemory) > budget.maxMemory)) {
+                // Only this thread's allocations count, so other workers can't use up this budget. It includes
+                // garbage, so it's rough, but it's cheap and catches real blow ups.
+                exhausted = "memory > " + budget.maxMemory + " bytes";
+                markRunDependent();
+            }
+        }
+
+    }
+
+    public static long getRunDependentCount() {
+        return runDependentCount.get()[0];
+    }
+
+    public static void markRunDependent() {
+        runDependentCount.get()[0]++;
+    }
+
+    private static long getAllocatedBytes() {
+        // Not all VMs count allocations per thread. Without it there's no memory limit.
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+
+    private final int maxNodes;
+    private final long maxMillis;
+    private final long maxMemory;
+
+    public ExecutionBudget(int maxNodes, long maxMillis, long maxMemory) {
+        this.maxNodes = maxNodes;
+        this.maxMillis = maxMillis;
+        this.maxMemory = maxMemory;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("nodes=").append(maxNodes).append(", millis=").append(maxMillis).append(", memory=")
+                        .append(maxMemory);
+
+        return sb.toString();
+    }
+
+    Meter start() {
+        return new Meter(this);
+    }
+
+}
@@ -0,0 +1,307 @@
+package simplify.vm;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TIntIntMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import simplify.Utils;
+import simplify.vm.handlers.OpHandler;
+
+public class ExecutionProfiler {
+
+    // Method executions are bucketed by total node visits: 0, 1, 2-3, 4-7, ...
+    private static final int HISTOGRAM_BUCKETS = 32;
+
+    private static class Stats {
+
+        long count;
+        long nanos;
+        long selfNanos;
+        long nodeVisits;
+        long maxAddressVisits;
+        long clones;
+
+        void add(Stats other) {
+            count += other.count;
+            nanos += other.nanos;
+            selfNanos += other.selfNanos;
+            nodeVisits += other.nodeVisits;
+            maxAddressVisits = Math.max(maxAddressVisits, other.maxAddressVisits);
+            clones += other.clones;
+        }
+
+    }
+
+    // Every thread records to its own profile so workers don't contend. They're merged for the report.
+    private static class ThreadProfile {
+
+        final Map<String, Stats> opcodeToStats = new TreeMap<String, Stats>();
+        final Map<String, Stats> handlerToStats = new TreeMap<String, Stats>();
+        final Map<String, Stats> methodToStats = new TreeMap<String, Stats>();
+        final Map<Integer, Stats> depthToStats = new TreeMap<Integer, Stats>();
+        final long[] nodeVisitHistogram = new long[HISTOGRAM_BUCKETS];
+
+        // Time and clones of nested method executions, per open frame, so each frame can report its own.
+        final TLongList excludedNanos = new TLongArrayList();
+        final TLongList excludedClones = new TLongArrayList();
+        final TLongList startClones = new TLongArrayList();
+
+    }
+
+    private static Stats getStats(Map<String, Stats> keyToStats, String key) {
+        Stats result = keyToStats.get(key);
+        if (result == null) {
+            result = new Stats();
+            keyToStats.put(key, result);
+        }
+
+        return result;
+    }
+
+    private static int getHistogramBucket(long visits) {
+        int result = 64 - Long.numberOfLeadingZeros(visits);
+
+        return Math.min(result, HISTOGRAM_BUCKETS - 1);
+    }
+
+    private static String escapeCsv(String value) {
+        if (value.contains(",") || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        return value;
+    }
+
+    private final List<ThreadProfile> profiles;
+    private final ThreadLocal<ThreadProfile> threadProfile;
+
+    public ExecutionProfiler() {
+        profiles = Collections.synchronizedList(new ArrayList<ThreadProfile>());
+        threadProfile = new ThreadLocal<ThreadProfile>() {
+            @Override
+            protected ThreadProfile initialValue() {
+                ThreadProfile profile = new ThreadProfile();
+                profiles.add(profile);
+
+                return profile;
+            }
+        };
+    }
+
+    long startFrame() {
+        ThreadProfile profile = threadProfile.get();
+        profile.excludedNanos.add(0);
+        profile.excludedClones.add(0);
+        profile.startClones.add(VirtualMachineContext.getCloneCount());
+
+        return System.nanoTime();
+    }
+
+    void endNode(OpHandler handler, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        ThreadProfile profile = threadProfile.get();
+        long excludedNanos = popLast(profile.excludedNanos);
+        long excludedClones = popLast(profile.excludedClones);
+        long clones = VirtualMachineContext.getCloneCount() - popLast(profile.startClones);
+
+        // Invokes exclude the methods they execute, which are counted on their own.
+        addNode(getStats(profile.opcodeToStats, handler.getOpName()), elapsed, excludedNanos, clones - excludedClones);
+        addNode(getStats(profile.handlerToStats, handler.getClass().getSimpleName()), elapsed, excludedNanos, clones
+                        - excludedClones);
+
+        // Nested methods are also excluded from the method this node belongs to.
+        addExcluded(profile, excludedNanos, excludedClones);
+    }
+
+    void endMethod(String methodDescriptor, int callDepth, long startNanos, TIntIntMap addressToVisits) {
+        long elapsed = System.nanoTime() - startNanos;
+        ThreadProfile profile = threadProfile.get();
+        long excludedNanos = popLast(profile.excludedNanos);
+        long excludedClones = popLast(profile.excludedClones);
+        long clones = VirtualMachineContext.getCloneCount() - popLast(profile.startClones);
+
+        long nodeVisits = 0;
+        long maxAddressVisits = 0;
+        TIntIntIterator iter = addressToVisits.iterator();
+        while (iter.hasNext()) {
+            iter.advance();
+            nodeVisits += iter.value();
+            maxAddressVisits = Math.max(maxAddressVisits, iter.value());
+        }
+
+        Stats stats = new Stats();
+        stats.count = 1;
+        stats.nanos = elapsed;
+        stats.selfNanos = elapsed - excludedNanos;
+        stats.nodeVisits = nodeVisits;
+        stats.maxAddressVisits = maxAddressVisits;
+        stats.clones = clones - excludedClones;
+        getStats(profile.methodToStats, methodDescriptor).add(stats);
+
+        Stats depthStats = profile.depthToStats.get(callDepth);
+        if (depthStats == null) {
+            depthStats = new Stats();
+            profile.depthToStats.put(callDepth, depthStats);
+        }
+        depthStats.add(stats);
+
+        profile.nodeVisitHistogram[getHistogramBucket(nodeVisits)]++;
+
+        addExcluded(profile, elapsed, clones);
+    }
+
+    public void writeReport(File file) throws IOException {
+        ThreadProfile merged = merge();
+        PrintWriter writer = new PrintWriter(file, "UTF-8");
+        try {
+            if (file.getName().endsWith(".csv")) {
+                writeCsv(writer, merged);
+            } else {
+                writeJson(writer, merged);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void addExcluded(ThreadProfile profile, long nanos, long clones) {
+        int top = profile.excludedNanos.size() - 1;
+        if (top >= 0) {
+            profile.excludedNanos.set(top, profile.excludedNanos.get(top) + nanos);
+            profile.excludedClones.set(top, profile.excludedClones.get(top) + clones);
+        }
+    }
+
+    private static void addNode(Stats stats, long nanos, long excludedNanos, long clones) {
+        stats.count++;
+        stats.nanos += nanos;
+        stats.selfNanos += nanos - excludedNanos;
+        stats.clones += clones;
+    }
+
+    private static long popLast(TLongList list) {
+        return list.removeAt(list.size() - 1);
+    }
+
+    private ThreadProfile merge() {
+        ThreadProfile result = new ThreadProfile();
+        synchronized (profiles) {
+            for (ThreadProfile profile : profiles) {
+                mergeStats(profile.opcodeToStats, result.opcodeToStats);
+                mergeStats(profile.handlerToStats, result.handlerToStats);
+                mergeStats(profile.methodToStats, result.methodToStats);
+                for (Map.Entry<Integer, Stats> entry : profile.depthToStats.entrySet()) {
+                    Stats stats = result.depthToStats.get(entry.getKey());
+                    if (stats == null) {
+                        stats = new Stats();
+                        result.depthToStats.put(entry.getKey(), stats);
+                    }
+                    stats.add(entry.getValue());
+                }
+                for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                    result.nodeVisitHistogram[i] += profile.nodeVisitHistogram[i];
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static void mergeStats(Map<String, Stats> from, Map<String, Stats> to) {
+        for (Map.Entry<String, Stats> entry : from.entrySet()) {
+            getStats(to, entry.getKey()).add(entry.getValue());
+        }
+    }
+
+    private static void writeCsv(PrintWriter writer, ThreadProfile profile) {
+        writer.println("section,key,count,nanos,self_nanos,node_visits,max_address_visits,clones");
+        writeCsvSection(writer, "opcode", profile.opcodeToStats);
+        writeCsvSection(writer, "handler", profile.handlerToStats);
+        writeCsvSection(writer, "method", profile.methodToStats);
+        for (Map.Entry<Integer, Stats> entry : profile.depthToStats.entrySet()) {
+            writeCsvRow(writer, "depth", String.valueOf(entry.getKey()), entry.getValue());
+        }
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            if (profile.nodeVisitHistogram[i] > 0) {
+                writer.println("node_visits," + getBucketName(i) + "," + profile.nodeVisitHistogram[i] + ",,,,,");
+            }
+        }
+    }
+
+    private static void writeCsvSection(PrintWriter writer, String section, Map<String, Stats> keyToStats) {
+        for (Map.Entry<String, Stats> entry : keyToStats.entrySet()) {
+            writeCsvRow(writer, section, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void writeCsvRow(PrintWriter writer, String section, String key, Stats stats) {
+        writer.println(section + "," + escapeCsv(key) + "," + stats.count + "," + stats.nanos + "," + stats.selfNanos
+                        + "," + stats.nodeVisits + "," + stats.maxAddressVisits + "," + stats.clones);
+    }
+
+    private static void writeJson(PrintWriter writer, ThreadProfile profile) {
+        writer.println("{");
+        writeJsonSection(writer, "opcodes", profile.opcodeToStats);
+        writer.println(",");
+        writeJsonSection(writer, "handlers", profile.handlerToStats);
+        writer.println(",");
+        writeJsonSection(writer, "methods", profile.methodToStats);
+        writer.println(",");
+
+        Map<String, Stats> depthToStats = new TreeMap<String, Stats>();
+        for (Map.Entry<Integer, Stats> entry : profile.depthToStats.entrySet()) {
+            depthToStats.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        writeJsonSection(writer, "depths", depthToStats);
+        writer.println(",");
+
+        writer.print("  \"nodeVisitHistogram\": {");
+        String separator = "";
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            if (profile.nodeVisitHistogram[i] > 0) {
+                writer.print(separator + "\n    \"" + getBucketName(i) + "\": " + profile.nodeVisitHistogram[i]);
+                separator = ",";
+            }
+        }
+        writer.println("\n  }");
+        writer.println("}");
+    }
+
+    private static void writeJsonSection(PrintWriter writer, String name, Map<String, Stats> keyToStats) {
+        writer.print("  \"" + name + "\": {");
+        String separator = "";
+        for (Map.Entry<String, Stats> entry : keyToStats.entrySet()) {
+            Stats stats = entry.getValue();
+            writer.print(separator + "\n    \"" + Utils.escapeJson(entry.getKey()) + "\": {\"count\": " + stats.count
+                            + ", \"nanos\": " + stats.nanos + ", \"selfNanos\": " + stats.selfNanos
+                            + ", \"nodeVisits\": " + stats.nodeVisits + ", \"maxAddressVisits\": "
+                            + stats.maxAddressVisits + ", \"clones\": " + stats.clones + "}");
+            separator = ",";
+        }
+        writer.print("\n  }");
+    }
+
+    private static String getBucketName(int bucket) {
+        if (bucket == 0) {
+            return "0";
+        }
+
+        long low = 1L << (bucket - 1);
+        if (bucket == (HISTOGRAM_BUCKETS - 1)) {
+            return low + "+";
+        }
+
+        return low + "-" + ((low << 1) - 1);
+    }
+
+}
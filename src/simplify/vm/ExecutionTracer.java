@@ -0,0 +1,93 @@
+package simplify.vm;
+
+import gnu.trove.list.TIntList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import simplify.SmaliClassUtils;
+import simplify.Utils;
+
+public class ExecutionTracer {
+
+    private final PrintWriter writer;
+    private final Pattern methodPattern;
+    private final int sampleRate;
+    private final ConcurrentMap<String, AtomicInteger> methodDescriptorToExecutions;
+    private final AtomicLong nextTraceId;
+
+    public ExecutionTracer(File traceFile, Pattern methodPattern, int sampleRate) throws IOException {
+        writer = new PrintWriter(traceFile, "UTF-8");
+        this.methodPattern = methodPattern;
+        this.sampleRate = sampleRate;
+        methodDescriptorToExecutions = new ConcurrentHashMap<String, AtomicInteger>();
+        nextTraceId = new AtomicLong();
+    }
+
+    public void close() {
+        writer.close();
+    }
+
+    long startMethod(String methodDescriptor, int callDepth) {
+        // Returns an id for this execution if it's traced, otherwise -1. Only every sampleRate-th execution of each
+        // matching method is traced.
+        if ((methodPattern != null) && !methodPattern.matcher(methodDescriptor).find()) {
+            return -1;
+        }
+
+        AtomicInteger executions = methodDescriptorToExecutions.get(methodDescriptor);
+        if (executions == null) {
+            methodDescriptorToExecutions.putIfAbsent(methodDescriptor, new AtomicInteger());
+            executions = methodDescriptorToExecutions.get(methodDescriptor);
+        }
+        if ((executions.getAndIncrement() % sampleRate) != 0) {
+            return -1;
+        }
+
+        long traceId = nextTraceId.getAndIncrement();
+        write("{\"trace\": " + traceId + ", \"event\": \"method\", \"method\": \"" + Utils.escapeJson(methodDescriptor)
+                        + "\", \"depth\": " + callDepth + "}");
+
+        return traceId;
+    }
+
+    void traceNode(long traceId, ContextNode node, int[] childAddresses) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"trace\": ").append(traceId).append(", \"event\": \"node\", \"address\": ")
+                        .append(node.getAddress()).append(", \"op\": \"").append(node.getHandler().getOpName())
+                        .append("\", \"instruction\": \"").append(Utils.escapeJson(node.getHandler().toString()))
+                        .append("\", \"children\": [");
+        for (int i = 0; i < childAddresses.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(childAddresses[i]);
+        }
+
+        sb.append("], \"assigned\": {");
+        MethodContext mctx = node.getContext();
+        TIntList registersAssigned = mctx.getRegistersAssigned();
+        for (int i = 0; i < registersAssigned.size(); i++) {
+            int register = registersAssigned.get(i);
+            // Shared values are read so tracing never clones a register or changes what was read.
+            Object value = mctx.hasRegister(register) ? mctx.peekSharedRegister(register) : null;
+            String type = value == null ? "null" : SmaliClassUtils.getValueType(value);
+            sb.append(i == 0 ? "" : ", ").append("\"r").append(register).append("\": {\"type\": \"")
+                            .append(Utils.escapeJson(type)).append("\", \"value\": \"")
+                            .append(Utils.escapeJson(String.valueOf(value))).append("\"}");
+        }
+        sb.append("}}");
+
+        write(sb.toString());
+    }
+
+    private void write(String line) {
+        synchronized (writer) {
+            writer.println(line);
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package simplify.vm;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.List;
+
+import org.jf.dexlib2.builder.BuilderInstruction;
+import org.jf.dexlib2.builder.MutableMethodImplementation;
+import org.jf.dexlib2.util.ReferenceUtil;
+import org.jf.dexlib2.writer.builder.BuilderMethod;
+import org.jf.util.SparseArray;
+
+import simplify.graph.ControlFlowGraph;
+import simplify.graph.CountedLoop;
+import simplify.vm.handlers.OpHandler;
+import simplify.vm.handlers.OpHandlerFactory;
+
+class InstructionGraph {
+
+    // Everything about a version of a method which is the same for every execution. It's built once and shared by
+    // the context graph of each execution, so nothing here may be changed after construction.
+
+    private static SparseArray<BuilderInstruction> buildAddressToInstruction(List<BuilderInstruction> instructions) {
+        SparseArray<BuilderInstruction> result = new SparseArray<BuilderInstruction>(instructions.size());
+        for (BuilderInstruction instruction : instructions) {
+            result.put(instruction.getLocation().getCodeAddress(), instruction);
+        }
+
+        return result;
+    }
+
+    private static SparseArray<OpHandler> buildAddressToHandler(VirtualMachine vm, String methodDescriptor,
+                    List<BuilderInstruction> instructions, InstructionGraph previous, TIntSet changedAddresses) {
+        OpHandlerFactory handlerFactory = new OpHandlerFactory(vm, methodDescriptor);
+
+        SparseArray<OpHandler> result = new SparseArray<OpHandler>(instructions.size());
+        for (BuilderInstruction instruction : instructions) {
+            int address = instruction.getLocation().getCodeAddress();
+            OpHandler handler;
+            if ((previous != null) && !changedAddresses.contains(address)) {
+                handler = previous.getOpHandler(address);
+            } else {
+                handler = handlerFactory.create(instruction, address);
+            }
+
+            result.put(address, handler);
+        }
+
+        return result;
+    }
+
+    private static TIntList buildTerminatingAddresses(List<BuilderInstruction> instructions) {
+        TIntList result = new TIntArrayList(1);
+
+        for (BuilderInstruction instruction : instructions) {
+            int address = instruction.getLocation().getCodeAddress();
+            if (!instruction.getOpcode().canContinue()) {
+                result.add(address);
+            }
+        }
+
+        return result;
+    }
+
+    private final SparseArray<OpHandler> addressToHandler;
+
+    private final SparseArray<BuilderInstruction> addressToInstruction;
+
+    private final ControlFlowGraph controlFlowGraph;
+
+    private final SparseArray<CountedLoop> headerToCountedLoop;
+
+    private final String methodDescriptor;
+
+    private final MethodContext rootContext;
+
+    private final TIntList terminatingAddresses;
+
+    InstructionGraph(VirtualMachine vm, BuilderMethod method, MethodContext rootContext) {
+        this(vm, method, rootContext, null, null);
+    }
+
+    InstructionGraph(VirtualMachine vm, BuilderMethod method, MethodContext rootContext, InstructionGraph previous,
+                    TIntSet changedAddresses) {
+        methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
+        this.rootContext = rootContext;
+
+        MutableMethodImplementation implementation = (MutableMethodImplementation) method.getImplementation();
+        List<BuilderInstruction> instructions = implementation.getInstructions();
+
+        // Handlers of unchanged instructions are reused from the previous graph.
+        addressToHandler = buildAddressToHandler(vm, methodDescriptor, instructions, previous, changedAddresses);
+        addressToInstruction = buildAddressToInstruction(instructions);
+
+        // Built once for every version of the method and shared by all executions of it.
+        controlFlowGraph = new ControlFlowGraph(implementation);
+        headerToCountedLoop = CountedLoop.build(controlFlowGraph, addressToInstruction);
+
+        terminatingAddresses = buildTerminatingAddresses(instructions);
+    }
+
+    TIntList getAddresses() {
+        TIntList addresses = new TIntArrayList(addressToHandler.size());
+
+        for (int i = 0; i < addressToHandler.size(); i++) {
+            addresses.add(addressToHandler.keyAt(i));
+        }
+
+        return addresses;
+    }
+
+    TIntSet getChangedAddresses(BuilderMethod method) {
+        // Simplifier replaces instructions rather than modifying them. Returns null if instructions were added, removed
+        // or resized because every address after the change is shifted.
+        MutableMethodImplementation implementation = (MutableMethodImplementation) method.getImplementation();
+        List<BuilderInstruction> instructions = implementation.getInstructions();
+        if (instructions.size() != addressToInstruction.size()) {
+            return null;
+        }
+
+        TIntSet result = new TIntHashSet();
+        for (BuilderInstruction instruction : instructions) {
+            int address = instruction.getLocation().getCodeAddress();
+            BuilderInstruction previous = addressToInstruction.get(address);
+            if (previous == instruction) {
+                continue;
+            }
+
+            if ((previous == null) || (previous.getCodeUnits() != instruction.getCodeUnits())) {
+                return null;
+            }
+            result.add(address);
+        }
+
+        return result;
+    }
+
+    ControlFlowGraph getControlFlowGraph() {
+        return controlFlowGraph;
+    }
+
+    CountedLoop getCountedLoop(int address) {
+        return headerToCountedLoop.get(address);
+    }
+
+    int getInstructionCount() {
+        return addressToHandler.size();
+    }
+
+    String getMethodDescriptor() {
+        return methodDescriptor;
+    }
+
+    OpHandler getOpHandler(int address) {
+        return addressToHandler.get(address);
+    }
+
+    MethodContext getRootContext() {
+        // Executions must use a child of this so it's never modified.
+        return rootContext;
+    }
+
+    TIntList getTerminatingAddresses() {
+        return terminatingAddresses;
+    }
+
+}
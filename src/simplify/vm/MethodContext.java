@@ -7,6 +7,7 @@ public class MethodContext extends VirtualMachineContext {
 
     private int parameterCount;
     private int callDepth;
+    private boolean hasSideEffects;
 
     MethodContext(int parameterCount) {
         this(parameterCount, parameterCount, 0);
@@ -34,6 +35,15 @@ public class MethodContext extends VirtualMachineContext {
         return callDepth;
     }
 
+    public boolean hasSideEffects() {
+        // Only describes the instruction executed with this context. Children don't inherit it.
+        return hasSideEffects;
+    }
+
+    public void setSideEffects(boolean hasSideEffects) {
+        this.hasSideEffects = hasSideEffects;
+    }
+
     public void assignResultRegister(Object value) {
         assignRegister(ResultRegister, value);
     }
@@ -84,8 +94,8 @@ public class MethodContext extends VirtualMachineContext {
         return getRegisterCount() - parameterCount;
     }
 
-    public void incrementCallDepth() {
-        callDepth++;
+    public void setCallDepth(int callDepth) {
+        this.callDepth = callDepth;
     }
 
 }
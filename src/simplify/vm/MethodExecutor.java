@@ -1,18 +1,64 @@
 package simplify.vm;
 
+import gnu.trove.iterator.TIntIntIterator;
 import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jf.util.SparseArray;
+
 import simplify.Main;
+import simplify.SmaliClassUtils;
+import simplify.graph.ControlFlowGraph;
+import simplify.graph.CountedLoop;
+import simplify.vm.types.UnknownValue;
 
 public class MethodExecutor {
 
     private static Logger log = Logger.getLogger(Main.class.getSimpleName());
 
+    // Counted loops are summarized up to this many iterations. Longer ones are executed normally, which widens them.
+    private static final int MAX_LOOP_ITERATIONS = 1000000;
+
+    private static MethodContext mergeContexts(MethodContext context, MethodContext otherContext) {
+        // Each register is either a known value or unknown of some type once paths disagree. Values only ever become
+        // unknown, so every address is executed a bounded number of times.
+        MethodContext result = null;
+        for (int register = MethodContext.ReturnRegister; register < context.getRegisterCount(); register++) {
+            boolean hasRegister = context.hasRegister(register);
+            boolean otherHasRegister = otherContext.hasRegister(register);
+            if (!hasRegister && !otherHasRegister) {
+                continue;
+            }
+            if (hasRegister && otherHasRegister && context.hasSameValue(otherContext, register)) {
+                continue;
+            }
+
+            // A register only one path defines is also unknown, whichever path that is.
+            Object value = hasRegister ? context.peekRegister(register) : otherContext.peekRegister(register);
+            if (hasRegister && (value instanceof UnknownValue)) {
+                continue;
+            }
+
+            if (result == null) {
+                result = new MethodContext(context);
+            }
+            result.pokeRegister(register, new UnknownValue(SmaliClassUtils.getValueType(value)));
+        }
+
+        return result;
+    }
+
     private final VirtualMachine vm;
 
     MethodExecutor(VirtualMachine vm) {
@@ -28,37 +74,372 @@ public class MethodExecutor {
         }
 
         ContextGraph graph = vm.getInstructionGraph(methodDescriptor);
-        TIntIntMap indexToNodeVisitCounts = new TIntIntHashMap(graph.getNodeCount());
-        Deque<ContextNode> executeStack = new ArrayDeque<ContextNode>();
+        TIntIntMap indexToNodeVisitCounts = new TIntIntHashMap(graph.getInstructionCount());
+        Worklist worklist = vm.getSchedulingStrategy().createWorklist();
         ContextNode rootNode = graph.getRootNode();
         if (mctx != null) {
             // If called with a context, it means we're being invoked from within another method.
             rootNode.setContext(mctx);
         }
-        executeStack.push(rootNode);
+        if (vm.isCompactGraphs()) {
+            graph.setCompact();
+        }
+        worklist.add(rootNode);
+
+        long traceId = startTrace(methodDescriptor, mctx.getCallDepth());
+        ExecutionProfiler profiler = vm.getProfiler();
+        long startNanos = (profiler == null) ? 0 : profiler.startFrame();
+        try {
+            execute(graph, worklist, indexToNodeVisitCounts, traceId);
+        } finally {
+            if (profiler != null) {
+                profiler.endMethod(methodDescriptor, mctx.getCallDepth(), startNanos, indexToNodeVisitCounts);
+            }
+        }
+
+        return graph;
+    }
+
+    ContextGraph executeMerged(String methodDescriptor, MethodContext mctx) throws MaxNodeVisitsExceeded {
+        log.info("Executing " + methodDescriptor + " with merged states, depth=" + mctx.getCallDepth());
+
+        ContextGraph graph = vm.getInstructionGraph(methodDescriptor);
+        graph.setMergedStates();
+        TIntIntMap indexToNodeVisitCounts = new TIntIntHashMap(graph.getInstructionCount());
+        TIntObjectMap<MethodContext> addressToEntryContext = new TIntObjectHashMap<MethodContext>();
+        TIntObjectMap<ContextNode> addressToNode = new TIntObjectHashMap<ContextNode>();
+        TIntSet queuedAddresses = new TIntHashSet();
+        Worklist worklist = vm.getSchedulingStrategy().createWorklist();
+
+        // Instead of a node for every visit, there is one node per address. Its context is built from the merge of
+        // every context flowing into the address, and it's only executed again when the merge changes.
+        ContextNode rootNode = graph.getRootNode();
+        addressToEntryContext.put(0, mctx);
+        addressToNode.put(0, rootNode);
+        rootNode.setContext(new MethodContext(mctx));
+        queuedAddresses.add(0);
+        worklist.add(rootNode);
+
+        long traceId = startTrace(methodDescriptor, mctx.getCallDepth());
+        ExecutionProfiler profiler = vm.getProfiler();
+        long startNanos = (profiler == null) ? 0 : profiler.startFrame();
+        try {
+            executeMerged(graph, worklist, indexToNodeVisitCounts, addressToEntryContext, addressToNode,
+                            queuedAddresses, traceId);
+        } finally {
+            if (profiler != null) {
+                profiler.endMethod(methodDescriptor, mctx.getCallDepth(), startNanos, indexToNodeVisitCounts);
+            }
+        }
+
+        return graph;
+    }
 
+    private void executeMerged(ContextGraph graph, Worklist worklist, TIntIntMap indexToNodeVisitCounts,
+                    TIntObjectMap<MethodContext> addressToEntryContext, TIntObjectMap<ContextNode> addressToNode,
+                    TIntSet queuedAddresses, long traceId) throws MaxNodeVisitsExceeded {
         do {
-            ContextNode currentNode = executeStack.poll();
+            ContextNode currentNode = worklist.poll();
+            queuedAddresses.remove(currentNode.getAddress());
 
             recordNodeVisitation(indexToNodeVisitCounts, currentNode, vm.getMaxNodeVisits());
 
-            int[] childAddresses = currentNode.execute();
+            int[] childAddresses = executeNode(currentNode, traceId);
+            if (graph.isCompact()) {
+                // Nodes are executed again as merges change, and every execution is a state some path can be in.
+                graph.summarize(currentNode, childAddresses);
+            }
             for (int address : childAddresses) {
-                // Every node visit means a new clone on the pile. This way, piles can be examined by the optimizer for
-                // stuff like consensus of register values.
-                ContextNode child = new ContextNode(graph.getTemplateNode(address));
-                child.setContext(new MethodContext(currentNode.getContext()));
+                ContextNode child = addressToNode.get(address);
+                if (child == null) {
+                    child = new ContextNode(graph.getOpHandler(address));
+                    addressToNode.put(address, child);
+                    if (!graph.isCompact()) {
+                        graph.addNode(address, child);
+                    }
+                }
+                if (!currentNode.getChildren().contains(child)) {
+                    currentNode.addChild(child);
+                }
+
+                MethodContext entryContext = addressToEntryContext.get(address);
+                if (entryContext == null) {
+                    entryContext = currentNode.getContext();
+                } else {
+                    entryContext = mergeContexts(entryContext, currentNode.getContext());
+                    if (entryContext == null) {
+                        // Nothing new flows in.
+                        continue;
+                    }
+                }
+                addressToEntryContext.put(address, entryContext);
+                child.setContext(new MethodContext(entryContext));
+
+                if (queuedAddresses.add(address)) {
+                    worklist.add(child);
+                }
+            }
+        } while (!worklist.isEmpty());
+    }
+
+    private void widen(ContextGraph graph, Worklist pending, TIntIntMap indexToNodeVisitCounts, long traceId)
+                    throws MaxNodeVisitsExceeded {
+        // Rather than throwing away what's been executed, the rest of the method is executed with merged states.
+        // Pending nodes at the same address are merged so registers they disagree on become unknown, and each address
+        // is only executed again when what flows into it changes. Nodes already executed are kept as they are.
+        graph.setMergedStates();
+        TIntObjectMap<MethodContext> addressToEntryContext = new TIntObjectHashMap<MethodContext>();
+        TIntObjectMap<ContextNode> addressToNode = new TIntObjectHashMap<ContextNode>();
+        TIntSet queuedAddresses = new TIntHashSet();
+        Worklist worklist = vm.getSchedulingStrategy().createWorklist();
+        for (ContextNode node = pending.poll(); node != null; node = pending.poll()) {
+            // A pending node's context is what flows into it since it hasn't been executed yet.
+            int address = node.getAddress();
+            MethodContext entryContext = addressToEntryContext.get(address);
+            if (entryContext == null) {
+                addressToEntryContext.put(address, node.getContext());
+                addressToNode.put(address, node);
+                node.setContext(new MethodContext(node.getContext()));
+                queuedAddresses.add(address);
+                worklist.add(node);
+                continue;
+            }
+
+            ContextNode mergedNode = addressToNode.get(address);
+            entryContext = mergeContexts(entryContext, node.getContext());
+            if (entryContext != null) {
+                addressToEntryContext.put(address, entryContext);
+                mergedNode.setContext(new MethodContext(entryContext));
+            }
+            if (!graph.isCompact()) {
+                graph.replaceNode(node, mergedNode);
+            }
+        }
+
+        // Visits are counted from scratch since the limit which was just hit would stop merged execution right away.
+        TIntIntMap mergedNodeVisitCounts = new TIntIntHashMap();
+        try {
+            executeMerged(graph, worklist, mergedNodeVisitCounts, addressToEntryContext, addressToNode,
+                            queuedAddresses, traceId);
+        } finally {
+            for (TIntIntIterator iter = mergedNodeVisitCounts.iterator(); iter.hasNext();) {
+                iter.advance();
+                indexToNodeVisitCounts.adjustOrPutValue(iter.key(), iter.value(), iter.value());
+            }
+        }
+    }
+
+    ContextGraph resume(String methodDescriptor, ContextGraph previousGraph, TIntSet changedAddresses)
+                    throws MaxNodeVisitsExceeded {
+        log.info("Resuming " + methodDescriptor + ", changed addresses=" + changedAddresses);
 
+        ContextGraph graph = vm.getInstructionGraph(methodDescriptor);
+        TIntIntMap indexToNodeVisitCounts = new TIntIntHashMap(graph.getInstructionCount());
+        Worklist worklist = vm.getSchedulingStrategy().createWorklist();
+
+        // Contexts only depend on the instructions executed before them, so any node which isn't preceded by a changed
+        // instruction is copied over as is. Execution resumes from the changed nodes.
+        ContextNode rootNode = graph.getRootNode();
+        rootNode.setContext(previousGraph.getRootContext());
+        recordNodeVisitation(indexToNodeVisitCounts, rootNode, vm.getMaxNodeVisits());
+
+        Deque<ContextNode> previousStack = new ArrayDeque<ContextNode>();
+        Deque<ContextNode> copyStack = new ArrayDeque<ContextNode>();
+        previousStack.push(previousGraph.getRootNode());
+        copyStack.push(rootNode);
+        do {
+            ContextNode previousNode = previousStack.poll();
+            ContextNode currentNode = copyStack.poll();
+            for (ContextNode previousChild : previousNode.getChildren()) {
+                int address = previousChild.getAddress();
+                ContextNode child = new ContextNode(graph.getOpHandler(address));
                 currentNode.addChild(child);
                 graph.addNode(address, child);
+
+                if (changedAddresses.contains(address)) {
+                    child.setContext(new MethodContext(currentNode.getContext()));
+                    worklist.add(child);
+                } else {
+                    child.setContext(previousChild.getContext());
+                    recordNodeVisitation(indexToNodeVisitCounts, child, vm.getMaxNodeVisits());
+                    previousStack.add(previousChild);
+                    copyStack.add(child);
+                }
             }
+        } while (previousStack.peek() != null);
 
-            executeStack.addAll(currentNode.getChildren());
-        } while (executeStack.peek() != null);
+        if (!worklist.isEmpty()) {
+            int callDepth = graph.getRootContext().getCallDepth();
+            long traceId = startTrace(methodDescriptor, callDepth);
+            ExecutionProfiler profiler = vm.getProfiler();
+            long startNanos = (profiler == null) ? 0 : profiler.startFrame();
+            try {
+                execute(graph, worklist, indexToNodeVisitCounts, traceId);
+            } finally {
+                if (profiler != null) {
+                    profiler.endMethod(methodDescriptor, callDepth, startNanos, indexToNodeVisitCounts);
+                }
+            }
+        }
 
         return graph;
     }
 
+    private void execute(ContextGraph graph, Worklist worklist, TIntIntMap indexToNodeVisitCounts, long traceId)
+                    throws MaxNodeVisitsExceeded {
+        ControlFlowGraph cfg = graph.getControlFlowGraph();
+        ExecutionBudget.Meter meter = vm.getExecutionBudget().start();
+        do {
+            // Instructions inside a basic block always follow one another, so the rest of the block is executed right
+            // away rather than going through the worklist.
+            ContextNode currentNode = worklist.poll();
+            while (currentNode != null) {
+                int currentAddress = currentNode.getAddress();
+                if (!meter.spend() || (indexToNodeVisitCounts.get(currentAddress) > vm.getMaxNodeVisits())) {
+                    String reason = meter.getExhausted();
+                    if (reason == null) {
+                        reason = "visits of #" + currentAddress + " > " + vm.getMaxNodeVisits();
+                    }
+                    log.info("Execution budget exhausted (" + reason + ") in " + graph.getMethodDescriptor()
+                                    + ", widening the rest");
+
+                    worklist.add(currentNode);
+                    widen(graph, worklist, indexToNodeVisitCounts, traceId);
+
+                    return;
+                }
+                recordNodeVisitation(indexToNodeVisitCounts, currentNode, vm.getMaxNodeVisits());
+
+                // Traces show every instruction, so loops aren't summarized while tracing.
+                CountedLoop loop = (traceId < 0) ? graph.getCountedLoop(currentAddress) : null;
+                ContextNode exitNode = (loop == null) ? null : summarizeLoop(graph, loop, currentNode, meter);
+                if (exitNode != null) {
+                    if (!graph.isCompact()) {
+                        // Iterations are in the summaries, so the exit hangs off the header to keep the node graph
+                        // connected.
+                        currentNode.addChild(exitNode);
+                        graph.addNode(exitNode.getAddress(), exitNode);
+                    }
+                    worklist.add(exitNode);
+                    currentNode = null;
+                    continue;
+                }
+
+                int[] childAddresses = executeNode(currentNode, traceId);
+                List<ContextNode> children = new ArrayList<ContextNode>(childAddresses.length);
+                for (int address : childAddresses) {
+                    // Every node visit means a new clone on the pile. This way, piles can be examined by the optimizer
+                    // for stuff like consensus of register values.
+                    ContextNode child = new ContextNode(graph.getOpHandler(address));
+                    child.setContext(new MethodContext(currentNode.getContext()));
+                    children.add(child);
+
+                    if (!graph.isCompact()) {
+                        currentNode.addChild(child);
+                        graph.addNode(address, child);
+                    }
+                }
+
+                if (graph.isCompact()) {
+                    // Children only need a copy of the context, so this node is summarized and left for collection.
+                    graph.summarize(currentNode, childAddresses);
+                }
+
+                if ((childAddresses.length == 1) && !cfg.isBlockStart(childAddresses[0])) {
+                    currentNode = children.get(0);
+                } else {
+                    for (ContextNode child : children) {
+                        worklist.add(child);
+                    }
+                    currentNode = null;
+                }
+            }
+        } while (!worklist.isEmpty());
+    }
+
+    private ContextNode summarizeLoop(ContextGraph graph, CountedLoop loop, ContextNode headerNode,
+                    ExecutionBudget.Meter meter) {
+        // Runs a counted loop without a node for every instruction of every iteration. Each step only goes into the
+        // summary for its address, which is all optimizations look at, and the exit gets a node with the state the loop
+        // leaves with. Every step still gets its own context so values from different iterations aren't confused.
+        // Returns null without changing anything if a branch isn't known or the loop runs too long, and the loop is
+        // then executed normally.
+        SparseArray<NodePileSummary> addressToSummary = new SparseArray<NodePileSummary>();
+        MethodContext firstContext = null;
+        MethodContext mctx = headerNode.getContext();
+        int address = loop.getHeaderAddress();
+        int iterations = 0;
+        do {
+            if ((address == loop.getHeaderAddress()) && (++iterations > MAX_LOOP_ITERATIONS)) {
+                log.info("Loop " + loop + " in " + graph.getMethodDescriptor() + " exceeded max iterations");
+                return null;
+            }
+            if (!meter.spendStep()) {
+                return null;
+            }
+
+            mctx = new MethodContext(mctx);
+            int[] childAddresses = graph.getOpHandler(address).execute(mctx);
+            if (firstContext == null) {
+                firstContext = mctx;
+            }
+
+            NodePileSummary summary = addressToSummary.get(address);
+            if (summary == null) {
+                summary = new NodePileSummary(mctx.getRegisterCount());
+                addressToSummary.put(address, summary);
+            }
+            summary.add(mctx, childAddresses);
+
+            if (childAddresses.length != 1) {
+                // Unknown branch, or the method ended
+                return null;
+            }
+            address = childAddresses[0];
+        } while (loop.contains(address));
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Summarized " + iterations + " iterations of loop " + loop + " in " + graph.getMethodDescriptor());
+        }
+
+        for (int i = 0; i < addressToSummary.size(); i++) {
+            graph.addSummary(addressToSummary.keyAt(i), addressToSummary.valueAt(i));
+        }
+        headerNode.setContext(firstContext);
+
+        ContextNode exitNode = new ContextNode(graph.getOpHandler(address));
+        exitNode.setContext(new MethodContext(mctx));
+
+        return exitNode;
+    }
+
+    private int[] executeNode(ContextNode node, long traceId) {
+        int[] result;
+        ExecutionProfiler profiler = vm.getProfiler();
+        if (profiler == null) {
+            result = node.execute();
+        } else {
+            long startNanos = profiler.startFrame();
+            try {
+                result = node.execute();
+            } finally {
+                profiler.endNode(node.getHandler(), startNanos);
+            }
+        }
+
+        if (traceId >= 0) {
+            vm.getTracer().traceNode(traceId, node, result);
+        }
+
+        return result;
+    }
+
+    private long startTrace(String methodDescriptor, int callDepth) {
+        ExecutionTracer tracer = vm.getTracer();
+
+        return (tracer == null) ? -1 : tracer.startMethod(methodDescriptor, callDepth);
+    }
+
     private static void recordNodeVisitation(TIntIntMap addressToNodeVisitCount, ContextNode node, int maxNodeVisits)
                     throws MaxNodeVisitsExceeded {
         int address = node.getAddress();
@@ -0,0 +1,97 @@
+package simplify.vm;
+
+import gnu.trove.list.TIntList;
+
+import org.jf.dexlib2.Opcode;
+
+import simplify.vm.handlers.BinaryMathOpHandler;
+import simplify.vm.handlers.ConstOpHandler;
+import simplify.vm.handlers.GotoOpHandler;
+import simplify.vm.handlers.IfOpHandler;
+import simplify.vm.handlers.InvokeOpHandler;
+import simplify.vm.handlers.MoveOpHandler;
+import simplify.vm.handlers.NewInstanceOpHandler;
+import simplify.vm.handlers.OpHandler;
+import simplify.vm.handlers.ReturnOpHandler;
+import simplify.vm.handlers.SwitchOpHandler;
+import simplify.vm.handlers.SwitchPayloadOpHandler;
+import simplify.vm.handlers.UnaryMathOpHandler;
+
+public class MethodSummary {
+
+    private static final Class<?>[] PureOpHandlers = new Class<?>[] { BinaryMathOpHandler.class,
+                    ConstOpHandler.class, GotoOpHandler.class, IfOpHandler.class, MoveOpHandler.class,
+                    NewInstanceOpHandler.class, ReturnOpHandler.class, SwitchOpHandler.class,
+                    SwitchPayloadOpHandler.class, UnaryMathOpHandler.class };
+
+    public static MethodSummary build(ContextGraph graph, boolean returnsVoid, boolean isRunDependent) {
+        Object returnValue = null;
+        if (!returnsVoid) {
+            TIntList terminating = graph.getConnectedTerminatingAddresses();
+            returnValue = graph.getRegisterConsensus(terminating, MethodContext.ReturnRegister);
+        }
+
+        boolean hasSideEffects = false;
+        TIntList addresses = graph.getAddresses();
+        for (int i = 0; i < addresses.size(); i++) {
+            int address = addresses.get(i);
+            if (graph.wasAddressReached(address) && opHasSideEffects(graph, address)) {
+                hasSideEffects = true;
+                break;
+            }
+        }
+
+        return new MethodSummary(returnValue, hasSideEffects, isRunDependent);
+    }
+
+    private static boolean opHasSideEffects(ContextGraph graph, int address) {
+        OpHandler handler = graph.getOpHandler(address);
+        if (handler instanceof InvokeOpHandler) {
+            return graph.hasSideEffects(address);
+        }
+
+        for (Class<?> clazz : PureOpHandlers) {
+            if (handler.getClass() == clazz) {
+                return false;
+            }
+        }
+
+        // Everything else isn't emulated yet, e.g. field and array writes, so assume the worst.
+        Opcode op = handler.getOpcode();
+
+        return !((op == Opcode.NOP) || (op == Opcode.RETURN_VOID));
+    }
+
+    private final Object returnValue;
+    private final boolean hasSideEffects;
+    private final boolean isRunDependent;
+
+    public MethodSummary(Object returnValue, boolean hasSideEffects) {
+        this(returnValue, hasSideEffects, false);
+    }
+
+    public MethodSummary(Object returnValue, boolean hasSideEffects, boolean isRunDependent) {
+        this.returnValue = returnValue;
+        this.hasSideEffects = hasSideEffects;
+        this.isRunDependent = isRunDependent;
+    }
+
+    public Object getReturnValue() {
+        return returnValue;
+    }
+
+    public boolean hasSideEffects() {
+        return hasSideEffects;
+    }
+
+    public boolean isRunDependent() {
+        // True if a time or memory budget ran out while building it, so it's good for this run only.
+        return isRunDependent;
+    }
+
+    @Override
+    public String toString() {
+        return "return=" + returnValue + ", side-effects=" + hasSideEffects;
+    }
+
+}
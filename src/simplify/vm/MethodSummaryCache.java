@@ -0,0 +1,228 @@
+package simplify.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import simplify.vm.types.SmaliClassInstance;
+import simplify.vm.types.UnknownValue;
+
+public class MethodSummaryCache {
+
+    private static class Key {
+
+        private final String methodDescriptor;
+        private final Object[] arguments;
+        private final int hashCode;
+
+        Key(String methodDescriptor, Object[] arguments) {
+            this.methodDescriptor = methodDescriptor;
+            this.arguments = arguments;
+
+            hashCode = (31 * methodDescriptor.hashCode()) + Arrays.hashCode(arguments);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            Key otherKey = (Key) other;
+
+            return methodDescriptor.equals(otherKey.methodDescriptor) && Arrays.equals(arguments, otherKey.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+    private static class TypeArgument {
+
+        // Unknown values and local class instances are only distinguished by type. Two unknown values of the same type
+        // will lead to the same execution, and local instance state isn't tracked.
+        private final String type;
+        private final boolean isUnknown;
+
+        TypeArgument(String type, boolean isUnknown) {
+            this.type = type;
+            this.isUnknown = isUnknown;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof TypeArgument)) {
+                return false;
+            }
+
+            TypeArgument otherArgument = (TypeArgument) other;
+
+            return (isUnknown == otherArgument.isUnknown) && type.equals(otherArgument.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return isUnknown ? ~type.hashCode() : type.hashCode();
+        }
+
+    }
+
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int VALUE_OVERHEAD = 16;
+
+    private static Object[] buildArguments(Object[] keyArguments) {
+        // Stand-ins for the original arguments which give the same key.
+        Object[] result = new Object[keyArguments.length];
+        for (int i = 0; i < keyArguments.length; i++) {
+            Object argument = keyArguments[i];
+            if (argument instanceof TypeArgument) {
+                TypeArgument typeArgument = (TypeArgument) argument;
+                if (typeArgument.isUnknown) {
+                    result[i] = new UnknownValue(typeArgument.type);
+                } else {
+                    result[i] = new SmaliClassInstance(typeArgument.type);
+                }
+            } else {
+                result[i] = argument;
+            }
+        }
+
+        return result;
+    }
+
+    private static Object[] buildKeyArguments(Object[] arguments) {
+        Object[] result = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            Object argument = arguments[i];
+            if (argument instanceof UnknownValue) {
+                result[i] = new TypeArgument(((UnknownValue) argument).getType(), true);
+            } else if (argument instanceof SmaliClassInstance) {
+                result[i] = new TypeArgument(((SmaliClassInstance) argument).getType(), false);
+            } else if ((argument == null) || VirtualMachineContext.isImmutable(argument)) {
+                // Second register of a wide value is null.
+                result[i] = argument;
+            } else {
+                // Callee may modify a mutable argument, so the summary wouldn't be the whole story.
+                return null;
+            }
+        }
+
+        return result;
+    }
+
+    private static long estimateSize(Object value) {
+        if (value instanceof String) {
+            return VALUE_OVERHEAD + (2L * ((String) value).length());
+        }
+
+        return VALUE_OVERHEAD;
+    }
+
+    private static long estimateSize(Key key, MethodSummary summary) {
+        long result = ENTRY_OVERHEAD + estimateSize(summary.getReturnValue());
+        for (Object argument : key.arguments) {
+            result += estimateSize(argument);
+        }
+
+        return result;
+    }
+
+    private final long maxSize;
+    private final LinkedHashMap<Key, MethodSummary> keyToSummary;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MethodSummaryCache(long maxSize) {
+        this.maxSize = maxSize;
+
+        // Access ordered so the least recently used summaries are evicted first.
+        keyToSummary = new LinkedHashMap<Key, MethodSummary>(16, 0.75f, true);
+    }
+
+    public synchronized MethodSummary get(String methodDescriptor, Object[] arguments) {
+        Object[] keyArguments = buildKeyArguments(arguments);
+        if (keyArguments == null) {
+            return null;
+        }
+
+        MethodSummary result = keyToSummary.get(new Key(methodDescriptor, keyArguments));
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return result;
+    }
+
+    public synchronized void put(String methodDescriptor, Object[] arguments, MethodSummary summary) {
+        Object returnValue = summary.getReturnValue();
+        if ((returnValue != null) && !VirtualMachineContext.isImmutable(returnValue)) {
+            // Every caller would share the same mutable instance.
+            return;
+        }
+
+        Object[] keyArguments = buildKeyArguments(arguments);
+        if (keyArguments == null) {
+            return;
+        }
+
+        Key key = new Key(methodDescriptor, keyArguments);
+        MethodSummary previous = keyToSummary.put(key, summary);
+        if (previous != null) {
+            size -= estimateSize(key, previous);
+        }
+        size += estimateSize(key, summary);
+
+        Iterator<Map.Entry<Key, MethodSummary>> it = keyToSummary.entrySet().iterator();
+        while ((size > maxSize) && it.hasNext()) {
+            Map.Entry<Key, MethodSummary> eldest = it.next();
+            size -= estimateSize(eldest.getKey(), eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized Map<String, Map<Object[], MethodSummary>> getSummaries() {
+        // Every cached summary by method descriptor. Arguments are stand-ins which only keep what the key does, so
+        // they're only good for putting back.
+        Map<String, Map<Object[], MethodSummary>> result = new HashMap<String, Map<Object[], MethodSummary>>();
+        for (Map.Entry<Key, MethodSummary> entry : keyToSummary.entrySet()) {
+            Key key = entry.getKey();
+            Map<Object[], MethodSummary> argumentsToSummary = result.get(key.methodDescriptor);
+            if (argumentsToSummary == null) {
+                argumentsToSummary = new LinkedHashMap<Object[], MethodSummary>();
+                result.put(key.methodDescriptor, argumentsToSummary);
+            }
+            argumentsToSummary.put(buildArguments(key.arguments), entry.getValue());
+        }
+
+        return result;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("entries=").append(keyToSummary.size()).append(", bytes=").append(size).append(", hits=")
+                        .append(hits).append(", misses=").append(misses).append(", evictions=").append(evictions);
+
+        return sb.toString();
+    }
+
+}
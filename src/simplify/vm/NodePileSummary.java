@@ -0,0 +1,77 @@
+package simplify.vm;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+class NodePileSummary {
+
+    private final RegisterConsensus registerConsensus;
+    private final TIntSet registersRead;
+    private final TIntSet childAddresses;
+
+    private TIntList firstRegistersAssigned;
+    private int nodeCount;
+    private boolean hasSideEffects;
+
+    NodePileSummary(int registerCount) {
+        registerConsensus = new RegisterConsensus(registerCount);
+        registersRead = new TIntHashSet();
+        childAddresses = new TIntHashSet();
+    }
+
+    void add(MethodContext mctx, int[] childAddresses) {
+        registerConsensus.add(mctx);
+
+        if (nodeCount == 0) {
+            firstRegistersAssigned = new TIntArrayList(mctx.getRegistersAssigned());
+        }
+        mctx.addRegistersRead(registersRead);
+        this.childAddresses.addAll(childAddresses);
+        hasSideEffects |= mctx.hasSideEffects();
+
+        nodeCount++;
+    }
+
+    void add(NodePileSummary other) {
+        if (other.nodeCount == 0) {
+            return;
+        }
+
+        registerConsensus.add(other.registerConsensus);
+        if (nodeCount == 0) {
+            firstRegistersAssigned = other.firstRegistersAssigned;
+        }
+        registersRead.addAll(other.registersRead);
+        childAddresses.addAll(other.childAddresses);
+        hasSideEffects |= other.hasSideEffects;
+
+        nodeCount += other.nodeCount;
+    }
+
+    TIntSet getChildAddresses() {
+        return childAddresses;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    RegisterConsensus getRegisterConsensus() {
+        return registerConsensus;
+    }
+
+    TIntList getRegistersAssigned() {
+        return firstRegistersAssigned;
+    }
+
+    TIntSet getRegistersRead() {
+        return registersRead;
+    }
+
+    boolean hasSideEffects() {
+        return hasSideEffects;
+    }
+
+}
@@ -0,0 +1,64 @@
+package simplify.vm;
+
+import simplify.SmaliClassUtils;
+import simplify.vm.types.UnknownValue;
+
+class RegisterConsensus {
+
+    // Register values are stored at register + this offset because result and return registers are negative.
+    private static final int REGISTER_OFFSET = -MethodContext.ReturnRegister;
+
+    static Object merge(Object consensus, Object value) {
+        if (ContextGraph.isSameValue(consensus, value) || (consensus instanceof UnknownValue)) {
+            return consensus;
+        }
+
+        // Register may not be set on every path.
+        Object typeValue = consensus != null ? consensus : value;
+
+        return new UnknownValue(SmaliClassUtils.getValueType(typeValue));
+    }
+
+    private final Object[] registerConsensus;
+    private int contextCount;
+
+    RegisterConsensus(int registerCount) {
+        registerConsensus = new Object[registerCount + REGISTER_OFFSET];
+    }
+
+    void add(MethodContext mctx) {
+        // Shared values are read so building consensus never clones a register into the context.
+        for (int index = 0; index < registerConsensus.length; index++) {
+            Object value = mctx.peekSharedRegister(index - REGISTER_OFFSET);
+            if (contextCount == 0) {
+                registerConsensus[index] = value;
+            } else {
+                registerConsensus[index] = merge(registerConsensus[index], value);
+            }
+        }
+
+        contextCount++;
+    }
+
+    void add(RegisterConsensus other) {
+        if (other.contextCount == 0) {
+            return;
+        }
+
+        for (int index = 0; index < registerConsensus.length; index++) {
+            Object value = other.registerConsensus[index];
+            if (contextCount == 0) {
+                registerConsensus[index] = value;
+            } else {
+                registerConsensus[index] = merge(registerConsensus[index], value);
+            }
+        }
+
+        contextCount += other.contextCount;
+    }
+
+    Object get(int register) {
+        return registerConsensus[register + REGISTER_OFFSET];
+    }
+
+}
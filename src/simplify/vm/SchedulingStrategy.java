@@ -0,0 +1,168 @@
+package simplify.vm;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.PriorityQueue;
+
+public enum SchedulingStrategy {
+
+    // Every path is still executed unless a budget runs out. The strategy decides which paths are done by then.
+
+    // Follows one path to its end before starting another. Fewest pending nodes.
+    DEPTH_FIRST("dfs") {
+        @Override
+        public Worklist createWorklist() {
+            return new DequeWorklist(true);
+        }
+    },
+
+    // Advances every path a block at a time.
+    BREADTH_FIRST("bfs") {
+        @Override
+        public Worklist createWorklist() {
+            return new DequeWorklist(false);
+        }
+    },
+
+    // Lowest address first, so code before a join is usually done before the join.
+    ADDRESS_ORDER("address") {
+        @Override
+        public Worklist createWorklist() {
+            return new PriorityWorklist(false);
+        }
+    },
+
+    // Addresses which have been scheduled the fewest times first, so code after a loop is reached before the loop is
+    // run again.
+    LOOP_AWARE("loop") {
+        @Override
+        public Worklist createWorklist() {
+            return new PriorityWorklist(true);
+        }
+    };
+
+    private static class DequeWorklist implements Worklist {
+
+        private final Deque<ContextNode> nodes;
+        private final boolean isStack;
+
+        DequeWorklist(boolean isStack) {
+            this.isStack = isStack;
+            nodes = new ArrayDeque<ContextNode>();
+        }
+
+        @Override
+        public void add(ContextNode node) {
+            if (isStack) {
+                nodes.push(node);
+            } else {
+                nodes.add(node);
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return nodes.isEmpty();
+        }
+
+        @Override
+        public ContextNode poll() {
+            return nodes.poll();
+        }
+
+    }
+
+    private static class PriorityWorklist implements Worklist {
+
+        private static class Entry {
+
+            final ContextNode node;
+            final int priority;
+            final long sequence;
+
+            Entry(ContextNode node, int priority, long sequence) {
+                this.node = node;
+                this.priority = priority;
+                this.sequence = sequence;
+            }
+
+        }
+
+        private static final Comparator<Entry> ENTRY_ORDER = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry entry, Entry other) {
+                if (entry.priority != other.priority) {
+                    return entry.priority < other.priority ? -1 : 1;
+                }
+
+                int address = entry.node.getAddress();
+                int otherAddress = other.node.getAddress();
+                if (address != otherAddress) {
+                    return address < otherAddress ? -1 : 1;
+                }
+
+                // Same address is first come, first served.
+                return entry.sequence < other.sequence ? -1 : (entry.sequence == other.sequence ? 0 : 1);
+            }
+        };
+
+        private final PriorityQueue<Entry> entries;
+        private final TIntIntMap addressToScheduleCount;
+        private long sequence;
+
+        PriorityWorklist(boolean countSchedules) {
+            entries = new PriorityQueue<Entry>(11, ENTRY_ORDER);
+            addressToScheduleCount = countSchedules ? new TIntIntHashMap() : null;
+        }
+
+        @Override
+        public void add(ContextNode node) {
+            // Priority is fixed when added since the queue can't reorder entries which change.
+            int priority = 0;
+            if (addressToScheduleCount != null) {
+                priority = addressToScheduleCount.adjustOrPutValue(node.getAddress(), 1, 1);
+            }
+            entries.add(new Entry(node, priority, sequence++));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        @Override
+        public ContextNode poll() {
+            Entry entry = entries.poll();
+
+            return entry == null ? null : entry.node;
+        }
+
+    }
+
+    public static SchedulingStrategy forName(String name) {
+        for (SchedulingStrategy strategy : values()) {
+            if (strategy.name.equals(name)) {
+                return strategy;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown scheduling strategy: " + name);
+    }
+
+    private final String name;
+
+    private SchedulingStrategy(String name) {
+        this.name = name;
+    }
+
+    public abstract Worklist createWorklist();
+
+    public String getName() {
+        return name;
+    }
+
+}
@@ -1,9 +1,14 @@
 package simplify.vm;
 
-import java.util.ArrayList;
+import gnu.trove.set.TIntSet;
+
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import org.jf.dexlib2.AccessFlags;
@@ -23,6 +28,8 @@ public class VirtualMachine {
 
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
 
+    private static final long METHOD_SUMMARY_CACHE_SIZE = 64 * 1024 * 1024;
+
     private static MethodContext buildRootContext(BuilderMethod method) {
         List<? extends BuilderMethodParameter> parameters = method.getParameters();
         int registerCount = method.getImplementation().getRegisterCount();
@@ -67,16 +74,32 @@ public class VirtualMachine {
     }
 
     private final Map<String, ClassContext> classNameToClassContext;
-    private final List<String> initializedClasses;
+    private final Set<String> initializedClasses;
+    private final Set<String> initializingClasses;
+    private final Object initializationLock;
     private final int maxCallDepth;
     private final int maxNodeVisits;
+    private final boolean mergeStates;
+    private final boolean compactGraphs;
     private final MethodExecutor methodExecutor;
-    private final Map<String, ContextGraph> methodDescriptorToInstructionGraph;
+    private final MethodSummaryCache methodSummaryCache;
+    private final Map<String, InstructionGraph> methodDescriptorToInstructionGraph;
     private final Map<String, List<? extends TryBlock<? extends ExceptionHandler>>> methodToTryCatchList;
+    private ExecutionProfiler profiler;
+    private ExecutionTracer tracer;
+    private SchedulingStrategy schedulingStrategy = SchedulingStrategy.BREADTH_FIRST;
+    private ExecutionBudget executionBudget = ExecutionBudget.UNLIMITED;
 
     public VirtualMachine(List<BuilderClassDef> classDefs, int maxNodeVisits, int maxCallDepth) {
+        this(classDefs, maxNodeVisits, maxCallDepth, false, false);
+    }
+
+    public VirtualMachine(List<BuilderClassDef> classDefs, int maxNodeVisits, int maxCallDepth, boolean mergeStates,
+                    boolean compactGraphs) {
         this.maxNodeVisits = maxNodeVisits;
         this.maxCallDepth = maxCallDepth;
+        this.mergeStates = mergeStates;
+        this.compactGraphs = compactGraphs;
 
         methodToTryCatchList = buildTryCatchList(classDefs);
 
@@ -84,7 +107,12 @@ public class VirtualMachine {
 
         methodExecutor = new MethodExecutor(this);
 
-        initializedClasses = new ArrayList<String>(classDefs.size());
+        methodSummaryCache = new MethodSummaryCache(METHOD_SUMMARY_CACHE_SIZE);
+
+        // Methods may be executed by several workers at once.
+        initializedClasses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(classDefs.size()));
+        initializingClasses = new HashSet<String>();
+        initializationLock = new Object();
 
         // Build graphs last because that's when handlers are assigned and some handlers access this vm instance.
         methodDescriptorToInstructionGraph = buildMethodDescriptorToInstructionGraph(classDefs);
@@ -92,15 +120,38 @@ public class VirtualMachine {
 
     public void updateInstructionGraph(BuilderMethod method) {
         String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
-        ContextGraph graph = new ContextGraph(this, method);
-        graph.setRootContext(buildRootContext(method));
+        InstructionGraph graph = new InstructionGraph(this, method, buildRootContext(method));
         methodDescriptorToInstructionGraph.put(methodDescriptor, graph);
     }
 
-    public ContextGraph execute(String methodDescriptor) {
-        MethodContext mctx = methodDescriptorToInstructionGraph.get(methodDescriptor).getRootContext();
+    public ContextGraph updateAndExecute(BuilderMethod method, ContextGraph previousGraph) {
+        String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
+        InstructionGraph template = methodDescriptorToInstructionGraph.get(methodDescriptor);
+        TIntSet changedAddresses = template.getChangedAddresses(method);
+        boolean canResume = (previousGraph != null) && !previousGraph.hasMergedStates()
+                        && !previousGraph.hasSummaries();
+        if (!canResume || (changedAddresses == null) || changedAddresses.contains(0)) {
+            updateInstructionGraph(method);
+
+            return execute(methodDescriptor);
+        }
+
+        InstructionGraph graph = new InstructionGraph(this, method, template.getRootContext(), template,
+                        changedAddresses);
+        methodDescriptorToInstructionGraph.put(methodDescriptor, graph);
+
+        ContextGraph result = null;
+        try {
+            result = methodExecutor.resume(methodDescriptor, previousGraph, changedAddresses);
+        } catch (MaxNodeVisitsExceeded e) {
+            log.warning("Exceeded max node visits for " + e.getMessage() + " in " + methodDescriptor);
+        }
 
-        return execute(methodDescriptor, mctx);
+        return result;
+    }
+
+    public ContextGraph execute(String methodDescriptor) {
+        return execute(methodDescriptor, getRootContext(methodDescriptor));
     }
 
     public ContextGraph execute(String methodDescriptor, MethodContext mctx) {
@@ -109,8 +160,16 @@ public class VirtualMachine {
 
         ContextGraph result = null;
         try {
-            result = methodExecutor.execute(methodDescriptor, mctx);
-        } catch (MaxNodeVisitsExceeded | MaxCallDepthExceeded e) {
+            // If execution has to be retried with merged states, it needs to start from an untouched context.
+            result = methodExecutor.execute(methodDescriptor, mergeStates ? new MethodContext(mctx) : mctx);
+        } catch (MaxNodeVisitsExceeded e) {
+            if (mergeStates) {
+                result = executeMerged(methodDescriptor, mctx);
+            } else {
+                log.warning("Exceeded max node visits for " + e.getMessage() + " in " + methodDescriptor
+                                + "\nContext: " + mctx);
+            }
+        } catch (MaxCallDepthExceeded e) {
             log.warning("Exceeded max node visits for " + e.getMessage() + " in " + methodDescriptor + "\nContext: "
                             + mctx);
         }
@@ -118,6 +177,20 @@ public class VirtualMachine {
         return result;
     }
 
+    private ContextGraph executeMerged(String methodDescriptor, MethodContext mctx) {
+        log.info("Exceeded max node visits in " + methodDescriptor + ", executing again with merged states");
+
+        ContextGraph result = null;
+        try {
+            result = methodExecutor.executeMerged(methodDescriptor, new MethodContext(mctx));
+        } catch (MaxNodeVisitsExceeded e) {
+            log.warning("Exceeded max node visits for " + e.getMessage() + " in " + methodDescriptor
+                            + " with merged states\nContext: " + mctx);
+        }
+
+        return result;
+    }
+
     public ClassContext getClassExecutionContext(String methodDescriptor) {
         // Since this is called for the use or assignment of a class' field, clinit the class
         staticallyInitializeMethodClassIfNecessary(methodDescriptor);
@@ -139,6 +212,48 @@ public class VirtualMachine {
         return maxNodeVisits;
     }
 
+    public boolean isCompactGraphs() {
+        return compactGraphs;
+    }
+
+    public ExecutionProfiler getProfiler() {
+        // Null unless profiling.
+        return profiler;
+    }
+
+    public void setProfiler(ExecutionProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public ExecutionTracer getTracer() {
+        // Null unless tracing.
+        return tracer;
+    }
+
+    public void setTracer(ExecutionTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public SchedulingStrategy getSchedulingStrategy() {
+        return schedulingStrategy;
+    }
+
+    public void setSchedulingStrategy(SchedulingStrategy schedulingStrategy) {
+        this.schedulingStrategy = schedulingStrategy;
+    }
+
+    public ExecutionBudget getExecutionBudget() {
+        return executionBudget;
+    }
+
+    public void setExecutionBudget(ExecutionBudget executionBudget) {
+        this.executionBudget = executionBudget;
+    }
+
+    public MethodSummaryCache getMethodSummaryCache() {
+        return methodSummaryCache;
+    }
+
     public Map<String, List<? extends TryBlock<? extends ExceptionHandler>>> getMethodToTryCatchList() {
         return methodToTryCatchList;
     }
@@ -153,15 +268,14 @@ public class VirtualMachine {
         return null;
     }
 
-    private Map<String, ContextGraph> buildMethodDescriptorToInstructionGraph(final List<BuilderClassDef> classDefs) {
-        Map<String, ContextGraph> result = new HashMap<String, ContextGraph>(classDefs.size());
+    private Map<String, InstructionGraph> buildMethodDescriptorToInstructionGraph(
+                    final List<BuilderClassDef> classDefs) {
+        Map<String, InstructionGraph> result = new ConcurrentHashMap<String, InstructionGraph>(classDefs.size());
 
         for (BuilderClassDef classDef : classDefs) {
             for (BuilderMethod method : classDef.getMethods()) {
                 String methodDescriptor = ReferenceUtil.getMethodDescriptor(method);
-                ContextGraph graph = new ContextGraph(this, method);
-
-                graph.setRootContext(buildRootContext(method));
+                InstructionGraph graph = new InstructionGraph(this, method, buildRootContext(method));
 
                 result.put(methodDescriptor, graph);
             }
@@ -183,11 +297,17 @@ public class VirtualMachine {
     }
 
     public ContextGraph getInstructionGraph(String methodDescriptor) {
+        // Executions share the method's handlers and control flow and only keep the nodes they reach, so this is cheap.
         ContextGraph result = new ContextGraph(methodDescriptorToInstructionGraph.get(methodDescriptor));
 
         return result;
     }
 
+    public MethodContext getRootContext(String methodDescriptor) {
+        // A child of the root context so the shared one is never modified by an execution.
+        return new MethodContext(methodDescriptorToInstructionGraph.get(methodDescriptor).getRootContext());
+    }
+
     void staticallyInitializeMethodClassIfNecessary(String methodDescriptor) {
         // This method should be called when a class is first used. A usage is:
         // 1.) The invocation of a method declared by the class (not inherited from a superclass)
@@ -199,16 +319,26 @@ public class VirtualMachine {
         if (initializedClasses.contains(className)) {
             return;
         }
-        initializedClasses.add(className);
 
-        String clinitDescriptor = className + "-><clinit>()V";
-        if (!methodDescriptorToInstructionGraph.containsKey(clinitDescriptor)) {
-            // No clinit for this class
-            return;
-        }
+        // Other workers wait until clinit is finished. It's one lock rather than one per class because initializers
+        // may use each other's classes, and workers taking per class locks in different orders would deadlock.
+        synchronized (initializationLock) {
+            if (initializedClasses.contains(className) || !initializingClasses.add(className)) {
+                // Done while waiting, or clinit is further up this thread's stack and the class is used as it is.
+                return;
+            }
 
-        // Just need to execute, don't need the resulting graph. Any class member sets will be recorded by the op
-        // handler in the ClassContext.
-        execute(clinitDescriptor);
+            try {
+                String clinitDescriptor = className + "-><clinit>()V";
+                if (methodDescriptorToInstructionGraph.containsKey(clinitDescriptor)) {
+                    // Just need to execute, don't need the resulting graph. Any class member sets will be recorded by
+                    // the op handler in the ClassContext.
+                    execute(clinitDescriptor);
+                }
+            } finally {
+                initializingClasses.remove(className);
+                initializedClasses.add(className);
+            }
+        }
     }
 }
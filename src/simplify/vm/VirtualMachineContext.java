@@ -3,14 +3,15 @@ package simplify.vm;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.TIntSet;
-import gnu.trove.set.hash.TIntHashSet;
 
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.ClassUtils;
 
 import simplify.Main;
 import simplify.SmaliClassUtils;
+import simplify.vm.types.LocalType;
 import util.SparseArray;
 
 import com.rits.cloning.Cloner;
@@ -21,11 +22,49 @@ public class VirtualMachineContext {
 
     private static final Cloner cloner = new Cloner();
 
-    private VirtualMachineContext parent;
+    // Deep clones made by the current thread, for profiling.
+    private static final ThreadLocal<long[]> cloneCount = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    // Registers < 0 are special registers used by subclasses, e.g. result and return registers.
+    private static final int SPECIAL_REGISTER_COUNT = 2;
+
+    // Numeric values are kept unboxed in a long slot. Floats and doubles are stored as their raw bits, which is also
+    // how Dalvik reinterprets a register written by one instruction type and read by another, e.g. const then
+    // add-float.
+    private static final byte TYPE_OBJECT = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_DOUBLE = 4;
+
+    static long getCloneCount() {
+        return cloneCount.get()[0];
+    }
+
+    static boolean isImmutable(Object value) {
+        // Cheaper than SmaliClassUtils.isImmutableClass since it's checked on every register read.
+        return (value instanceof String) || (value instanceof Integer) || (value instanceof Long)
+                        || (value instanceof Float) || (value instanceof Double) || (value instanceof Boolean)
+                        || (value instanceof Character) || (value instanceof Byte) || (value instanceof Short)
+                        || (value instanceof LocalType) || (value instanceof Class);
+    }
+
     private final int registerCount;
     private final TIntList registersAssigned;
     private final TIntList registersRead;
-    private final SparseArray<Object> registerToValue;
+
+    // Register values are shared with the parent and any siblings until someone writes. Mutable values inherited from
+    // the parent are cloned the first time they're read so changes made here don't alter history.
+    private Object[] values;
+    private byte[] primitiveTypes;
+    private long[] primitiveValues;
+    private boolean ownsValues;
+    private boolean[] localRegisters;
 
     VirtualMachineContext() {
         this(0);
@@ -33,13 +72,26 @@ public class VirtualMachineContext {
 
     VirtualMachineContext(int registerCount) {
         // The number of instances of contexts in memory could be very high. Allocate minimally.
-        registerToValue = new SparseArray<Object>(0);
+        values = new Object[registerCount + SPECIAL_REGISTER_COUNT];
+        ownsValues = true;
         registersAssigned = new TIntArrayList(0);
         registersRead = new TIntArrayList(0);
 
         this.registerCount = registerCount;
     }
 
+    VirtualMachineContext(VirtualMachineContext parent) {
+        registerCount = parent.registerCount;
+        registersAssigned = new TIntArrayList(0);
+        registersRead = new TIntArrayList(0);
+
+        values = parent.values;
+        primitiveTypes = parent.primitiveTypes;
+        primitiveValues = parent.primitiveValues;
+        ownsValues = false;
+        parent.ownsValues = false;
+    }
+
     public void assignRegister(int register, Object value) {
         getRegistersAssigned().add(register);
 
@@ -52,76 +104,143 @@ public class VirtualMachineContext {
 
     public SparseArray<Object> getRegisterToValue() {
         // Massage weird registers out of registerToValue map, like the second register number of a wide register.
-        SparseArray<Object> result = new SparseArray<Object>(registerToValue.size());
-        for (int i = 0; i < registerToValue.size(); i++) {
-            int register = registerToValue.keyAt(i);
+        SparseArray<Object> result = new SparseArray<Object>(values.length);
+        for (int index = 0; index < values.length; index++) {
+            int register = index - SPECIAL_REGISTER_COUNT;
+            if (!hasRegister(register)) {
+                continue;
+            }
+
             Object value = peekRegister(register);
             result.put(register, value);
 
             // Longs are fatties and take up two registers
             if (SmaliClassUtils.getValueType(value).equals("J")) {
-                register++;
+                index++;
             }
         }
 
         return result;
     }
 
-    public Object peekRegister(int register) {
-        Object result = null;
-        VirtualMachineContext currentContext = this;
-        TIntSet reassigned = new TIntHashSet(0);
-        while (currentContext != null) {
-            // If register is not known here, ask ancestors.
-            result = currentContext.registerToValue.get(register);
-            if (result != null) {
-                break;
-            }
+    public void assignDoubleRegister(int register, double value) {
+        getRegistersAssigned().add(register);
 
-            // Keep track of any registers between this and the context with the target register. When bringing down any
-            // identical registers to the target, exclude them since they've been reassigned.
-            for (int i = 0; i < currentContext.registerToValue.size(); i++) {
-                int key = currentContext.registerToValue.keyAt(i);
-                if (key != register) {
-                    reassigned.add(key);
-                }
-            }
+        pokePrimitive(register, TYPE_DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    public void assignFloatRegister(int register, float value) {
+        getRegistersAssigned().add(register);
+
+        pokePrimitive(register, TYPE_FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    public void assignIntRegister(int register, int value) {
+        getRegistersAssigned().add(register);
+
+        pokePrimitive(register, TYPE_INT, value);
+    }
+
+    public void assignLongRegister(int register, long value) {
+        getRegistersAssigned().add(register);
+
+        pokePrimitive(register, TYPE_LONG, value);
+    }
 
-            currentContext = currentContext.parent;
+    public boolean hasPrimitiveValue(int register) {
+        int index = register + SPECIAL_REGISTER_COUNT;
+        if (getPrimitiveType(index) != TYPE_OBJECT) {
+            return true;
         }
 
+        Object value = index < values.length ? values[index] : null;
+
+        return (value instanceof Character) || (value instanceof Boolean) || (value instanceof Byte)
+                        || (value instanceof Short);
+    }
+
+    public double peekDoubleRegister(int register) {
+        int index = register + SPECIAL_REGISTER_COUNT;
+        if (getPrimitiveType(index) != TYPE_OBJECT) {
+            return Double.longBitsToDouble(primitiveValues[index]);
+        }
+
+        return ((Number) values[index]).doubleValue();
+    }
+
+    public float peekFloatRegister(int register) {
+        int index = register + SPECIAL_REGISTER_COUNT;
+        if (getPrimitiveType(index) != TYPE_OBJECT) {
+            return Float.intBitsToFloat((int) primitiveValues[index]);
+        }
+
+        return ((Number) values[index]).floatValue();
+    }
+
+    public int peekIntRegister(int register) {
+        int index = register + SPECIAL_REGISTER_COUNT;
+        if (getPrimitiveType(index) != TYPE_OBJECT) {
+            return (int) primitiveValues[index];
+        }
+
+        Object value = values[index];
+        if (value instanceof Character) {
+            return (Character) value;
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1 : 0;
+        }
+
+        return ((Number) value).intValue();
+    }
+
+    public long peekLongRegister(int register) {
+        int index = register + SPECIAL_REGISTER_COUNT;
+        if (getPrimitiveType(index) != TYPE_OBJECT) {
+            return primitiveValues[index];
+        }
+
+        return ((Number) values[index]).longValue();
+    }
+
+    public Object peekRegister(int register) {
+        int index = register + SPECIAL_REGISTER_COUNT;
+        if (getPrimitiveType(index) != TYPE_OBJECT) {
+            return boxPrimitive(index);
+        }
+
+        Object result = index < values.length ? values[index] : null;
+
         if (result == null) {
             log.warning("r" + register + " is being read but is null, likely a mistake!");
-        } else {
-            if (currentContext != this) {
-                // Got context from an ancestor. Store a clone to not alter history.
-                // Store any identical object references in other registers as the same clone to maintain identity.
-                Object myClone = cloner.deepClone(result);
-                registerToValue.put(register, myClone);
-
-                // Ancestor may have identical registers. Bring those down too.
-                if (currentContext != null) {
-                    SparseArray<Object> parentRegisterToValue = currentContext.getRegisterToValue();
-                    for (int i = 0; i < parentRegisterToValue.size(); i++) {
-                        int parentRegister = parentRegisterToValue.keyAt(i);
-                        if ((register == parentRegister) || reassigned.contains(parentRegister)) {
-                            continue;
-                        }
-
-                        Object value = parentRegisterToValue.get(parentRegister);
-                        if (result == value) {
-                            registerToValue.put(parentRegister, myClone);
-                        }
-                    }
-
-                    result = myClone;
+        } else if (!isImmutable(result) && !isLocalRegister(index)) {
+            // Got value from an ancestor. Store a clone to not alter history.
+            // Store any identical object references in other registers as the same clone to maintain identity.
+            Object myClone = cloner.deepClone(result);
+            cloneCount.get()[0]++;
+            ensureOwnValues();
+            for (int i = 0; i < values.length; i++) {
+                if ((values[i] == result) && !isLocalRegister(i)) {
+                    values[i] = myClone;
+                    setLocalRegister(i);
                 }
             }
+
+            result = myClone;
         }
 
         return result;
     }
 
+    Object peekSharedRegister(int register) {
+        // Returns the stored value without cloning, so it must not be modified.
+        int index = register + SPECIAL_REGISTER_COUNT;
+        if (getPrimitiveType(index) != TYPE_OBJECT) {
+            return boxPrimitive(index);
+        }
+
+        return index < values.length ? values[index] : null;
+    }
+
     public String peekRegisterType(int register) {
         Object value = peekRegister(register);
 
@@ -129,15 +248,27 @@ public class VirtualMachineContext {
     }
 
     public void pokeRegister(int register, Object value) {
-        StringBuilder sb = new StringBuilder();
-        // StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-        // for (int i = 2; i < ste.length; i++) {
-        // sb.append("\n\t").append(ste[i]);
-        // }
-
-        registerToValue.put(register, value);
+        if (value instanceof Integer) {
+            pokePrimitive(register, TYPE_INT, (Integer) value);
+            return;
+        } else if (value instanceof Long) {
+            pokePrimitive(register, TYPE_LONG, (Long) value);
+            return;
+        } else if (value instanceof Float) {
+            pokePrimitive(register, TYPE_FLOAT, Float.floatToRawIntBits((Float) value));
+            return;
+        } else if (value instanceof Double) {
+            pokePrimitive(register, TYPE_DOUBLE, Double.doubleToRawLongBits((Double) value));
+            return;
+        }
 
-        log.fine("Setting r" + register + " -> " + registerToString(register) + sb.toString());
+        int index = register + SPECIAL_REGISTER_COUNT;
+        ensureCapacity(index);
+        values[index] = value;
+        if (primitiveTypes != null) {
+            primitiveTypes[index] = TYPE_OBJECT;
+        }
+        setLocalRegister(index);
     }
 
     public Object readRegister(int register) {
@@ -146,10 +277,35 @@ public class VirtualMachineContext {
         return peekRegister(register);
     }
 
+    public double readDoubleRegister(int register) {
+        getRegistersRead().add(register);
+
+        return peekDoubleRegister(register);
+    }
+
+    public float readFloatRegister(int register) {
+        getRegistersRead().add(register);
+
+        return peekFloatRegister(register);
+    }
+
+    public int readIntRegister(int register) {
+        getRegistersRead().add(register);
+
+        return peekIntRegister(register);
+    }
+
+    public long readLongRegister(int register) {
+        getRegistersRead().add(register);
+
+        return peekLongRegister(register);
+    }
+
     protected String registerToString(int register) {
         StringBuilder result = new StringBuilder();
 
-        Object value = registerToValue.get(register);
+        int index = register + SPECIAL_REGISTER_COUNT;
+        Object value = getPrimitiveType(index) != TYPE_OBJECT ? boxPrimitive(index) : values[index];
         result.append("type=").append(SmaliClassUtils.getValueType(value)).append(", value=").append(value.toString())
                         .append(", hc=").append(value.hashCode());
 
@@ -157,11 +313,20 @@ public class VirtualMachineContext {
     }
 
     public void removeRegister(int register) {
-        registerToValue.delete(register);
+        if (hasRegister(register)) {
+            int index = register + SPECIAL_REGISTER_COUNT;
+            ensureOwnValues();
+            values[index] = null;
+            if (primitiveTypes != null) {
+                primitiveTypes[index] = TYPE_OBJECT;
+            }
+        }
     }
 
     public boolean hasRegister(int register) {
-        return registerToValue.indexOfKey(register) >= 0;
+        int index = register + SPECIAL_REGISTER_COUNT;
+
+        return (index < values.length) && ((values[index] != null) || (getPrimitiveType(index) != TYPE_OBJECT));
     }
 
     @Override
@@ -171,16 +336,17 @@ public class VirtualMachineContext {
         if (registerCount > 0) {
             sb.append("registers: ").append(registerCount).append("\n");
             sb.append("[");
-            for (int i = 0; i < registerToValue.size(); i++) {
-                int register = registerToValue.keyAt(i);
-                if (register < 0) {
-                    // Subclasses handle displaying special registers < 0.
+            boolean hasValues = false;
+            // Subclasses handle displaying special registers < 0.
+            for (int register = 0; register < (values.length - SPECIAL_REGISTER_COUNT); register++) {
+                if (!hasRegister(register)) {
                     continue;
                 }
 
                 sb.append("r").append(register).append(": ").append(registerToString(register)).append(",\n");
+                hasValues = true;
             }
-            if (registerToValue.size() > 0) {
+            if (hasValues) {
                 sb.setLength(sb.length() - 2);
             }
             sb.append("]");
@@ -195,18 +361,52 @@ public class VirtualMachineContext {
         // When replacing an uninitialized instance object, need to update all registers that also point to that object.
         // This would be a lot easier if Dalvik's "new-instance" or Java's "new" instruction were available at compile
         // time.
-        for (int i = 0; i < registerToValue.size(); i++) {
-            int currentRegister = registerToValue.keyAt(i);
-            Object currentValue = registerToValue.get(currentRegister);
-            if (oldValue == currentValue) {
-                assignRegister(currentRegister, value);
+        for (int index = 0; index < values.length; index++) {
+            if (oldValue == values[index]) {
+                assignRegister(index - SPECIAL_REGISTER_COUNT, value);
             }
         }
     }
 
-    VirtualMachineContext(VirtualMachineContext parent) {
-        this(parent.registerCount);
-        this.parent = parent;
+    void addRegistersRead(TIntSet registers) {
+        // Same as collecting every register where wasRegisterRead() is true, but without cloning any values.
+        registers.addAll(registersRead);
+        for (int i = 0; i < registersRead.size(); i++) {
+            int index = registersRead.get(i) + SPECIAL_REGISTER_COUNT;
+            if ((index >= values.length) || (getPrimitiveType(index) != TYPE_OBJECT) || (values[index] == null)) {
+                continue;
+            }
+
+            Object value = values[index];
+            if (ClassUtils.isPrimitiveOrWrapper(value.getClass()) || (value.getClass() == String.class)) {
+                continue;
+            }
+
+            for (int otherIndex = 0; otherIndex < values.length; otherIndex++) {
+                if (values[otherIndex] == value) {
+                    registers.add(otherIndex - SPECIAL_REGISTER_COUNT);
+                }
+            }
+        }
+    }
+
+    boolean hasSameValue(VirtualMachineContext other, int register) {
+        // Compares stored values directly so mutable values aren't cloned just to be looked at.
+        int index = register + SPECIAL_REGISTER_COUNT;
+        byte type = getPrimitiveType(index);
+        if (type != other.getPrimitiveType(index)) {
+            return false;
+        } else if (type != TYPE_OBJECT) {
+            return primitiveValues[index] == other.primitiveValues[index];
+        }
+
+        Object value = index < values.length ? values[index] : null;
+        Object otherValue = index < other.values.length ? other.values[index] : null;
+        if (value == otherValue) {
+            return true;
+        }
+
+        return (value != null) && isImmutable(value) && value.equals(otherValue);
     }
 
     public TIntList getRegistersAssigned() {
@@ -222,6 +422,10 @@ public class VirtualMachineContext {
     }
 
     public boolean wasRegisterRead(int register) {
+        if (getPrimitiveType(register + SPECIAL_REGISTER_COUNT) != TYPE_OBJECT) {
+            return registersRead.contains(register);
+        }
+
         Object value = peekRegister(register);
 
         if (ClassUtils.isPrimitiveOrWrapper(value.getClass()) || (value.getClass() == String.class)) {
@@ -240,7 +444,7 @@ public class VirtualMachineContext {
             TIntList registers = getRegistersRead();
             for (int i = 0; i < registers.size(); i++) {
                 int currentRegister = registers.get(i);
-                Object currentValue = registerToValue.get(currentRegister);
+                Object currentValue = values[currentRegister + SPECIAL_REGISTER_COUNT];
 
                 if (value == currentValue) {
                     return true;
@@ -250,4 +454,75 @@ public class VirtualMachineContext {
 
         return false;
     }
+
+    private Object boxPrimitive(int index) {
+        long value = primitiveValues[index];
+        switch (primitiveTypes[index]) {
+        case TYPE_INT:
+            return (int) value;
+        case TYPE_LONG:
+            return value;
+        case TYPE_FLOAT:
+            return Float.intBitsToFloat((int) value);
+        case TYPE_DOUBLE:
+            return Double.longBitsToDouble(value);
+        default:
+            return null;
+        }
+    }
+
+    private void ensureCapacity(int index) {
+        ensureOwnValues();
+        if (index >= values.length) {
+            values = Arrays.copyOf(values, index + 1);
+            if (primitiveTypes != null) {
+                primitiveTypes = Arrays.copyOf(primitiveTypes, index + 1);
+                primitiveValues = Arrays.copyOf(primitiveValues, index + 1);
+            }
+        }
+    }
+
+    private void ensureOwnValues() {
+        if (!ownsValues) {
+            values = values.clone();
+            if (primitiveTypes != null) {
+                primitiveTypes = primitiveTypes.clone();
+                primitiveValues = primitiveValues.clone();
+            }
+            ownsValues = true;
+        }
+    }
+
+    private byte getPrimitiveType(int index) {
+        if ((primitiveTypes == null) || (index >= primitiveTypes.length)) {
+            return TYPE_OBJECT;
+        }
+
+        return primitiveTypes[index];
+    }
+
+    private void pokePrimitive(int register, byte type, long value) {
+        int index = register + SPECIAL_REGISTER_COUNT;
+        ensureCapacity(index);
+        if (primitiveTypes == null) {
+            primitiveTypes = new byte[values.length];
+            primitiveValues = new long[values.length];
+        }
+        values[index] = null;
+        primitiveTypes[index] = type;
+        primitiveValues[index] = value;
+    }
+
+    private boolean isLocalRegister(int index) {
+        return (localRegisters != null) && (index < localRegisters.length) && localRegisters[index];
+    }
+
+    private void setLocalRegister(int index) {
+        if (localRegisters == null) {
+            localRegisters = new boolean[values.length];
+        } else if (index >= localRegisters.length) {
+            localRegisters = Arrays.copyOf(localRegisters, values.length);
+        }
+        localRegisters[index] = true;
+    }
 }
@@ -0,0 +1,14 @@
+package simplify.vm;
+
+public interface Worklist {
+
+    // Nodes waiting to be executed. The order they're taken in is the scheduling strategy.
+
+    public void add(ContextNode node);
+
+    public boolean isEmpty();
+
+    // Null if there's nothing left.
+    public ContextNode poll();
+
+}
@@ -2,347 +2,669 @@ package simplify.vm.handlers;
 
 import java.util.logging.Logger;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.NarrowLiteralInstruction;
 import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
 import org.jf.dexlib2.iface.instruction.formats.Instruction12x;
-import org.jf.dexlib2.iface.instruction.formats.Instruction22b;
-import org.jf.dexlib2.iface.instruction.formats.Instruction22s;
 import org.jf.dexlib2.iface.instruction.formats.Instruction23x;
 
 import simplify.Main;
 import simplify.vm.MethodContext;
 import simplify.vm.types.UnknownValue;
 
-public class BinaryMathOpHandler extends OpHandler {
+public final class BinaryMathOpHandler extends OpHandler {
+
+    // The operand type and operator are resolved from the opcode when the handler is created, so executing is a call
+    // on each rather than a switch on the opcode. Each operand type has its own operators so there's no combination
+    // without an implementation.
 
     private static enum MathOperandType {
-        INT,
-        LONG,
-        FLOAT,
-        DOUBLE
-    }
+        INT("I") {
+            @Override
+            void execute(BinaryMathOpHandler handler, MethodContext mctx) {
+                int lhs = mctx.readIntRegister(handler.arg1Register);
+                int rhs = handler.hasLiteral ? handler.literal : mctx.readIntRegister(handler.arg2Register);
+                if (handler.isDivisionByZero(rhs)) {
+                    mctx.assignRegister(handler.destRegister, new UnknownValue(getType()));
+                } else {
+                    mctx.assignIntRegister(handler.destRegister, handler.intOperator.apply(lhs, rhs));
+                }
+            }
+        },
+        LONG("J") {
+            @Override
+            void execute(BinaryMathOpHandler handler, MethodContext mctx) {
+                long lhs = mctx.readLongRegister(handler.arg1Register);
+                long rhs = mctx.readLongRegister(handler.arg2Register);
+                if (handler.isDivisionByZero(rhs)) {
+                    mctx.assignRegister(handler.destRegister, new UnknownValue(getType()));
+                } else {
+                    mctx.assignLongRegister(handler.destRegister, handler.longOperator.apply(lhs, rhs));
+                }
+            }
+        },
+        LONG_SHIFT("J") {
+            @Override
+            void execute(BinaryMathOpHandler handler, MethodContext mctx) {
+                // Shift distance for wide shifts is a single, non-wide register.
+                long lhs = mctx.readLongRegister(handler.arg1Register);
+                int rhs = mctx.readIntRegister(handler.arg2Register);
+                mctx.assignLongRegister(handler.destRegister, handler.longOperator.apply(lhs, rhs));
+            }
+        },
+        FLOAT("F") {
+            @Override
+            void execute(BinaryMathOpHandler handler, MethodContext mctx) {
+                float lhs = mctx.readFloatRegister(handler.arg1Register);
+                float rhs = mctx.readFloatRegister(handler.arg2Register);
+                mctx.assignFloatRegister(handler.destRegister, handler.floatOperator.apply(lhs, rhs));
+            }
+        },
+        DOUBLE("D") {
+            @Override
+            void execute(BinaryMathOpHandler handler, MethodContext mctx) {
+                double lhs = mctx.readDoubleRegister(handler.arg1Register);
+                double rhs = mctx.readDoubleRegister(handler.arg2Register);
+                mctx.assignDoubleRegister(handler.destRegister, handler.floatOperator.apply(lhs, rhs));
+            }
+        };
 
-    private static enum MathOperator {
-        ADD,
-        SUB,
-        MUL,
-        DIV,
-        REM,
-        AND,
-        OR,
-        XOR,
-        SHR,
-        SHL,
-        USHR,
-        RSUB
-    };
+        private final String type;
 
-    private static final Logger log = Logger.getLogger(Main.class.getSimpleName());;
+        private MathOperandType(String type) {
+            this.type = type;
+        }
 
-    private static Object doOperation(MathOperator mathOperator, Double lhs, Double rhs) {
-        Object result = null;
-        switch (mathOperator) {
-        case ADD:
-            result = lhs + rhs;
-            break;
-        case DIV:
-            result = lhs / rhs;
-            break;
-        case MUL:
-            result = lhs * rhs;
-            break;
-        case REM:
-            result = lhs % rhs;
-            break;
-        case SUB:
-            result = lhs - rhs;
-            break;
-        default:
-            break;
+        String getType() {
+            return type;
         }
 
-        return result;
+        // Operands are read unboxed and the result is stored unboxed. Tight loops shouldn't allocate.
+        abstract void execute(BinaryMathOpHandler handler, MethodContext mctx);
     }
 
-    private static Object doOperation(MathOperator mathOperator, Float lhs, Float rhs) {
-        Object result = null;
-        switch (mathOperator) {
-        case ADD:
-            result = lhs + rhs;
-            break;
-        case DIV:
-            result = lhs / rhs;
-            break;
-        case MUL:
-            result = lhs * rhs;
-            break;
-        case REM:
-            result = lhs % rhs;
-            break;
-        case SUB:
-            result = lhs - rhs;
-            break;
-        default:
-            break;
-        }
+    private static enum IntOperator {
+        ADD {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs + rhs;
+            }
+        },
+        SUB {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs - rhs;
+            }
+        },
+        MUL {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs * rhs;
+            }
+        },
+        DIV {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs / rhs;
+            }
+        },
+        REM {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs % rhs;
+            }
+        },
+        AND {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs & rhs;
+            }
+        },
+        OR {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs | rhs;
+            }
+        },
+        XOR {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs ^ rhs;
+            }
+        },
+        SHR {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs >> (rhs & 0x1f);
+            }
+        },
+        SHL {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs << (rhs & 0x1f);
+            }
+        },
+        USHR {
+            @Override
+            int apply(int lhs, int rhs) {
+                return lhs >>> (rhs & 0x1f);
+            }
+        },
+        RSUB {
+            @Override
+            int apply(int lhs, int rhs) {
+                return rhs - lhs;
+            }
+        };
 
-        return result;
+        abstract int apply(int lhs, int rhs);
     }
 
-    private static Object doOperation(MathOperator mathOperator, Integer lhs, Integer rhs) {
-        Object result = null;
-        switch (mathOperator) {
-        case ADD:
-            result = lhs + rhs;
-            break;
-        case AND:
-            result = lhs & rhs;
-            break;
-        case DIV:
-            result = lhs / rhs;
-            break;
-        case MUL:
-            result = lhs * rhs;
-            break;
-        case OR:
-            result = lhs | rhs;
-            break;
-        case REM:
-            result = lhs % rhs;
-            break;
-        case RSUB:
-            result = rhs - lhs;
-            break;
-        case SHL:
-            result = lhs << (rhs & 0x1f);
-            break;
-        case SHR:
-            result = lhs >> (rhs & 0x1f);
-            break;
-        case SUB:
-            result = lhs - rhs;
-            break;
-        case USHR:
-            result = lhs >>> (rhs & 0x1f);
-            break;
-        case XOR:
-            result = lhs ^ rhs;
-            break;
-        default:
+    private static enum LongOperator {
+        ADD {
+            @Override
+            long apply(long lhs, long rhs) {
+                return lhs + rhs;
+            }
+        },
+        SUB {
+            @Override
+            long apply(long lhs, long rhs) {
+                return lhs - rhs;
+            }
+        },
+        MUL {
+            @Override
+            long apply(long lhs, long rhs) {
+                return lhs * rhs;
+            }
+        },
+        DIV {
+            @Override
+            long apply(long lhs, long rhs) {
+                return lhs / rhs;
+            }
+        },
+        REM {
+            @Override
+            long apply(long lhs, long rhs) {
+                return lhs % rhs;
+            }
+        },
+        AND {
+            @Override
+            long apply(long lhs, long rhs) {
+                return lhs & rhs;
+            }
+        },
+        OR {
+            @Override
+            long apply(long lhs, long rhs) {
+                return lhs | rhs;
+            }
+        },
+        XOR {
+            @Override
+            long apply(long lhs, long rhs) {
+                return lhs ^ rhs;
+            }
+        },
+        SHR {
+            @Override
+            long apply(long lhs, long rhs) {
+                // Only the low 6 bits of the distance are used.
+                return lhs >> (rhs & 0x3f);
+            }
+        },
+        SHL {
+            @Override
+            long apply(long lhs, long rhs) {
+                // Only the low 6 bits of the distance are used.
+                return lhs << (rhs & 0x3f);
+            }
+        },
+        USHR {
+            @Override
+            long apply(long lhs, long rhs) {
+                // Only the low 6 bits of the distance are used.
+                return lhs >>> (rhs & 0x3f);
+            }
+        };
+
+        abstract long apply(long lhs, long rhs);
+    }
+
+    // Float and double have the same operators.
+    private static enum FloatOperator {
+        ADD {
+            @Override
+            float apply(float lhs, float rhs) {
+                return lhs + rhs;
+            }
+
+            @Override
+            double apply(double lhs, double rhs) {
+                return lhs + rhs;
+            }
+        },
+        SUB {
+            @Override
+            float apply(float lhs, float rhs) {
+                return lhs - rhs;
+            }
+
+            @Override
+            double apply(double lhs, double rhs) {
+                return lhs - rhs;
+            }
+        },
+        MUL {
+            @Override
+            float apply(float lhs, float rhs) {
+                return lhs * rhs;
+            }
+
+            @Override
+            double apply(double lhs, double rhs) {
+                return lhs * rhs;
+            }
+        },
+        DIV {
+            @Override
+            float apply(float lhs, float rhs) {
+                return lhs / rhs;
+            }
+
+            @Override
+            double apply(double lhs, double rhs) {
+                return lhs / rhs;
+            }
+        },
+        REM {
+            @Override
+            float apply(float lhs, float rhs) {
+                return lhs % rhs;
+            }
+
+            @Override
+            double apply(double lhs, double rhs) {
+                return lhs % rhs;
+            }
+        };
+
+        abstract float apply(float lhs, float rhs);
+
+        abstract double apply(double lhs, double rhs);
+    }
+
+    private static final Logger log = Logger.getLogger(Main.class.getSimpleName());;
+
+    @SuppressWarnings("incomplete-switch")
+    private static IntOperator getIntOperator(Opcode op) {
+        IntOperator result = null;
+        switch (op) {
+        case ADD_INT:
+        case ADD_INT_2ADDR:
+        case ADD_INT_LIT16:
+        case ADD_INT_LIT8:
+            result = IntOperator.ADD;
+            break;
+        case SUB_INT:
+        case SUB_INT_2ADDR:
+            result = IntOperator.SUB;
+            break;
+        case MUL_INT:
+        case MUL_INT_2ADDR:
+        case MUL_INT_LIT16:
+        case MUL_INT_LIT8:
+            result = IntOperator.MUL;
+            break;
+        case DIV_INT:
+        case DIV_INT_2ADDR:
+        case DIV_INT_LIT16:
+        case DIV_INT_LIT8:
+            result = IntOperator.DIV;
+            break;
+        case REM_INT:
+        case REM_INT_2ADDR:
+        case REM_INT_LIT16:
+        case REM_INT_LIT8:
+            result = IntOperator.REM;
+            break;
+        case AND_INT:
+        case AND_INT_2ADDR:
+        case AND_INT_LIT16:
+        case AND_INT_LIT8:
+            result = IntOperator.AND;
+            break;
+        case OR_INT:
+        case OR_INT_2ADDR:
+        case OR_INT_LIT16:
+        case OR_INT_LIT8:
+            result = IntOperator.OR;
+            break;
+        case XOR_INT:
+        case XOR_INT_2ADDR:
+        case XOR_INT_LIT16:
+        case XOR_INT_LIT8:
+            result = IntOperator.XOR;
+            break;
+        case SHL_INT:
+        case SHL_INT_2ADDR:
+        case SHL_INT_LIT8:
+            result = IntOperator.SHL;
+            break;
+        case SHR_INT:
+        case SHR_INT_2ADDR:
+        case SHR_INT_LIT8:
+            result = IntOperator.SHR;
+            break;
+        case USHR_INT:
+        case USHR_INT_2ADDR:
+        case USHR_INT_LIT8:
+            result = IntOperator.USHR;
+            break;
+        case RSUB_INT:
+        case RSUB_INT_LIT8:
+            result = IntOperator.RSUB;
             break;
         }
 
         return result;
     }
 
-    private static Object doOperation(MathOperator mathOperator, Long lhs, Long rhs) {
-        Object result = null;
-        switch (mathOperator) {
-        case ADD:
-            result = lhs + rhs;
-            break;
-        case AND:
-            result = lhs & rhs;
+    @SuppressWarnings("incomplete-switch")
+    private static LongOperator getLongOperator(Opcode op) {
+        LongOperator result = null;
+        switch (op) {
+        case ADD_LONG:
+        case ADD_LONG_2ADDR:
+            result = LongOperator.ADD;
             break;
-        case DIV:
-            result = lhs / rhs;
+        case SUB_LONG:
+        case SUB_LONG_2ADDR:
+            result = LongOperator.SUB;
             break;
-        case MUL:
-            result = lhs * rhs;
+        case MUL_LONG:
+        case MUL_LONG_2ADDR:
+            result = LongOperator.MUL;
             break;
-        case OR:
-            result = lhs | rhs;
+        case DIV_LONG:
+        case DIV_LONG_2ADDR:
+            result = LongOperator.DIV;
             break;
-        case REM:
-            result = lhs % rhs;
+        case REM_LONG:
+        case REM_LONG_2ADDR:
+            result = LongOperator.REM;
             break;
-        case RSUB:
-            result = rhs - lhs;
+        case AND_LONG:
+        case AND_LONG_2ADDR:
+            result = LongOperator.AND;
             break;
-        case SHL:
-            result = lhs << rhs;
+        case OR_LONG:
+        case OR_LONG_2ADDR:
+            result = LongOperator.OR;
             break;
-        case SHR:
-            result = lhs >> rhs;
+        case XOR_LONG:
+        case XOR_LONG_2ADDR:
+            result = LongOperator.XOR;
             break;
-        case SUB:
-            result = lhs - rhs;
+        case SHL_LONG:
+        case SHL_LONG_2ADDR:
+            result = LongOperator.SHL;
             break;
-        case USHR:
-            result = lhs >>> rhs;
+        case SHR_LONG:
+        case SHR_LONG_2ADDR:
+            result = LongOperator.SHR;
             break;
-        case XOR:
-            result = lhs ^ rhs;
-            break;
-        default:
+        case USHR_LONG:
+        case USHR_LONG_2ADDR:
+            result = LongOperator.USHR;
             break;
         }
 
         return result;
     }
 
-    private static MathOperator getMathOp(String opName) {
-        MathOperator result = null;
-        if (opName.startsWith("add")) {
-            result = MathOperator.ADD;
-        } else if (opName.startsWith("sub")) {
-            result = MathOperator.SUB;
-        } else if (opName.startsWith("mul")) {
-            result = MathOperator.MUL;
-        } else if (opName.startsWith("div")) {
-            result = MathOperator.DIV;
-        } else if (opName.startsWith("rem")) {
-            result = MathOperator.REM;
-        } else if (opName.startsWith("and")) {
-            result = MathOperator.AND;
-        } else if (opName.startsWith("or")) {
-            result = MathOperator.OR;
-        } else if (opName.startsWith("xor")) {
-            result = MathOperator.XOR;
-        } else if (opName.startsWith("shl")) {
-            result = MathOperator.SHL;
-        } else if (opName.startsWith("shr")) {
-            result = MathOperator.SHR;
-        } else if (opName.startsWith("ushr")) {
-            result = MathOperator.USHR;
-        } else if (opName.startsWith("rsub")) {
-            result = MathOperator.RSUB;
+    @SuppressWarnings("incomplete-switch")
+    private static FloatOperator getFloatOperator(Opcode op) {
+        FloatOperator result = null;
+        switch (op) {
+        case ADD_DOUBLE:
+        case ADD_DOUBLE_2ADDR:
+        case ADD_FLOAT:
+        case ADD_FLOAT_2ADDR:
+            result = FloatOperator.ADD;
+            break;
+        case SUB_DOUBLE:
+        case SUB_DOUBLE_2ADDR:
+        case SUB_FLOAT:
+        case SUB_FLOAT_2ADDR:
+            result = FloatOperator.SUB;
+            break;
+        case MUL_DOUBLE:
+        case MUL_DOUBLE_2ADDR:
+        case MUL_FLOAT:
+        case MUL_FLOAT_2ADDR:
+            result = FloatOperator.MUL;
+            break;
+        case DIV_DOUBLE:
+        case DIV_DOUBLE_2ADDR:
+        case DIV_FLOAT:
+        case DIV_FLOAT_2ADDR:
+            result = FloatOperator.DIV;
+            break;
+        case REM_DOUBLE:
+        case REM_DOUBLE_2ADDR:
+        case REM_FLOAT:
+        case REM_FLOAT_2ADDR:
+            result = FloatOperator.REM;
+            break;
         }
 
         return result;
     }
 
-    private static MathOperandType getMathOperandType(String opName) {
+    @SuppressWarnings("incomplete-switch")
+    private static MathOperandType getMathOperandType(Opcode op) {
         MathOperandType result = null;
-        if (opName.contains("-int")) {
+        switch (op) {
+        case ADD_INT:
+        case ADD_INT_2ADDR:
+        case ADD_INT_LIT16:
+        case ADD_INT_LIT8:
+        case AND_INT:
+        case AND_INT_2ADDR:
+        case AND_INT_LIT16:
+        case AND_INT_LIT8:
+        case DIV_INT:
+        case DIV_INT_2ADDR:
+        case DIV_INT_LIT16:
+        case DIV_INT_LIT8:
+        case MUL_INT:
+        case MUL_INT_2ADDR:
+        case MUL_INT_LIT16:
+        case MUL_INT_LIT8:
+        case OR_INT:
+        case OR_INT_2ADDR:
+        case OR_INT_LIT16:
+        case OR_INT_LIT8:
+        case REM_INT:
+        case REM_INT_2ADDR:
+        case REM_INT_LIT16:
+        case REM_INT_LIT8:
+        case RSUB_INT:
+        case RSUB_INT_LIT8:
+        case SHL_INT:
+        case SHL_INT_2ADDR:
+        case SHL_INT_LIT8:
+        case SHR_INT:
+        case SHR_INT_2ADDR:
+        case SHR_INT_LIT8:
+        case SUB_INT:
+        case SUB_INT_2ADDR:
+        case USHR_INT:
+        case USHR_INT_2ADDR:
+        case USHR_INT_LIT8:
+        case XOR_INT:
+        case XOR_INT_2ADDR:
+        case XOR_INT_LIT16:
+        case XOR_INT_LIT8:
             result = MathOperandType.INT;
-        } else if (opName.contains("-double")) {
-            result = MathOperandType.DOUBLE;
-        } else if (opName.contains("-float")) {
-            result = MathOperandType.FLOAT;
-        } else if (opName.contains("-long")) {
+            break;
+        case ADD_LONG:
+        case ADD_LONG_2ADDR:
+        case AND_LONG:
+        case AND_LONG_2ADDR:
+        case DIV_LONG:
+        case DIV_LONG_2ADDR:
+        case MUL_LONG:
+        case MUL_LONG_2ADDR:
+        case OR_LONG:
+        case OR_LONG_2ADDR:
+        case REM_LONG:
+        case REM_LONG_2ADDR:
+        case SUB_LONG:
+        case SUB_LONG_2ADDR:
+        case XOR_LONG:
+        case XOR_LONG_2ADDR:
             result = MathOperandType.LONG;
+            break;
+        case SHL_LONG:
+        case SHL_LONG_2ADDR:
+        case SHR_LONG:
+        case SHR_LONG_2ADDR:
+        case USHR_LONG:
+        case USHR_LONG_2ADDR:
+            result = MathOperandType.LONG_SHIFT;
+            break;
+        case ADD_FLOAT:
+        case ADD_FLOAT_2ADDR:
+        case DIV_FLOAT:
+        case DIV_FLOAT_2ADDR:
+        case MUL_FLOAT:
+        case MUL_FLOAT_2ADDR:
+        case REM_FLOAT:
+        case REM_FLOAT_2ADDR:
+        case SUB_FLOAT:
+        case SUB_FLOAT_2ADDR:
+            result = MathOperandType.FLOAT;
+            break;
+        case ADD_DOUBLE:
+        case ADD_DOUBLE_2ADDR:
+        case DIV_DOUBLE:
+        case DIV_DOUBLE_2ADDR:
+        case MUL_DOUBLE:
+        case MUL_DOUBLE_2ADDR:
+        case REM_DOUBLE:
+        case REM_DOUBLE_2ADDR:
+        case SUB_DOUBLE:
+        case SUB_DOUBLE_2ADDR:
+            result = MathOperandType.DOUBLE;
+            break;
         }
 
         return result;
     }
 
     static BinaryMathOpHandler create(Instruction instruction, int address) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
         int childAddress = address + instruction.getCodeUnits();
         TwoRegisterInstruction instr = (TwoRegisterInstruction) instruction;
         int destRegister = instr.getRegisterA();
-        int arg1Register = instr.getRegisterB();
 
         BinaryMathOpHandler result = null;
         if (instruction instanceof Instruction23x) {
             // add-int vAA, vBB, vCC
+            int arg1Register = instr.getRegisterB();
             int arg2Register = ((Instruction23x) instruction).getRegisterC();
-            result = new BinaryMathOpHandler(address, opName, childAddress, destRegister, arg1Register, arg2Register,
+            result = new BinaryMathOpHandler(address, op, childAddress, destRegister, arg1Register, arg2Register,
                             false);
         } else if (instruction instanceof Instruction12x) {
-            // add-int/2addr vAA, vBB
+            // add-int/2addr vA, vB
+            // vA is both the destination and the first operand.
             int arg2Register = ((Instruction12x) instruction).getRegisterB();
-            result = new BinaryMathOpHandler(address, opName, childAddress, destRegister, arg1Register, arg2Register,
+            result = new BinaryMathOpHandler(address, op, childAddress, destRegister, destRegister, arg2Register,
                             false);
-        } else if (instruction instanceof Instruction22b) {
-            // add-int/lit8 vAA, vBB, #CC
-            int arg2Literal = ((Instruction22b) instruction).getNarrowLiteral();
-            result = new BinaryMathOpHandler(address, opName, childAddress, destRegister, arg1Register, arg2Literal,
+        } else if (instruction instanceof NarrowLiteralInstruction) {
+            // add-int/lit8 vAA, vBB, #CC (Instruction22b)
+            // add-int/lit16 vAA, vBB, #CCCC (Instruction22s)
+            int arg1Register = instr.getRegisterB();
+            int arg2Literal = ((NarrowLiteralInstruction) instruction).getNarrowLiteral();
+            result = new BinaryMathOpHandler(address, op, childAddress, destRegister, arg1Register, arg2Literal,
                             true);
-        } else if (instruction instanceof Instruction22s) {
-            // add-int/lit16 vAA, vBB, #CCCC
-            long arg2Literal = ((Instruction22s) instruction).getWideLiteral();
-            result = new BinaryMathOpHandler(address, opName, childAddress, destRegister, arg1Register, arg2Literal);
         }
 
         return result;
     }
 
-    private final MathOperator mathOperator;
+    private final IntOperator intOperator;
+    private final LongOperator longOperator;
+    private final FloatOperator floatOperator;
     private final MathOperandType mathOperandType;
+    private final boolean isDivision;
     private final int destRegister;
     private final int arg1Register;
     private int arg2Register;
-    private int narrowLiteral;
-    private long wideLiteral;
-    private boolean hasWideLiteral;
-    private boolean hasNarrowLiteral;
+    private int literal;
+    private boolean hasLiteral;
 
-    private BinaryMathOpHandler(int address, String opName, int childAddress, int destRegister, int arg1Register) {
-        super(address, opName, childAddress);
+    private BinaryMathOpHandler(int address, Opcode op, int childAddress, int destRegister, int arg1Register) {
+        super(address, op, childAddress);
 
         this.destRegister = destRegister;
         this.arg1Register = arg1Register;
 
-        mathOperator = getMathOp(opName);
-        mathOperandType = getMathOperandType(opName);
+        // Only the operator for the operand type is set.
+        intOperator = getIntOperator(op);
+        longOperator = getLongOperator(op);
+        floatOperator = getFloatOperator(op);
+        mathOperandType = getMathOperandType(op);
+        isDivision = (intOperator == IntOperator.DIV) || (intOperator == IntOperator.REM)
+                        || (longOperator == LongOperator.DIV) || (longOperator == LongOperator.REM);
     }
 
-    private BinaryMathOpHandler(int address, String opName, int childAddress, int destRegister, int arg1Register,
+    private BinaryMathOpHandler(int address, Opcode op, int childAddress, int destRegister, int arg1Register,
                     int otherValue, boolean hasLiteral) {
-        this(address, opName, childAddress, destRegister, arg1Register);
+        this(address, op, childAddress, destRegister, arg1Register);
 
-        hasNarrowLiteral = hasLiteral;
+        this.hasLiteral = hasLiteral;
 
-        if (hasNarrowLiteral) {
-            narrowLiteral = otherValue;
+        if (hasLiteral) {
+            literal = otherValue;
         } else {
             arg2Register = otherValue;
         }
     }
 
-    private BinaryMathOpHandler(int address, String opName, int childAddress, int destRegister, int arg1Register,
-                    long wideLiteral) {
-        this(address, opName, childAddress, destRegister, arg1Register);
-
-        this.wideLiteral = wideLiteral;
-
-        hasWideLiteral = true;
-    }
-
     @Override
     public int[] execute(MethodContext mctx) {
-        Object lhs = mctx.readRegister(arg1Register);
-        Object rhs = null;
-        if (hasWideLiteral) {
-            rhs = wideLiteral;
-        } else if (hasNarrowLiteral) {
-            rhs = narrowLiteral;
-        } else {
-            rhs = mctx.readRegister(arg2Register);
-        }
-
-        log.finest(mathOperator + " - " + mathOperandType + " lhs:" + lhs + ", rhs:" + rhs);
-
-        Object result = new UnknownValue(getType());
-        if (!((lhs instanceof UnknownValue) || (rhs instanceof UnknownValue))) {
-            result = getResult(lhs, rhs);
-
-            if (result == null) {
-                log.warning("Null result in binary math. Not possibruuu!");
+        boolean hasKnownOperands = mctx.hasPrimitiveValue(arg1Register)
+                        && (hasLiteral || mctx.hasPrimitiveValue(arg2Register));
+        if (!hasKnownOperands) {
+            // Still need to record the reads.
+            mctx.readRegister(arg1Register);
+            if (!hasLiteral) {
+                mctx.readRegister(arg2Register);
             }
+            mctx.assignRegister(destRegister, new UnknownValue(getType()));
+
+            return getPossibleChildren();
         }
 
-        mctx.assignRegister(destRegister, result);
+        mathOperandType.execute(this, mctx);
 
         return getPossibleChildren();
     }
 
     private String getType() {
-        MathOperandType operandType = getMathOperandType(getOpName());
-        switch (operandType) {
-        case DOUBLE:
-            return "D";
-        case FLOAT:
-            return "F";
-        case INT:
-            return "I";
-        case LONG:
-            return "J";
-        default:
-            return "?numeric?"; // should never happen
-        }
+        return mathOperandType.getType();
+    }
+
+    private boolean isDivisionByZero(long rhs) {
+        // Dalvik would throw ArithmeticException here. Can't know if it's caught, so the result is unknown.
+        return (rhs == 0) && isDivision;
     }
 
     @Override
@@ -354,10 +676,8 @@ public class BinaryMathOpHandler extends OpHandler {
         sb.append("r").append(arg1Register).append(", ");
         // }
 
-        if (hasNarrowLiteral) {
-            sb.append("0x").append(Integer.toHexString(narrowLiteral));
-        } else if (hasWideLiteral) {
-            sb.append("0x").append(Long.toHexString(wideLiteral));
+        if (hasLiteral) {
+            sb.append("0x").append(Integer.toHexString(literal));
         } else {
             sb.append("r").append(arg2Register);
         }
@@ -365,29 +685,4 @@ public class BinaryMathOpHandler extends OpHandler {
         return sb.toString();
     }
 
-    private Object getResult(Object lhs, Object rhs) {
-        Object result = null;
-
-        // TODO: shifts are different from this : http://source.android.com/devices/tech/dalvik/dalvik-bytecode.html
-        // test shifts carefully
-        switch (mathOperandType) {
-        case INT:
-            result = doOperation(mathOperator, (Integer) lhs, (Integer) rhs);
-            break;
-        case LONG:
-            result = doOperation(mathOperator, (Long) lhs, (Long) rhs);
-            break;
-        case FLOAT:
-            result = doOperation(mathOperator, (Float) lhs, (Float) rhs);
-            break;
-        case DOUBLE:
-            result = doOperation(mathOperator, (Double) lhs, (Double) rhs);
-            break;
-        default: // return null and it'll get caught later
-            break;
-        }
-
-        return result;
-    }
-
 }
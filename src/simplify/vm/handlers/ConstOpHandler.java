@@ -2,6 +2,7 @@ package simplify.vm.handlers;
 
 import java.util.logging.Logger;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.NarrowLiteralInstruction;
 import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
@@ -14,7 +15,7 @@ import simplify.Main;
 import simplify.vm.MethodContext;
 import simplify.vm.VirtualMachine;
 
-public class ConstOpHandler extends OpHandler {
+public final class ConstOpHandler extends OpHandler {
 
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
 
@@ -26,73 +27,90 @@ public class ConstOpHandler extends OpHandler {
     };
 
     static ConstOpHandler create(Instruction instruction, int address, VirtualMachine vm) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
         int childAddress = address + instruction.getCodeUnits();
         int destRegister = ((OneRegisterInstruction) instruction).getRegisterA();
 
         ConstType constType = null;
         Object literal = null;
-        if (opName.endsWith("-string")) {
-            ReferenceInstruction instr = (ReferenceInstruction) instruction;
-            literal = ((StringReference) instr.getReference()).getString();
+        switch (op) {
+        case CONST_STRING:
+        case CONST_STRING_JUMBO:
+            literal = ((StringReference) ((ReferenceInstruction) instruction).getReference()).getString();
             constType = ConstType.STRING;
-        } else if (opName.endsWith("class")) {
-            ReferenceInstruction instr = (ReferenceInstruction) instruction;
-            literal = instr.getReference();
+            break;
+        case CONST_CLASS:
+            literal = ((ReferenceInstruction) instruction).getReference();
             constType = ConstType.CLASS;
-        } else if (opName.contains("-wide")) {
-            WideLiteralInstruction instr = (WideLiteralInstruction) instruction;
-            literal = instr.getWideLiteral();
+            break;
+        case CONST_WIDE:
+        case CONST_WIDE_16:
+        case CONST_WIDE_32:
+        case CONST_WIDE_HIGH16:
+            literal = ((WideLiteralInstruction) instruction).getWideLiteral();
             constType = ConstType.WIDE;
-        } else {
-            NarrowLiteralInstruction instr = (NarrowLiteralInstruction) instruction;
-            literal = instr.getNarrowLiteral();
+            break;
+        default:
+            literal = ((NarrowLiteralInstruction) instruction).getNarrowLiteral();
             constType = ConstType.NARROW;
+            break;
         }
 
-        return new ConstOpHandler(address, opName, childAddress, destRegister, constType, literal);
+        return new ConstOpHandler(address, op, childAddress, destRegister, constType, literal);
     }
 
     private final int destRegister;
     private final ConstType constType;
     private final Object literal;
+    // Numeric literals are kept unboxed so executing them doesn't allocate.
+    private final int narrowLiteral;
+    private final long wideLiteral;
 
-    private ConstOpHandler(int address, String opName, int childAddress, int destRegister, ConstType constType,
+    private ConstOpHandler(int address, Opcode op, int childAddress, int destRegister, ConstType constType,
                     Object literal) {
-        super(address, opName, childAddress);
+        super(address, op, childAddress);
 
         this.destRegister = destRegister;
         this.constType = constType;
         this.literal = literal;
+
+        narrowLiteral = constType == ConstType.NARROW ? (Integer) literal : 0;
+        wideLiteral = constType == ConstType.WIDE ? (Long) literal : 0;
     }
 
-    private ConstOpHandler(int address, String opName, int childAddress, int destRegister, String literal) {
-        this(address, opName, childAddress, destRegister, ConstType.STRING, literal);
+    private ConstOpHandler(int address, Opcode op, int childAddress, int destRegister, String literal) {
+        this(address, op, childAddress, destRegister, ConstType.STRING, literal);
     }
 
-    private ConstOpHandler(int address, String opName, int childAddress, int destRegister, TypeReference classRef) {
-        this(address, opName, childAddress, destRegister, ConstType.CLASS, classRef);
+    private ConstOpHandler(int address, Opcode op, int childAddress, int destRegister, TypeReference classRef) {
+        this(address, op, childAddress, destRegister, ConstType.CLASS, classRef);
     }
 
-    private ConstOpHandler(int address, String opName, int childAddress, int destRegister, int literal) {
-        this(address, opName, childAddress, destRegister, ConstType.NARROW, literal);
+    private ConstOpHandler(int address, Opcode op, int childAddress, int destRegister, int literal) {
+        this(address, op, childAddress, destRegister, ConstType.NARROW, literal);
     }
 
-    private ConstOpHandler(int address, String opName, int childAddress, int destRegister, long literal) {
-        this(address, opName, childAddress, destRegister, ConstType.WIDE, literal);
+    private ConstOpHandler(int address, Opcode op, int childAddress, int destRegister, long literal) {
+        this(address, op, childAddress, destRegister, ConstType.WIDE, literal);
     }
 
     @Override
     public int[] execute(MethodContext mctx) {
-        Object result = null;
-        if (constType == ConstType.CLASS) {
-            result = Class.class;
-        } else {
-            result = literal;
+        switch (constType) {
+        case CLASS:
+            mctx.assignRegister(destRegister, Class.class);
+            break;
+        case NARROW:
+            mctx.assignIntRegister(destRegister, narrowLiteral);
+            break;
+        case STRING:
+            mctx.assignRegister(destRegister, literal);
+            break;
+        case WIDE:
+            mctx.assignLongRegister(destRegister, wideLiteral);
+            break;
         }
 
-        mctx.assignRegister(destRegister, result);
-
         return getPossibleChildren();
     }
 
@@ -106,13 +124,13 @@ public class ConstOpHandler extends OpHandler {
             sb.append(((TypeReference) literal).getType());
             break;
         case NARROW:
-            sb.append("0x").append(Integer.toHexString((int) literal));
+            sb.append("0x").append(Integer.toHexString(narrowLiteral));
             break;
         case STRING:
             sb.append("\"").append((String) literal).append("\"");
             break;
         case WIDE:
-            sb.append("0x").append(Long.toHexString((long) literal));
+            sb.append("0x").append(Long.toHexString(wideLiteral));
             break;
 
         }
@@ -1,23 +1,24 @@
 package simplify.vm.handlers;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.OffsetInstruction;
 
 import simplify.vm.MethodContext;
 
-public class GotoOpHandler extends OpHandler {
+public final class GotoOpHandler extends OpHandler {
 
     static GotoOpHandler create(Instruction instruction, int address) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
 
         int branchOffset = ((OffsetInstruction) instruction).getCodeOffset();
         int targetAddress = address + branchOffset;
 
-        return new GotoOpHandler(address, opName, targetAddress);
+        return new GotoOpHandler(address, op, targetAddress);
     }
 
-    private GotoOpHandler(int address, String opName, int targetAddress) {
-        super(address, opName, targetAddress);
+    private GotoOpHandler(int address, Opcode op, int targetAddress) {
+        super(address, op, targetAddress);
     }
 
     @Override
@@ -1,8 +1,10 @@
 package simplify.vm.handlers;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.builder.CompareToBuilder;
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.OffsetInstruction;
 import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
@@ -12,7 +14,7 @@ import simplify.Main;
 import simplify.vm.MethodContext;
 import simplify.vm.types.UnknownValue;
 
-public class IfOpHandler extends OpHandler {
+public final class IfOpHandler extends OpHandler {
 
     private static enum IfType {
         EQUAL,
@@ -25,21 +27,35 @@ public class IfOpHandler extends OpHandler {
 
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
 
-    private static IfType getIfType(String opName) {
+    @SuppressWarnings("incomplete-switch")
+    private static IfType getIfType(Opcode op) {
         IfType result = null;
 
-        if (opName.contains("-eq")) {
+        switch (op) {
+        case IF_EQ:
+        case IF_EQZ:
             result = IfType.EQUAL;
-        } else if (opName.contains("-ne")) {
+            break;
+        case IF_NE:
+        case IF_NEZ:
             result = IfType.NOT_EQUAL;
-        } else if (opName.contains("-lt")) {
+            break;
+        case IF_LT:
+        case IF_LTZ:
             result = IfType.LESS;
-        } else if (opName.contains("-le")) {
+            break;
+        case IF_LE:
+        case IF_LEZ:
             result = IfType.LESS_OR_EQUAL;
-        } else if (opName.contains("-gt")) {
+            break;
+        case IF_GT:
+        case IF_GTZ:
             result = IfType.GREATER;
-        } else if (opName.contains("-ge")) {
+            break;
+        case IF_GE:
+        case IF_GEZ:
             result = IfType.GREATOR_OR_EQUAL;
+            break;
         }
 
         return result;
@@ -77,70 +93,79 @@ public class IfOpHandler extends OpHandler {
         int targetAddress = address + branchOffset;
         int childAddress = address + instruction.getCodeUnits();
 
-        String opName = instruction.getOpcode().name;
-        IfType ifType = getIfType(opName);
+        Opcode op = instruction.getOpcode();
+        IfType ifType = getIfType(op);
         int register1 = ((OneRegisterInstruction) instruction).getRegisterA();
 
         if (instruction instanceof Instruction22t) {
             // if-* vA, vB, :label
             Instruction22t instr = (Instruction22t) instruction;
 
-            return new IfOpHandler(address, opName, childAddress, ifType, targetAddress, register1,
+            return new IfOpHandler(address, op, childAddress, ifType, targetAddress, register1,
                             instr.getRegisterB());
         } else {
             // if-*z vA, vB, :label (Instruction 21t)
-            return new IfOpHandler(address, opName, childAddress, ifType, targetAddress, register1);
+            return new IfOpHandler(address, op, childAddress, ifType, targetAddress, register1);
         }
     }
 
     private final IfType ifType;
     private final int targetAddress;
     private final int register1;
+    private final int[] nextChild;
+    private final int[] targetChild;
 
     private int register2;
 
     private boolean compareToZero;
 
-    private IfOpHandler(int address, String opName, int childAddress, IfType ifType, int targetAddress, int register1) {
-        super(address, opName, new int[] { childAddress, targetAddress });
+    private IfOpHandler(int address, Opcode op, int childAddress, IfType ifType, int targetAddress, int register1) {
+        super(address, op, new int[] { childAddress, targetAddress });
 
         this.ifType = ifType;
         this.targetAddress = targetAddress;
         this.register1 = register1;
+        nextChild = new int[] { childAddress };
+        targetChild = new int[] { targetAddress };
         compareToZero = true;
     }
 
-    private IfOpHandler(int address, String opName, int childAddress, IfType ifType, int targetAddress, int register1,
+    private IfOpHandler(int address, Opcode op, int childAddress, IfType ifType, int targetAddress, int register1,
                     int register2) {
-        this(address, opName, childAddress, ifType, targetAddress, register1);
+        this(address, op, childAddress, ifType, targetAddress, register1);
         this.register2 = register2;
         compareToZero = false;
     }
 
     @Override
     public int[] execute(MethodContext mctx) {
-        Object A = mctx.readRegister(register1);
-        Object B;
-        if (compareToZero) {
-            B = 0;
+        int cmp;
+        if (mctx.hasPrimitiveValue(register1) && (compareToZero || mctx.hasPrimitiveValue(register2))) {
+            // Most comparisons are between ints, so avoid boxing and reflection.
+            int A = mctx.readIntRegister(register1);
+            int B = compareToZero ? 0 : mctx.readIntRegister(register2);
+            cmp = A < B ? -1 : (A == B ? 0 : 1);
         } else {
-            B = mctx.readRegister(register2);
-        }
-
-        // Ambiguous predicate. Must assume we go down both branches.
-        if ((A instanceof UnknownValue) || (B instanceof UnknownValue)) {
-            return getPossibleChildren();
-        }
-
-        int cmp = CompareToBuilder.reflectionCompare(A, B);
-        log.finer("IF compare: " + A + " vs " + B + " = " + cmp);
-
-        int result = getPossibleChildren()[0];
-        if (isTrue(ifType, cmp)) {
-            result = targetAddress;
+            Object A = mctx.readRegister(register1);
+            Object B;
+            if (compareToZero) {
+                B = 0;
+            } else {
+                B = mctx.readRegister(register2);
+            }
+
+            // Ambiguous predicate. Must assume we go down both branches.
+            if ((A instanceof UnknownValue) || (B instanceof UnknownValue)) {
+                return getPossibleChildren();
+            }
+
+            cmp = CompareToBuilder.reflectionCompare(A, B);
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("IF compare: " + A + " vs " + B + " = " + cmp);
+            }
         }
 
-        return new int[] { result };
+        return isTrue(ifType, cmp) ? targetChild : nextChild;
     }
 
     @Override
@@ -1,10 +1,11 @@
 package simplify.vm.handlers;
 
-import gnu.trove.list.TIntList;
-
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.jf.dexlib2.Format;
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.formats.Instruction35c;
 import org.jf.dexlib2.iface.instruction.formats.Instruction3rc;
@@ -16,16 +17,19 @@ import simplify.MethodReflector;
 import simplify.SmaliClassUtils;
 import simplify.emulate.MethodEmulator;
 import simplify.vm.ContextGraph;
+import simplify.vm.ExecutionBudget;
 import simplify.vm.MethodContext;
+import simplify.vm.MethodSummary;
+import simplify.vm.MethodSummaryCache;
 import simplify.vm.VirtualMachine;
 import simplify.vm.types.UnknownValue;
 
-public class InvokeOpHandler extends OpHandler {
+public final class InvokeOpHandler extends OpHandler {
 
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
 
     private static void addCalleeParameters(MethodContext calleeContext, MethodContext callerContext, int[] registers,
-                    int address, boolean isStatic) {
+                    List<? extends CharSequence> parameterTypes, boolean isStatic) {
         int offset = 0;
 
         if (!isStatic) {
@@ -36,13 +40,16 @@ public class InvokeOpHandler extends OpHandler {
             offset = 1;
         }
 
+        int parameterIndex = 0;
         for (int i = offset; i < registers.length; i++) {
             int register = registers[i];
             // Passing actual value references since they'll be updated correctly by the JVM.
             Object value = callerContext.readRegister(register);
             calleeContext.assignParameter(i - offset, value);
 
-            if (SmaliClassUtils.getValueType(value).equals("J")) {
+            String type = parameterTypes.get(parameterIndex).toString();
+            parameterIndex++;
+            if (type.equals("J") || type.equals("D")) {
                 // This register index and the next both refer to this variable.
                 i++;
             }
@@ -61,30 +68,63 @@ public class InvokeOpHandler extends OpHandler {
     }
 
     private static void assumeMaximumUnknown(VirtualMachine vm, MethodContext callerContext, int[] registers,
-                    String returnType) {
-        for (int i = 0; i < registers.length; i++) {
-            int register = registers[i];
-            String className = callerContext.peekRegisterType(register);
-            if (SmaliClassUtils.isImmutableClass(className)) {
-                if (className.equals("J")) {
-                    i++;
-                }
+                    List<? extends CharSequence> parameterTypes, boolean isStatic, String returnType) {
+        int offset = 0;
+
+        if (!isStatic) {
+            // First register is instance references.
+            assumeUnknownIfMutable(callerContext, registers[0]);
+            offset = 1;
+        }
+
+        int parameterIndex = 0;
+        for (int i = offset; i < registers.length; i++) {
+            assumeUnknownIfMutable(callerContext, registers[i]);
 
+            String type = parameterTypes.get(parameterIndex).toString();
+            parameterIndex++;
+            if (type.equals("J") || type.equals("D")) {
+                // This register index and the next both refer to this variable.
+                i++;
+            }
+        }
+
+        if (!returnType.equals("V")) {
+            callerContext.assignResultRegister(new UnknownValue(returnType));
+        }
+    }
+
+    private static void assumeUnknownIfMutable(MethodContext callerContext, int register) {
+        String className = callerContext.peekRegisterType(register);
+        if (SmaliClassUtils.isImmutableClass(className)) {
+            if (log.isLoggable(Level.FINE)) {
                 log.fine(className + " is immutable");
-                continue;
             }
 
+            return;
+        }
+
+        if (log.isLoggable(Level.FINE)) {
             log.fine(className + " is mutable and passed into strange method, marking unknown");
-            callerContext.pokeRegister(register, new UnknownValue(className));
         }
+        callerContext.pokeRegister(register, new UnknownValue(className));
+    }
 
-        if (!returnType.equals("V")) {
-            callerContext.assignResultRegister(new UnknownValue(returnType));
+    private static Object[] peekArguments(MethodContext callerContext, int[] registers) {
+        Object[] result = new Object[registers.length];
+        for (int i = 0; i < registers.length; i++) {
+            int register = registers[i];
+            // Second register of a wide value won't have anything.
+            if (callerContext.hasRegister(register)) {
+                result[i] = callerContext.peekRegister(register);
+            }
         }
+
+        return result;
     }
 
-    private static MethodContext buildCalleeContext(MethodContext callerContext, int[] registers, int address,
-                    boolean isStatic) {
+    private static MethodContext buildCalleeContext(MethodContext callerContext, int[] registers,
+                    List<? extends CharSequence> parameterTypes, boolean isStatic) {
         int parameterCount = registers.length;
         int registerCount = parameterCount;
         int callDepth = callerContext.getCallDepth() + 1;
@@ -95,7 +135,7 @@ public class InvokeOpHandler extends OpHandler {
 
         MethodContext calleeContext = new MethodContext(registerCount, parameterCount, callDepth);
 
-        addCalleeParameters(calleeContext, callerContext, registers, address, isStatic);
+        addCalleeParameters(calleeContext, callerContext, registers, parameterTypes, isStatic);
 
         return calleeContext;
     }
@@ -129,11 +169,11 @@ public class InvokeOpHandler extends OpHandler {
 
     static InvokeOpHandler create(Instruction instruction, int address, VirtualMachine vm) {
         int childAddress = address + instruction.getCodeUnits();
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
 
         int[] registers = null;
         MethodReference methodReference = null;
-        if (opName.contains("/range")) {
+        if (instruction instanceof Instruction3rc) {
             Instruction3rc instr = (Instruction3rc) instruction;
             int registerCount = instr.getRegisterCount();
             int start = instr.getStartRegister();
@@ -167,7 +207,7 @@ public class InvokeOpHandler extends OpHandler {
             methodReference = (MethodReference) instr.getReference();
         }
 
-        return new InvokeOpHandler(address, opName, childAddress, methodReference, registers, vm);
+        return new InvokeOpHandler(address, op, childAddress, methodReference, registers, vm);
     }
 
     private final boolean isStatic;
@@ -176,66 +216,98 @@ public class InvokeOpHandler extends OpHandler {
     private final String returnType;
     private final int[] registers;
     private final VirtualMachine vm;
-    private boolean hasSideEffects;
+    private final MethodReflector reflector;
 
-    private InvokeOpHandler(int address, String opName, int childAddress, MethodReference methodReference,
+    private InvokeOpHandler(int address, Opcode op, int childAddress, MethodReference methodReference,
                     int[] registers, VirtualMachine vm) {
-        super(address, opName, childAddress);
+        super(address, op, childAddress);
 
         this.methodReference = methodReference;
         this.methodDescriptor = ReferenceUtil.getMethodDescriptor(methodReference);
         this.returnType = methodReference.getReturnType();
         this.registers = registers;
         this.vm = vm;
-        isStatic = opName.contains("-static");
+        isStatic = (op == Opcode.INVOKE_STATIC) || (op == Opcode.INVOKE_STATIC_RANGE);
+
+        // Null if the method can't be reflected.
+        reflector = MethodReflector.canReflect(methodDescriptor) ? new MethodReflector(methodReference, isStatic)
+                        : null;
     }
 
     @Override
     public int[] execute(MethodContext callerContext) {
-        hasSideEffects = true; // assume true for most cases, just to be safe
+        callerContext.setSideEffects(true); // assume true for most cases, just to be safe
 
         boolean returnsVoid = returnType.equals("V");
         if (vm.isMethodDefined(methodDescriptor)) {
-            // This is a locally defined method. Execute on the VM.
-            MethodContext calleeContext = vm.getInstructionGraph(methodDescriptor).getRootContext();
-            calleeContext.incrementCallDepth();
-            addCalleeParameters(calleeContext, callerContext, registers, getAddress(), isStatic);
+            // This is a locally defined method. Execute on the VM unless it's already been executed with these
+            // arguments.
+            MethodSummaryCache summaryCache = vm.getMethodSummaryCache();
+            Object[] arguments = peekArguments(callerContext, registers);
+            MethodSummary summary = summaryCache.get(methodDescriptor, arguments);
+            if (summary == null) {
+                MethodContext calleeContext = vm.getRootContext(methodDescriptor);
+                // The root context is shared, so the depth comes from the caller rather than being counted on it.
+                calleeContext.setCallDepth(callerContext.getCallDepth() + 1);
+                addCalleeParameters(calleeContext, callerContext, registers, methodReference.getParameterTypes(),
+                                isStatic);
+
+                long runDependentCount = ExecutionBudget.getRunDependentCount();
+                ContextGraph graph = vm.execute(methodDescriptor, calleeContext);
+                if (graph == null) {
+                    // Problem executing the method. Maybe node visits or call depth exceeded.
+                    log.info("Problem executing " + methodDescriptor + ", propigating ambiguity.");
+                    assumeMaximumUnknown(vm, callerContext, registers, methodReference.getParameterTypes(), isStatic,
+                                    returnType);
+
+                    return getPossibleChildren();
+                }
 
-            ContextGraph graph = vm.execute(methodDescriptor, calleeContext);
-            if (graph == null) {
-                // Problem executing the method. Maybe node visits or call depth exceeded.
-                log.info("Problem executing " + methodDescriptor + ", propigating ambiguity.");
-                assumeMaximumUnknown(vm, callerContext, registers, returnType);
+                // TODO: fix
+                // Register value object references are passed in, but each instruction has a new clone, which doesn't
+                // point to the original. So updates to objects in callee aren't propagated back to caller.
+                // updateInstanceAndMutableArguments(vm, callerContext, graph, isStatic);
 
-                return getPossibleChildren();
-            }
+                boolean isRunDependent = ExecutionBudget.getRunDependentCount() != runDependentCount;
+                summary = MethodSummary.build(graph, returnsVoid, isRunDependent);
+                summaryCache.put(methodDescriptor, arguments, summary);
+            } else {
+                if (summary.isRunDependent()) {
+                    // The caller depends on it too.
+                    ExecutionBudget.markRunDependent();
+                }
 
-            // TODO: fix
-            // Register value object references are passed in, but each instruction has a new clone, which doesn't point
-            // to the original. So updates to objects in callee aren't propagated back to caller.
-            // updateInstanceAndMutableArguments(vm, callerContext, graph, isStatic);
+                // Arguments are still read, even if the callee isn't executed.
+                for (int register : registers) {
+                    if (callerContext.hasRegister(register)) {
+                        callerContext.readRegister(register);
+                    }
+                }
+            }
 
+            callerContext.setSideEffects(summary.hasSideEffects());
             if (!returnsVoid) {
-                TIntList terminating = graph.getConnectedTerminatingAddresses();
-                Object consensus = graph.getRegisterConsensus(terminating, MethodContext.ReturnRegister);
-                callerContext.assignResultRegister(consensus);
+                callerContext.assignResultRegister(summary.getReturnValue());
             }
         } else {
-            MethodContext calleeContext = buildCalleeContext(callerContext, registers, getAddress(), isStatic);
+            MethodContext calleeContext = buildCalleeContext(callerContext, registers,
+                            methodReference.getParameterTypes(), isStatic);
             boolean allArgumentsKnown = allArgumentsKnown(calleeContext);
-            if (allArgumentsKnown && MethodEmulator.canEmulate(methodDescriptor)) {
-                MethodEmulator.emulate(calleeContext, methodDescriptor);
-            } else if (allArgumentsKnown && MethodReflector.canReflect(methodDescriptor)) {
-                MethodReflector reflector = new MethodReflector(methodReference, isStatic);
-                reflector.reflect(calleeContext); // player play
-
+            if (allArgumentsKnown && MethodEmulator.canEmulate(methodDescriptor)
+                            && MethodEmulator.emulate(calleeContext, methodDescriptor)) {
+                // Emulated methods only change the instance and return value unless they say otherwise.
+                callerContext.setSideEffects(MethodEmulator.hasSideEffects(methodDescriptor));
+            } else if (allArgumentsKnown && (reflector != null) && reflector.reflect(calleeContext)) {
                 // TOOD: investigate better marking of side effects. this is very conservative and depends on reflected
                 // methods not actually having side effects
-                hasSideEffects = false;
+                callerContext.setSideEffects(false);
             } else {
-                log.fine("Unknown argument(s) or can't find/emulate/reflect " + methodDescriptor
-                                + ". Propigating ambiguity.");
-                assumeMaximumUnknown(vm, callerContext, registers, returnType);
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine("Unknown argument(s) or can't find/emulate/reflect " + methodDescriptor
+                                    + ". Propigating ambiguity.");
+                }
+                assumeMaximumUnknown(vm, callerContext, registers, methodReference.getParameterTypes(), isStatic,
+                                returnType);
 
                 return getPossibleChildren();
             }
@@ -262,12 +334,12 @@ public class InvokeOpHandler extends OpHandler {
         return getPossibleChildren();
     }
 
-    public String getReturnType() {
-        return returnType;
+    public String getMethodDescriptor() {
+        return methodDescriptor;
     }
 
-    public boolean hasSideEffects() {
-        return hasSideEffects;
+    public String getReturnType() {
+        return returnType;
     }
 
     @Override
@@ -275,7 +347,7 @@ public class InvokeOpHandler extends OpHandler {
         StringBuilder sb = new StringBuilder(getOpName());
 
         sb.append(" {");
-        if (getOpName().contains("/range")) {
+        if (getOpcode().format == Format.Format3rc) {
             sb.append("r").append(registers[0]).append(" .. r").append(registers[registers.length - 1]);
         } else {
             for (int register : registers) {
@@ -1,5 +1,6 @@
 package simplify.vm.handlers;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
 import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
@@ -7,7 +8,7 @@ import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
 import simplify.vm.MethodContext;
 import simplify.vm.types.UnknownValue;
 
-public class MoveOpHandler extends OpHandler {
+public final class MoveOpHandler extends OpHandler {
 
     private static enum MoveType {
         RESULT,
@@ -16,20 +17,20 @@ public class MoveOpHandler extends OpHandler {
     };
 
     static MoveOpHandler create(Instruction instruction, int address) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
         int childAddress = address + instruction.getCodeUnits();
         int toRegister = ((OneRegisterInstruction) instruction).getRegisterA();
 
-        MoveType moveType = null;
-        if (opName.contains("-result")) {
-            moveType = MoveType.RESULT;
-            return new MoveOpHandler(address, opName, childAddress, toRegister, moveType);
-        } else if (opName.contains("-exception")) {
-            moveType = MoveType.EXCEPTION;
-            return new MoveOpHandler(address, opName, childAddress, toRegister, moveType);
-        } else {
+        switch (op) {
+        case MOVE_RESULT:
+        case MOVE_RESULT_OBJECT:
+        case MOVE_RESULT_WIDE:
+            return new MoveOpHandler(address, op, childAddress, toRegister, MoveType.RESULT);
+        case MOVE_EXCEPTION:
+            return new MoveOpHandler(address, op, childAddress, toRegister, MoveType.EXCEPTION);
+        default:
             int targetRegister = ((TwoRegisterInstruction) instruction).getRegisterB();
-            return new MoveOpHandler(address, opName, childAddress, toRegister, targetRegister);
+            return new MoveOpHandler(address, op, childAddress, toRegister, targetRegister);
         }
     }
 
@@ -37,14 +38,14 @@ public class MoveOpHandler extends OpHandler {
     private final MoveType moveType;
     private int targetRegister;
 
-    private MoveOpHandler(int address, String opName, int childAddress, int toRegister, MoveType moveType) {
-        super(address, opName, childAddress);
+    private MoveOpHandler(int address, Opcode op, int childAddress, int toRegister, MoveType moveType) {
+        super(address, op, childAddress);
         this.toRegister = toRegister;
         this.moveType = moveType;
     }
 
-    private MoveOpHandler(int address, String opName, int nextInstructionAddress, int toRegister, int targetRegister) {
-        this(address, opName, nextInstructionAddress, toRegister, MoveType.REGISTER);
+    private MoveOpHandler(int address, Opcode op, int nextInstructionAddress, int toRegister, int targetRegister) {
+        this(address, op, nextInstructionAddress, toRegister, MoveType.REGISTER);
         this.targetRegister = targetRegister;
     }
 
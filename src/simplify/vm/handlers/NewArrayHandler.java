@@ -1,20 +1,21 @@
 package simplify.vm.handlers;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 
 import simplify.vm.MethodContext;
 
-public class NewArrayHandler extends OpHandler {
+public final class NewArrayHandler extends OpHandler {
 
     static NewArrayHandler create(Instruction instruction, int address) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
         int childAddress = address + instruction.getCodeUnits();
 
-        return new NewArrayHandler(address, opName, childAddress);
+        return new NewArrayHandler(address, op, childAddress);
     }
 
-    private NewArrayHandler(int address, String opName, int childAddress) {
-        super(address, opName, childAddress);
+    private NewArrayHandler(int address, Opcode op, int childAddress) {
+        super(address, op, childAddress);
     }
 
     @Override
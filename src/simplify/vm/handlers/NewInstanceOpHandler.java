@@ -1,5 +1,6 @@
 package simplify.vm.handlers;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.formats.Instruction21c;
 import org.jf.dexlib2.iface.reference.TypeReference;
@@ -9,10 +10,10 @@ import simplify.vm.VirtualMachine;
 import simplify.vm.types.SmaliClassInstance;
 import simplify.vm.types.UninitializedInstance;
 
-public class NewInstanceOpHandler extends OpHandler {
+public final class NewInstanceOpHandler extends OpHandler {
 
     static NewInstanceOpHandler create(Instruction instruction, int address, VirtualMachine vm) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
         int childAddress = address + instruction.getCodeUnits();
 
         Instruction21c instr = (Instruction21c) instruction;
@@ -20,16 +21,16 @@ public class NewInstanceOpHandler extends OpHandler {
         TypeReference typeRef = (TypeReference) instr.getReference();
         String className = typeRef.getType();
 
-        return new NewInstanceOpHandler(address, opName, childAddress, destRegister, className, vm);
+        return new NewInstanceOpHandler(address, op, childAddress, destRegister, className, vm);
     }
 
     private final int destRegister;
     private final String className;
     private final VirtualMachine vm;
 
-    NewInstanceOpHandler(int address, String opName, int childAddress, int destRegister, String className,
+    NewInstanceOpHandler(int address, Opcode op, int childAddress, int destRegister, String className,
                     VirtualMachine vm) {
-        super(address, opName, childAddress);
+        super(address, op, childAddress);
 
         this.destRegister = destRegister;
         this.className = className;
@@ -1,20 +1,22 @@
 package simplify.vm.handlers;
 
+import org.jf.dexlib2.Opcode;
+
 import simplify.vm.MethodContext;
 
 public abstract class OpHandler {
 
     private final int address;
-    private final String opName;
+    private final Opcode opcode;
     private final int[] childAddresses;
 
-    OpHandler(int address, String opName, int childAddress) {
-        this(address, opName, new int[] { childAddress });
+    OpHandler(int address, Opcode opcode, int childAddress) {
+        this(address, opcode, new int[] { childAddress });
     }
 
-    OpHandler(int address, String opName, int[] childAddresses) {
+    OpHandler(int address, Opcode opcode, int[] childAddresses) {
         this.address = address;
-        this.opName = opName;
+        this.opcode = opcode;
         this.childAddresses = childAddresses;
     }
 
@@ -27,8 +29,12 @@ public abstract class OpHandler {
         return address;
     }
 
+    public final Opcode getOpcode() {
+        return opcode;
+    }
+
     public final String getOpName() {
-        return opName;
+        return opcode.name;
     }
 
     public final int[] getPossibleChildren() {
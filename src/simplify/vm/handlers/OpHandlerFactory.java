@@ -40,6 +40,19 @@ public final class OpHandlerFactory {
 
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());;
 
+    // Handler types indexed by opcode ordinal so creating a handler doesn't go through the big switch every time.
+    private static final OpType[] opcodeToFactoryType = buildOpcodeToFactoryType();
+
+    private static OpType[] buildOpcodeToFactoryType() {
+        Opcode[] opcodes = Opcode.values();
+        OpType[] result = new OpType[opcodes.length];
+        for (Opcode op : opcodes) {
+            result[op.ordinal()] = getFactoryType(op);
+        }
+
+        return result;
+    }
+
     @SuppressWarnings("incomplete-switch")
     private static OpType getFactoryType(Opcode op) {
         OpType result = OpType.UNIMPLEMENTED;
@@ -197,6 +210,7 @@ public final class OpHandlerFactory {
         case NEG_LONG:
         case NOT_INT:
         case NOT_LONG:
+            result = OpType.UNARY_MATH;
             break;
 
         case FILLED_NEW_ARRAY:
@@ -341,7 +355,7 @@ public final class OpHandlerFactory {
     public OpHandler create(BuilderInstruction instruction, int address) {
         OpHandler result = null;
 
-        OpType factoryType = getFactoryType(instruction.getOpcode());
+        OpType factoryType = opcodeToFactoryType[instruction.getOpcode().ordinal()];
         switch (factoryType) {
         case BINARY_MATH:
             result = BinaryMathOpHandler.create(instruction, address);
@@ -403,6 +417,7 @@ public final class OpHandlerFactory {
             result = ReturnOpHandler.create(instruction, address);
             break;
         case UNARY_MATH:
+            result = UnaryMathOpHandler.create(instruction, address);
             break;
         }
 
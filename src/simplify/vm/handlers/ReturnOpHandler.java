@@ -2,28 +2,29 @@ package simplify.vm.handlers;
 
 import java.util.logging.Logger;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.formats.Instruction11x;
 
 import simplify.Main;
 import simplify.vm.MethodContext;
 
-public class ReturnOpHandler extends OpHandler {
+public final class ReturnOpHandler extends OpHandler {
 
     private static final Logger log = Logger.getLogger(Main.class.getSimpleName());
 
     static ReturnOpHandler create(Instruction instruction, int address) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
         Instruction11x instr = (Instruction11x) instruction;
         int register = instr.getRegisterA();
 
-        return new ReturnOpHandler(address, opName, register);
+        return new ReturnOpHandler(address, op, register);
     }
 
     private final int register;
 
-    ReturnOpHandler(int address, String opName, int register) {
-        super(address, opName, new int[0]);
+    ReturnOpHandler(int address, Opcode op, int register) {
+        super(address, op, new int[0]);
 
         this.register = register;
     }
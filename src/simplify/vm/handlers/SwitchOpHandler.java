@@ -1,15 +1,16 @@
 package simplify.vm.handlers;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.OffsetInstruction;
 import org.jf.dexlib2.iface.instruction.formats.Instruction31t;
 
 import simplify.vm.MethodContext;
 
-public class SwitchOpHandler extends OpHandler {
+public final class SwitchOpHandler extends OpHandler {
 
     static SwitchOpHandler create(Instruction instruction, int address) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
 
         int branchOffset = ((OffsetInstruction) instruction).getCodeOffset();
         int targetAddress = address + branchOffset;
@@ -17,13 +18,13 @@ public class SwitchOpHandler extends OpHandler {
         Instruction31t instr = (Instruction31t) instruction;
         int register = instr.getRegisterA();
 
-        return new SwitchOpHandler(address, opName, targetAddress, register);
+        return new SwitchOpHandler(address, op, targetAddress, register);
     }
 
     private final int register;
 
-    private SwitchOpHandler(int address, String opName, int targetAddress, int register) {
-        super(address, opName, targetAddress);
+    private SwitchOpHandler(int address, Opcode op, int targetAddress, int register) {
+        super(address, op, targetAddress);
 
         this.register = register;
     }
@@ -3,6 +3,7 @@ package simplify.vm.handlers;
 import java.util.List;
 import java.util.logging.Logger;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
 import org.jf.dexlib2.iface.instruction.SwitchElement;
 import org.jf.dexlib2.iface.instruction.SwitchPayload;
@@ -11,7 +12,7 @@ import simplify.Main;
 import simplify.vm.MethodContext;
 import simplify.vm.types.UnknownValue;
 
-public class SwitchPayloadOpHandler extends OpHandler {
+public final class SwitchPayloadOpHandler extends OpHandler {
 
     private static enum SwitchType {
         PACKED,
@@ -30,10 +31,10 @@ public class SwitchPayloadOpHandler extends OpHandler {
     }
 
     static SwitchPayloadOpHandler create(Instruction instruction, int address) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
 
         SwitchType switchType = null;
-        if (opName.startsWith("packed-")) {
+        if (op == Opcode.PACKED_SWITCH_PAYLOAD) {
             switchType = SwitchType.PACKED;
         } else {
             switchType = SwitchType.SPARSE;
@@ -41,15 +42,15 @@ public class SwitchPayloadOpHandler extends OpHandler {
 
         SwitchPayload instr = (SwitchPayload) instruction;
 
-        return new SwitchPayloadOpHandler(address, opName, switchType, instr.getSwitchElements());
+        return new SwitchPayloadOpHandler(address, op, switchType, instr.getSwitchElements());
     }
     private final List<? extends SwitchElement> switchElements;
 
     private final SwitchType switchType;
 
-    private SwitchPayloadOpHandler(int address, String opName, SwitchType switchType,
+    private SwitchPayloadOpHandler(int address, Opcode op, SwitchType switchType,
                     List<? extends SwitchElement> switchElements) {
-        super(address, opName, determineChildren(switchElements));
+        super(address, op, determineChildren(switchElements));
 
         this.switchType = switchType;
         this.switchElements = switchElements;
@@ -1,32 +1,270 @@
 package simplify.vm.handlers;
 
+import org.jf.dexlib2.Opcode;
 import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.TwoRegisterInstruction;
 
 import simplify.vm.MethodContext;
+import simplify.vm.types.UnknownValue;
 
-public class UnaryMathOpHandler extends OpHandler {
+public final class UnaryMathOpHandler extends OpHandler {
+
+    private static enum MathOperandType {
+        INT("I"),
+        LONG("J"),
+        FLOAT("F"),
+        DOUBLE("D"),
+        BYTE("B"),
+        CHAR("C"),
+        SHORT("S");
+
+        private final String type;
+
+        private MathOperandType(String type) {
+            this.type = type;
+        }
+    }
+
+    private static enum MathOperator {
+        NEG,
+        NOT,
+        CONVERT
+    }
 
     static UnaryMathOpHandler create(Instruction instruction, int address) {
-        String opName = instruction.getOpcode().name;
+        Opcode op = instruction.getOpcode();
         int childAddress = address + instruction.getCodeUnits();
+        TwoRegisterInstruction instr = (TwoRegisterInstruction) instruction;
 
-        return new UnaryMathOpHandler(address, opName, childAddress);
+        // neg-int vA, vB
+        // int-to-long vA, vB
+        return new UnaryMathOpHandler(address, op, childAddress, instr.getRegisterA(), instr.getRegisterB());
     }
 
-    UnaryMathOpHandler(int address, String opName, int childAddress) {
-        super(address, opName, childAddress);
+    private final MathOperator mathOperator;
+    private final MathOperandType sourceType;
+    private final MathOperandType destType;
+    private final int destRegister;
+    private final int srcRegister;
+
+    UnaryMathOpHandler(int address, Opcode op, int childAddress, int destRegister, int srcRegister) {
+        super(address, op, childAddress);
+
+        this.destRegister = destRegister;
+        this.srcRegister = srcRegister;
+
+        switch (op) {
+        case NEG_INT:
+            mathOperator = MathOperator.NEG;
+            sourceType = MathOperandType.INT;
+            destType = sourceType;
+            break;
+        case NOT_INT:
+            mathOperator = MathOperator.NOT;
+            sourceType = MathOperandType.INT;
+            destType = sourceType;
+            break;
+        case NEG_LONG:
+            mathOperator = MathOperator.NEG;
+            sourceType = MathOperandType.LONG;
+            destType = sourceType;
+            break;
+        case NOT_LONG:
+            mathOperator = MathOperator.NOT;
+            sourceType = MathOperandType.LONG;
+            destType = sourceType;
+            break;
+        case NEG_FLOAT:
+            mathOperator = MathOperator.NEG;
+            sourceType = MathOperandType.FLOAT;
+            destType = sourceType;
+            break;
+        case NEG_DOUBLE:
+            mathOperator = MathOperator.NEG;
+            sourceType = MathOperandType.DOUBLE;
+            destType = sourceType;
+            break;
+        case INT_TO_LONG:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.INT;
+            destType = MathOperandType.LONG;
+            break;
+        case INT_TO_FLOAT:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.INT;
+            destType = MathOperandType.FLOAT;
+            break;
+        case INT_TO_DOUBLE:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.INT;
+            destType = MathOperandType.DOUBLE;
+            break;
+        case LONG_TO_INT:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.LONG;
+            destType = MathOperandType.INT;
+            break;
+        case LONG_TO_FLOAT:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.LONG;
+            destType = MathOperandType.FLOAT;
+            break;
+        case LONG_TO_DOUBLE:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.LONG;
+            destType = MathOperandType.DOUBLE;
+            break;
+        case FLOAT_TO_INT:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.FLOAT;
+            destType = MathOperandType.INT;
+            break;
+        case FLOAT_TO_LONG:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.FLOAT;
+            destType = MathOperandType.LONG;
+            break;
+        case FLOAT_TO_DOUBLE:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.FLOAT;
+            destType = MathOperandType.DOUBLE;
+            break;
+        case DOUBLE_TO_INT:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.DOUBLE;
+            destType = MathOperandType.INT;
+            break;
+        case DOUBLE_TO_LONG:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.DOUBLE;
+            destType = MathOperandType.LONG;
+            break;
+        case DOUBLE_TO_FLOAT:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.DOUBLE;
+            destType = MathOperandType.FLOAT;
+            break;
+        case INT_TO_BYTE:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.INT;
+            destType = MathOperandType.BYTE;
+            break;
+        case INT_TO_CHAR:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.INT;
+            destType = MathOperandType.CHAR;
+            break;
+        case INT_TO_SHORT:
+            mathOperator = MathOperator.CONVERT;
+            sourceType = MathOperandType.INT;
+            destType = MathOperandType.SHORT;
+            break;
+        default:
+            throw new IllegalArgumentException("Not a unary math op: " + op.name);
+        }
     }
 
     @Override
     public int[] execute(MethodContext mctx) {
-        // TODO Auto-generated method stub
-        return null;
+        if (!mctx.hasPrimitiveValue(srcRegister)) {
+            mctx.readRegister(srcRegister);
+            mctx.assignRegister(destRegister, new UnknownValue(destType.type));
+
+            return getPossibleChildren();
+        }
+
+        switch (sourceType) {
+        case INT:
+            executeIntegral(mctx, mctx.readIntRegister(srcRegister));
+            break;
+        case LONG:
+            executeIntegral(mctx, mctx.readLongRegister(srcRegister));
+            break;
+        case FLOAT:
+            executeFloatingPoint(mctx, mctx.readFloatRegister(srcRegister));
+            break;
+        case DOUBLE:
+            executeFloatingPoint(mctx, mctx.readDoubleRegister(srcRegister));
+            break;
+        default:
+            break;
+        }
+
+        return getPossibleChildren();
     }
 
     @Override
     public String toString() {
-        // TODO Auto-generated method stub
-        return null;
+        StringBuilder sb = new StringBuilder(getOpName());
+
+        sb.append(" r").append(destRegister).append(", r").append(srcRegister);
+
+        return sb.toString();
+    }
+
+    private void assignIntegral(MethodContext mctx, long value) {
+        switch (destType) {
+        case INT:
+            mctx.assignIntRegister(destRegister, (int) value);
+            break;
+        case LONG:
+            mctx.assignLongRegister(destRegister, value);
+            break;
+        case FLOAT:
+            mctx.assignFloatRegister(destRegister, value);
+            break;
+        case DOUBLE:
+            mctx.assignDoubleRegister(destRegister, value);
+            break;
+        case BYTE:
+            mctx.assignIntRegister(destRegister, (byte) value);
+            break;
+        case CHAR:
+            mctx.assignIntRegister(destRegister, (char) value);
+            break;
+        case SHORT:
+            mctx.assignIntRegister(destRegister, (short) value);
+            break;
+        }
+    }
+
+    private void executeFloatingPoint(MethodContext mctx, double value) {
+        if (mathOperator == MathOperator.NEG) {
+            value = -value;
+        }
+
+        switch (destType) {
+        case INT:
+            // Java's narrowing matches Dalvik's: NaN is 0 and out of range values saturate.
+            mctx.assignIntRegister(destRegister, (int) value);
+            break;
+        case LONG:
+            mctx.assignLongRegister(destRegister, (long) value);
+            break;
+        case FLOAT:
+            mctx.assignFloatRegister(destRegister, (float) value);
+            break;
+        case DOUBLE:
+            mctx.assignDoubleRegister(destRegister, value);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void executeIntegral(MethodContext mctx, long value) {
+        switch (mathOperator) {
+        case NEG:
+            value = -value;
+            break;
+        case NOT:
+            value = ~value;
+            break;
+        default:
+            break;
+        }
+
+        assignIntegral(mctx, value);
     }
 
 }
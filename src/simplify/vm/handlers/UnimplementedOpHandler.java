@@ -7,7 +7,7 @@ import org.jf.dexlib2.iface.instruction.OneRegisterInstruction;
 import simplify.vm.MethodContext;
 import simplify.vm.types.UnknownValue;
 
-class UnimplementedOpHandler extends OpHandler {
+final class UnimplementedOpHandler extends OpHandler {
 
     static UnimplementedOpHandler create(Instruction instruction, int address) {
         UnimplementedOpHandler result = null;
@@ -19,10 +19,10 @@ class UnimplementedOpHandler extends OpHandler {
             OneRegisterInstruction instr = (OneRegisterInstruction) instruction;
             int registerA = instr.getRegisterA();
 
-            result = new UnimplementedOpHandler(address, op.name, childAddress, op.canContinue(), op.canThrow(),
+            result = new UnimplementedOpHandler(address, op, childAddress, op.canContinue(), op.canThrow(),
                             op.setsResult(), op.setsRegister(), registerA);
         } else {
-            result = new UnimplementedOpHandler(address, op.name, childAddress, op.canContinue(), op.canThrow(),
+            result = new UnimplementedOpHandler(address, op, childAddress, op.canContinue(), op.canThrow(),
                             op.setsResult());
         }
 
@@ -35,14 +35,14 @@ class UnimplementedOpHandler extends OpHandler {
     private final boolean setsRegister;
     private final int registerA;
 
-    UnimplementedOpHandler(int address, String opName, int childAddress, boolean canContinue, boolean canThrow,
+    UnimplementedOpHandler(int address, Opcode op, int childAddress, boolean canContinue, boolean canThrow,
                     boolean setsResult) {
-        this(address, opName, childAddress, canContinue, canThrow, setsResult, false, -1);
+        this(address, op, childAddress, canContinue, canThrow, setsResult, false, -1);
     }
 
-    UnimplementedOpHandler(int address, String opName, int childAddress, boolean canContinue, boolean canThrow,
+    UnimplementedOpHandler(int address, Opcode op, int childAddress, boolean canContinue, boolean canThrow,
                     boolean setsResult, boolean setsRegister, int registerA) {
-        super(address, opName, canContinue ? childAddress : 0);
+        super(address, op, canContinue ? childAddress : 0);
 
         this.canContinue = canContinue;
         this.canThrow = canThrow;
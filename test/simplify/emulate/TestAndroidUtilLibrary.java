@@ -0,0 +1,46 @@
+package simplify.emulate;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import simplify.vm.ContextGraph;
+import simplify.vm.handlers.SmaliTester;
+import simplify.vm.types.UnknownValue;
+
+public class TestAndroidUtilLibrary {
+
+    private static final String CLASS_NAME = "Landroid_util_library_test;";
+
+    @Test
+    public void AndroidUtilLibrary_TestBase64RoundTrip() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestBase64RoundTrip()Ljava/lang/String;");
+
+        Assert.assertEquals("aGVsbG8=\n", SmaliTester.getReturnValue(graph));
+        Assert.assertFalse(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void AndroidUtilLibrary_TestBase64Decode() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestBase64Decode()[B");
+
+        Object value = SmaliTester.getReturnValue(graph);
+        Assert.assertTrue(value instanceof byte[]);
+        Assert.assertTrue(Arrays.equals("hello".getBytes(), (byte[]) value));
+        Assert.assertFalse(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void AndroidUtilLibrary_TestBase64DecodeThrows() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestBase64DecodeThrows()[B");
+
+        // Android classes can't be reflected, so nothing is known about the call.
+        Object value = SmaliTester.getReturnValue(graph);
+        Assert.assertTrue(value instanceof UnknownValue);
+        Assert.assertEquals("[B", ((UnknownValue) value).getType());
+        Assert.assertTrue(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+}
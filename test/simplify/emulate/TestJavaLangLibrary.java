@@ -0,0 +1,65 @@
+package simplify.emulate;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import simplify.vm.ContextGraph;
+import simplify.vm.handlers.SmaliTester;
+import simplify.vm.types.UnknownValue;
+
+public class TestJavaLangLibrary {
+
+    private static final String CLASS_NAME = "Ljava_lang_library_test;";
+
+    @Test
+    public void JavaLangLibrary_TestStringConcat() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestStringConcat()Ljava/lang/String;");
+
+        Assert.assertEquals("abcdef", SmaliTester.getReturnValue(graph));
+        Assert.assertFalse(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void JavaLangLibrary_TestStringIndexOfChar() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestStringIndexOfChar()I");
+
+        Assert.assertEquals(2, SmaliTester.getReturnValue(graph));
+        Assert.assertFalse(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void JavaLangLibrary_TestStringBuilder() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestStringBuilder()Ljava/lang/String;");
+
+        Assert.assertEquals("ab", SmaliTester.getReturnValue(graph));
+        Assert.assertFalse(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void JavaLangLibrary_TestParseInt() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestParseInt()I");
+
+        Assert.assertEquals(123, SmaliTester.getReturnValue(graph));
+        Assert.assertFalse(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void JavaLangLibrary_TestParseIntThrows() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestParseIntThrows()I");
+
+        // Neither emulation nor reflection can parse it, so nothing is known about the call.
+        Object value = SmaliTester.getReturnValue(graph);
+        Assert.assertTrue(value instanceof UnknownValue);
+        Assert.assertEquals("I", ((UnknownValue) value).getType());
+        Assert.assertTrue(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void JavaLangLibrary_TestArrayCopy() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestArrayCopy()V");
+
+        Assert.assertTrue(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+}
@@ -0,0 +1,52 @@
+package simplify.emulate;
+
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import simplify.vm.ContextGraph;
+import simplify.vm.handlers.SmaliTester;
+import simplify.vm.types.UnknownValue;
+
+public class TestJavaUtilLibrary {
+
+    private static final String CLASS_NAME = "Ljava_util_library_test;";
+
+    @Test
+    public void JavaUtilLibrary_TestArraysToString() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestArraysToString()Ljava/lang/String;");
+
+        Assert.assertEquals("[97, 98]", SmaliTester.getReturnValue(graph));
+        Assert.assertFalse(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void JavaUtilLibrary_TestArraysCopyOf() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestArraysCopyOf()[B");
+
+        Object value = SmaliTester.getReturnValue(graph);
+        Assert.assertTrue(value instanceof byte[]);
+        Assert.assertTrue(Arrays.equals(new byte[] { 97, 98, 0 }, (byte[]) value));
+        Assert.assertFalse(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void JavaUtilLibrary_TestArraysCopyOfRangeThrows() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestArraysCopyOfRangeThrows()[B");
+
+        Object value = SmaliTester.getReturnValue(graph);
+        Assert.assertTrue(value instanceof UnknownValue);
+        Assert.assertEquals("[B", ((UnknownValue) value).getType());
+        Assert.assertTrue(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+    @Test
+    public void JavaUtilLibrary_TestArraysFill() {
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestArraysFill()V");
+
+        Assert.assertTrue(SmaliTester.invokesHaveSideEffects(graph));
+    }
+
+}
@@ -16,10 +16,11 @@ import org.jf.dexlib2.writer.builder.DexBuilder;
 
 import simplify.Dexifier;
 import simplify.vm.ContextGraph;
+import simplify.vm.MethodContext;
 import simplify.vm.VirtualMachine;
 import util.SparseArray;
 
-class SmaliTester {
+public class SmaliTester {
 
     private static final String TEST_DIRECTORY = "resources/test/vm";
 
@@ -44,14 +45,37 @@ class SmaliTester {
         }
     }
 
-    public static void executeAndEnsureContextState(String className, String methodSignature,
-                    SparseArray<Object> registerState) {
+    public static ContextGraph execute(String className, String methodSignature) {
         BuilderClassDef classDef = classNameToDef.get(className);
         VirtualMachine vm = new VirtualMachine(Arrays.asList(classDef), 10, 1);
 
         String methodDescriptor = className + "->" + methodSignature;
 
-        ContextGraph graph = vm.execute(methodDescriptor);
+        return vm.execute(methodDescriptor);
+    }
+
+    public static Object getReturnValue(ContextGraph graph) {
+        TIntList terminalAddresses = graph.getConnectedTerminatingAddresses();
+
+        return graph.getRegisterConsensus(terminalAddresses, MethodContext.ReturnRegister);
+    }
+
+    public static boolean invokesHaveSideEffects(ContextGraph graph) {
+        TIntList addresses = graph.getAddresses();
+        for (int i = 0; i < addresses.size(); i++) {
+            int address = addresses.get(i);
+            if ((graph.getOpHandler(address) instanceof InvokeOpHandler) && graph.hasSideEffects(address)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public static void executeAndEnsureContextState(String className, String methodSignature,
+                    SparseArray<Object> registerState) {
+        String methodDescriptor = className + "->" + methodSignature;
+        ContextGraph graph = execute(className, methodSignature);
 
         TIntList terminalAddresses = graph.getConnectedTerminatingAddresses();
         for (int i = 0; i < registerState.size(); i++) {
@@ -130,4 +130,15 @@ public class TestBinaryMath {
         SmaliTester.executeAndEnsureContextState(CLASS_NAME, "TestUshrInt()I", registerState);
     }
 
+    @Test
+    public void BinaryMath_TestSubInt2Addr() {
+        SparseArray<Object> registerState;
+        registerState = new SparseArray<Object>(2);
+        registerState.put(0, 4);
+        registerState.put(1, 3);
+        registerState.put(MethodContext.ReturnRegister, 4);
+
+        SmaliTester.executeAndEnsureContextState(CLASS_NAME, "TestSubInt2Addr()I", registerState);
+    }
+
 }
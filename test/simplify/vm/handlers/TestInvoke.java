@@ -0,0 +1,35 @@
+package simplify.vm.handlers;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import simplify.vm.ContextGraph;
+import simplify.vm.types.UnknownValue;
+
+public class TestInvoke {
+
+    private static final String CLASS_NAME = "Linvoke_test;";
+
+    @Test
+    public void Invoke_TestSelfRecursion() {
+        // Each call is one deeper than its caller, so max call depth stops the recursion.
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestSelfRecursion(I)I");
+
+        Assert.assertNotNull(graph);
+        Object value = SmaliTester.getReturnValue(graph);
+        Assert.assertTrue(value instanceof UnknownValue);
+        Assert.assertEquals("I", ((UnknownValue) value).getType());
+    }
+
+    @Test
+    public void Invoke_TestUnknownMethodWideArgument() {
+        // The second register of the long is skipped rather than read.
+        ContextGraph graph = SmaliTester.execute(CLASS_NAME, "TestUnknownMethodWideArgument()I");
+
+        Object value = SmaliTester.getReturnValue(graph);
+        Assert.assertTrue(value instanceof UnknownValue);
+        Assert.assertEquals("I", ((UnknownValue) value).getType());
+    }
+
+}
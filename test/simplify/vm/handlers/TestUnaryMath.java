@@ -0,0 +1,62 @@
+package simplify.vm.handlers;
+
+import org.junit.Test;
+
+import simplify.vm.MethodContext;
+import util.SparseArray;
+
+public class TestUnaryMath {
+
+    private static final String CLASS_NAME = "Lunary_math_test;";
+
+    @Test
+    public void UnaryMath_TestNegInt() {
+        SparseArray<Object> registerState;
+        registerState = new SparseArray<Object>(2);
+        registerState.put(0, -5);
+        registerState.put(MethodContext.ReturnRegister, -5);
+
+        SmaliTester.executeAndEnsureContextState(CLASS_NAME, "TestNegInt()I", registerState);
+    }
+
+    @Test
+    public void UnaryMath_TestNotInt() {
+        SparseArray<Object> registerState;
+        registerState = new SparseArray<Object>(2);
+        registerState.put(0, -6);
+        registerState.put(MethodContext.ReturnRegister, -6);
+
+        SmaliTester.executeAndEnsureContextState(CLASS_NAME, "TestNotInt()I", registerState);
+    }
+
+    @Test
+    public void UnaryMath_TestIntToByte() {
+        SparseArray<Object> registerState;
+        registerState = new SparseArray<Object>(2);
+        registerState.put(0, -128);
+        registerState.put(MethodContext.ReturnRegister, -128);
+
+        SmaliTester.executeAndEnsureContextState(CLASS_NAME, "TestIntToByte()I", registerState);
+    }
+
+    @Test
+    public void UnaryMath_TestIntToLong() {
+        SparseArray<Object> registerState;
+        registerState = new SparseArray<Object>(2);
+        registerState.put(0, -3L);
+        registerState.put(MethodContext.ReturnRegister, -3L);
+
+        SmaliTester.executeAndEnsureContextState(CLASS_NAME, "TestIntToLong()J", registerState);
+    }
+
+    @Test
+    public void UnaryMath_TestLongToInt() {
+        SparseArray<Object> registerState;
+        registerState = new SparseArray<Object>(2);
+        registerState.put(0, 7);
+        registerState.put(MethodContext.ReturnRegister, 7);
+
+        SmaliTester.executeAndEnsureContextState(CLASS_NAME, "TestLongToInt()I", registerState);
+    }
+
+}